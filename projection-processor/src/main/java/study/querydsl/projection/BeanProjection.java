@@ -0,0 +1,19 @@
+package study.querydsl.projection;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * DTO 에 붙이면 {DTO 이름}Projection 팩토리 표현식을 생성한다.
+ * Projections.bean/fields 처럼 기본 생성자 + setter 로 값을 넣지만, 리플렉션 없이 생성된 코드가 직접 호출한다.
+ * 표현식은 속성 이름의 builder 메서드로 넘기므로(builder().username(...).age(...).build())
+ * alias(username.as("name")) 없이, 필드 선언 순서와 상관없이 컴파일 시점에 이름으로 매칭된다.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface BeanProjection {
+}
@@ -0,0 +1,317 @@
+package study.querydsl.projection;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * {@link BeanProjection} 이 붙은 DTO 마다 FactoryExpressionBase 구현체를 생성한다.
+ * 생성된 newInstance 는 new Dto() 후 지정한 속성의 setter 를 호출할 뿐이라 row 마다 리플렉션이 없다.
+ * 표현식은 속성 이름의 builder 메서드로 받으므로 필드 선언 순서와 상관없이 이름으로 묶인다.
+ * lombok setter 는 processor 실행 순서에 따라 보이지 않을 수 있어, 직접 만든 setter 가 없으면 @Data/@Setter 로 확인한다.
+ */
+@SupportedAnnotationTypes("study.querydsl.projection.BeanProjection")
+public class BeanProjectionProcessor extends AbstractProcessor {
+
+    private static final String LOMBOK_NO_ARGS_CONSTRUCTOR = "lombok.NoArgsConstructor";
+    private static final String LOMBOK_DATA = "lombok.Data";
+    private static final String LOMBOK_SETTER = "lombok.Setter";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(BeanProjection.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@BeanProjection 은 클래스에만 사용할 수 있습니다.");
+                continue;
+            }
+            TypeElement dto = (TypeElement) element;
+            if (!hasNoArgsConstructor(dto)) {
+                error(dto, "@BeanProjection DTO 에는 public 기본 생성자가 필요합니다.");
+                continue;
+            }
+            List<Property> properties = properties(dto);
+            if (properties == null) {
+                continue;
+            }
+            try {
+                write(dto, properties);
+            } catch (IOException e) {
+                error(dto, "프로젝션 생성 실패: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /*
+     * lombok 이 만든 생성자는 processor 실행 순서에 따라 이 시점에 보이지 않을 수 있다.
+     * 그래서 생성자가 하나도 없거나 @NoArgsConstructor(private/none 제외)가 붙어 있으면 통과시키고,
+     * 실제로 없다면 생성된 코드의 new Dto() 에서 컴파일 오류가 난다.
+     */
+    private boolean hasNoArgsConstructor(TypeElement dto) {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(dto.getEnclosedElements());
+        return constructors.isEmpty() || hasLombokNoArgsConstructor(dto) || constructors.stream()
+                .anyMatch(c -> c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE));
+    }
+
+    //processor 는 lombok 에 의존하지 않으므로 애노테이션 이름과 access 값으로 확인한다(생성 코드는 같은 패키지라 protected 도 호출 가능).
+    private boolean hasLombokNoArgsConstructor(TypeElement dto) {
+        for (AnnotationMirror annotation : dto.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) annotation.getAnnotationType().asElement();
+            if (!type.getQualifiedName().contentEquals(LOMBOK_NO_ARGS_CONSTRUCTOR)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : annotation.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("access")) {
+                    String access = entry.getValue().getValue().toString();
+                    return !access.equals("PRIVATE") && !access.equals("NONE");
+                }
+            }
+            return true; //기본값 PUBLIC
+        }
+        return false;
+    }
+
+    /*
+     * 값을 넣을 속성: static, transient 를 제외한 필드(선언 순서)와, 필드 없이 setter 만 있는 속성
+     * 필드는 직접 만든 setter 나 lombok @Data/@Setter 가 있어야 한다. 없으면 어느 필드인지 알려 주고 실패한다.
+     */
+    private List<Property> properties(TypeElement dto) {
+        Map<String, Property> properties = new LinkedHashMap<>();
+        Map<String, ExecutableElement> setters = new LinkedHashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(dto.getEnclosedElements())) {
+            String name = method.getSimpleName().toString();
+            if (name.length() > 3 && name.startsWith("set") && Character.isUpperCase(name.charAt(3))
+                    && method.getParameters().size() == 1
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && !method.getModifiers().contains(Modifier.PRIVATE)) {
+                setters.put(Character.toLowerCase(name.charAt(3)) + name.substring(4), method);
+            }
+        }
+        boolean lombokSetters = hasLombokSetter(dto);
+        for (VariableElement field : ElementFilter.fieldsIn(dto.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            String name = field.getSimpleName().toString();
+            if (!setters.containsKey(name)
+                    && (field.getModifiers().contains(Modifier.FINAL) || !(lombokSetters || hasLombokSetter(field)))) {
+                error(field, "@BeanProjection: " + name + " 에 값을 넣을 setter 가 없습니다.");
+                return null;
+            }
+            properties.put(name, new Property(name, field.asType(), setterName(name)));
+        }
+        setters.forEach((name, setter) -> properties.putIfAbsent(name,
+                new Property(name, setter.getParameters().get(0).asType(), setter.getSimpleName().toString())));
+        if (properties.isEmpty()) {
+            error(dto, "@BeanProjection DTO 에 값을 넣을 속성이 없습니다.");
+            return null;
+        }
+        return new ArrayList<>(properties.values());
+    }
+
+    //lombok @Data, @Setter(private/none 제외). processor 는 lombok 에 의존하지 않으므로 이름으로 확인한다
+    private boolean hasLombokSetter(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            String name = ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+            if (name.equals(LOMBOK_DATA)) {
+                return true;
+            }
+            if (name.equals(LOMBOK_SETTER)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                        : annotation.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        String access = entry.getValue().getValue().toString();
+                        return !access.equals("PRIVATE") && !access.equals("NONE");
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * 생성자 대신 속성 이름의 builder 메서드로 표현식을 받는다(MemberDtoProjection.builder().username(...).age(...).build()).
+     * 같은 타입의 필드 순서가 바뀌어도 이름으로 묶이므로 값이 뒤바뀌지 않고, 없는 속성은 컴파일 오류가 난다.
+     * getArgs 는 지정한 속성만 선언 순서로 담고, newInstance 는 각 값의 속성 번호로 setter 를 고른다.
+     */
+    private void write(TypeElement dto, List<Property> properties) throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(dto);
+        String packageName = pkg.getQualifiedName().toString();
+        String dtoName = dto.getQualifiedName().toString();
+        String simpleName = dto.getSimpleName() + "Projection";
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                packageName.isEmpty() ? simpleName : packageName + "." + simpleName, dto);
+        try (PrintWriter out = new PrintWriter(file.openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("import com.querydsl.core.types.Expression;");
+            out.println("import com.querydsl.core.types.FactoryExpressionBase;");
+            out.println("import com.querydsl.core.types.Visitor;");
+            out.println();
+            out.println("import java.util.ArrayList;");
+            out.println("import java.util.Collections;");
+            out.println("import java.util.List;");
+            out.println();
+            out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+            out.println("public class " + simpleName + " extends FactoryExpressionBase<" + dtoName + "> {");
+            out.println();
+            out.println("    private static final long serialVersionUID = 1L;");
+            out.println();
+            out.println("    private static final String[] PROPERTIES = {" + properties.stream()
+                    .map(p -> "\"" + p.name + "\"")
+                    .collect(Collectors.joining(", ")) + "};");
+            out.println();
+            out.println("    private final List<Expression<?>> args;");
+            out.println("    private final int[] properties;");
+            out.println();
+            out.println("    private " + simpleName + "(List<Expression<?>> args, int[] properties) {");
+            out.println("        super(" + dtoName + ".class);");
+            out.println("        this.args = Collections.unmodifiableList(args);");
+            out.println("        this.properties = properties;");
+            out.println("    }");
+            out.println();
+            out.println("    public static Builder builder() {");
+            out.println("        return new Builder();");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public List<Expression<?>> getArgs() {");
+            out.println("        return args;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public " + dtoName + " newInstance(Object... values) {");
+            out.println("        " + dtoName + " dto = new " + dtoName + "();");
+            out.println("        for (int i = 0; i < values.length; i++) {");
+            out.println("            if (values[i] == null) {");
+            out.println("                continue;");
+            out.println("            }");
+            out.println("            switch (properties[i]) {");
+            for (int i = 0; i < properties.size(); i++) {
+                Property property = properties.get(i);
+                out.println("                case " + i + ":");
+                out.println("                    dto." + property.setter + "((" + boxed(erasure(property.type)) + ") values[i]);");
+                out.println("                    break;");
+            }
+            out.println("                default:");
+            out.println("                    throw new IllegalStateException(\"unknown property \" + properties[i]);");
+            out.println("            }");
+            out.println("        }");
+            out.println("        return dto;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public <R, C> R accept(Visitor<R, C> v, C context) {");
+            out.println("        return v.visit(this, context);");
+            out.println("    }");
+            out.println();
+            out.println("    public static final class Builder {");
+            out.println();
+            out.println("        private final Expression<?>[] bound = new Expression<?>[PROPERTIES.length];");
+            out.println();
+            out.println("        private Builder() {");
+            out.println("        }");
+            for (int i = 0; i < properties.size(); i++) {
+                Property property = properties.get(i);
+                out.println();
+                out.println("        public Builder " + property.name + "(Expression<" + boxed(property.type) + "> "
+                        + property.name + ") {");
+                out.println("            return bind(" + i + ", " + property.name + ");");
+                out.println("        }");
+            }
+            out.println();
+            out.println("        private Builder bind(int property, Expression<?> expression) {");
+            out.println("            if (expression == null) {");
+            out.println("                throw new IllegalArgumentException(PROPERTIES[property] + \" expression is null\");");
+            out.println("            }");
+            out.println("            if (bound[property] != null) {");
+            out.println("                throw new IllegalStateException(PROPERTIES[property] + \" is already bound\");");
+            out.println("            }");
+            out.println("            bound[property] = expression;");
+            out.println("            return this;");
+            out.println("        }");
+            out.println();
+            out.println("        public " + simpleName + " build() {");
+            out.println("            List<Expression<?>> args = new ArrayList<>(bound.length);");
+            out.println("            int[] properties = new int[bound.length];");
+            out.println("            for (int i = 0; i < bound.length; i++) {");
+            out.println("                if (bound[i] != null) {");
+            out.println("                    properties[args.size()] = i;");
+            out.println("                    args.add(bound[i]);");
+            out.println("                }");
+            out.println("            }");
+            out.println("            if (args.isEmpty()) {");
+            out.println("                throw new IllegalStateException(\"no property is bound\");");
+            out.println("            }");
+            out.println("            return new " + simpleName + "(args, java.util.Arrays.copyOf(properties, args.size()));");
+            out.println("        }");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    private TypeMirror erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type);
+    }
+
+    private String boxed(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils()
+                    .boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind()))
+                    .getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private String setterName(String property) {
+        return "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static final class Property {
+        final String name;
+        final TypeMirror type;
+        final String setter;
+
+        Property(String name, TypeMirror type, String setter) {
+            this.name = name;
+            this.type = type;
+            this.setter = setter;
+        }
+    }
+}
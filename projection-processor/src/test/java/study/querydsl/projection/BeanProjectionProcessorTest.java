@@ -0,0 +1,119 @@
+package study.querydsl.projection;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BeanProjectionProcessorTest {
+
+    //같은 타입(String) 필드 두 개: 위치로 묶으면 값이 뒤바뀐다
+    private static final JavaFileObject NAME = JavaFileObjects.forSourceLines("test.Name",
+            "package test;",
+            "",
+            "@study.querydsl.projection.BeanProjection",
+            "public class Name {",
+            "    private String first;",
+            "    private String last;",
+            "    public void setFirst(String first) { this.first = first; }",
+            "    public void setLast(String last) { this.last = last; }",
+            "    public String getFirst() { return first; }",
+            "    public String getLast() { return last; }",
+            "}");
+
+    @Test
+    public void bindsByPropertyNameNotDeclarationOrder() throws Exception {
+        JavaFileObject usage = JavaFileObjects.forSourceLines("test.Usage",
+                "package test;",
+                "",
+                "import com.querydsl.core.types.Constant;",
+                "import com.querydsl.core.types.ConstantImpl;",
+                "",
+                "public class Usage {",
+                "    public static Name bind() {",
+                "        NameProjection projection = NameProjection.builder()",
+                "                .last(ConstantImpl.create(\"Kim\"))",
+                "                .first(ConstantImpl.create(\"Minsu\"))",
+                "                .build();",
+                //쿼리 결과처럼 getArgs 순서대로 값을 넘긴다
+                "        Object[] row = projection.getArgs().stream()",
+                "                .map(arg -> ((Constant<?>) arg).getConstant())",
+                "                .toArray();",
+                "        return projection.newInstance(row);",
+                "    }",
+                "}");
+
+        Compilation compilation = javac().withProcessors(new BeanProjectionProcessor()).compile(NAME, usage);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("test.NameProjection")
+                .contentsAsUtf8String().contains("serialVersionUID = 1L");
+        Object name = load(compilation, "test.Usage").getMethod("bind").invoke(null);
+        assertEquals("Minsu", name.getClass().getMethod("getFirst").invoke(name));
+        assertEquals("Kim", name.getClass().getMethod("getLast").invoke(name));
+    }
+
+    @Test
+    public void unknownPropertyDoesNotCompile() {
+        JavaFileObject usage = JavaFileObjects.forSourceLines("test.Usage",
+                "package test;",
+                "",
+                "import com.querydsl.core.types.ConstantImpl;",
+                "",
+                "public class Usage {",
+                "    public static NameProjection bind() {",
+                "        return NameProjection.builder().middle(ConstantImpl.create(\"x\")).build();",
+                "    }",
+                "}");
+
+        Compilation compilation = javac().withProcessors(new BeanProjectionProcessor()).compile(NAME, usage);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("middle");
+    }
+
+    @Test
+    public void fieldWithoutSetterIsRejected() {
+        JavaFileObject dto = JavaFileObjects.forSourceLines("test.Missing",
+                "package test;",
+                "",
+                "@study.querydsl.projection.BeanProjection",
+                "public class Missing {",
+                "    private String first;",
+                "    private String last;",
+                "    public void setFirst(String first) { this.first = first; }",
+                "}");
+
+        Compilation compilation = javac().withProcessors(new BeanProjectionProcessor()).compile(dto);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("last 에 값을 넣을 setter 가 없습니다");
+    }
+
+    //컴파일 결과(class 파일)에서 바로 읽는 클래스로더
+    private static Class<?> load(Compilation compilation, String className) throws ClassNotFoundException {
+        ClassLoader loader = new ClassLoader(BeanProjectionProcessorTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                JavaFileObject file = compilation
+                        .generatedFile(StandardLocation.CLASS_OUTPUT, name.replace('.', '/') + ".class")
+                        .orElseThrow(() -> new ClassNotFoundException(name));
+                try (InputStream in = file.openInputStream()) {
+                    byte[] bytes = in.readAllBytes();
+                    return defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        };
+        return loader.loadClass(className);
+    }
+}
@@ -0,0 +1,103 @@
+package study.querydsl.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /v2, /v3 응답 인코딩 비교: 기본 JSON(Page 직렬화) vs x-member-columns vs x-member-rows
+ * ./gradlew jmh 로 실행한다. gc 프로파일러(build.gradle)가 한번당 할당량(gc.alloc.rate.norm)도 함께 보여준다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MemberPageEncodingBenchmark {
+
+    static final int TEAMS = 20;
+
+    @Param({"json", "columns", "rows"})
+    String encoding;
+
+    @Param({"20", "1000"})
+    int pageSize;
+
+    private HttpMessageConverter<Object> converter;
+    private MediaType mediaType;
+    private Page<MemberTeamDto> page;
+    private final Body body = new Body();
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        switch (encoding) {
+            case "columns":
+                converter = (HttpMessageConverter<Object>) (HttpMessageConverter<?>)
+                        new MemberPageColumnarJsonConverter(objectMapper.getFactory());
+                mediaType = MemberPageColumnarJsonConverter.MEDIA_TYPE;
+                break;
+            case "rows":
+                converter = (HttpMessageConverter<Object>) (HttpMessageConverter<?>) new MemberPageBinaryConverter();
+                mediaType = MemberPageBinaryConverter.MEDIA_TYPE;
+                break;
+            default:
+                converter = new MappingJackson2HttpMessageConverter(objectMapper);
+                mediaType = MediaType.APPLICATION_JSON;
+        }
+        List<MemberTeamDto> rows = new ArrayList<>();
+        for (int i = 0; i < pageSize; i++) {
+            rows.add(new MemberTeamDto((long) i + 1, "member" + i, i % 100, (long) (i % TEAMS) + 1, "team" + (i % TEAMS)));
+        }
+        page = new PageImpl<>(rows, PageRequest.of(0, pageSize), 1_000_000);
+    }
+
+    //응답 버퍼는 재사용한다(서블릿 응답 버퍼처럼). 쓴 바이트 수를 돌려줘 dead code 로 지워지지 않게 한다.
+    @Benchmark
+    public int write() throws IOException {
+        body.reset();
+        converter.write(page, mediaType, body);
+        return body.bytes.size();
+    }
+
+    private static final class Body implements HttpOutputMessage {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * 1024);
+        private HttpHeaders headers = new HttpHeaders();
+
+        void reset() {
+            bytes.reset();
+            headers = new HttpHeaders();
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return bytes;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
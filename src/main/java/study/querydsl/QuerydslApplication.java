@@ -1,13 +1,22 @@
 package study.querydsl;
 
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.sql.H2Templates;
+import com.querydsl.sql.SQLQueryFactory;
+import com.querydsl.sql.spring.SpringConnectionProvider;
+import com.querydsl.sql.spring.SpringExceptionTranslator;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import study.querydsl.outbox.ChangeRecordingJPAQueryFactory;
+import study.querydsl.outbox.OutboxRecorder;
 
 import javax.persistence.EntityManager;
+import javax.sql.DataSource;
 
 @SpringBootApplication
+@EnableScheduling //변경 피드(outbox) 주기 실행
 public class QuerydslApplication {
 
 	public static void main(String[] args) {
@@ -15,7 +24,16 @@ public class QuerydslApplication {
 	}
 
 	@Bean
-	JPAQueryFactory jpaQueryFactory(EntityManager em){
-		return new JPAQueryFactory(em);
+	JPAQueryFactory jpaQueryFactory(EntityManager em, OutboxRecorder outboxRecorder){
+		//timeout 힌트 + Member/Team 벌크 update/delete 를 outbox 에 기록
+		return new ChangeRecordingJPAQueryFactory(em, outboxRecorder);
+	}
+
+	//querydsl-sql: JPA 트랜잭션의 커넥션을 그대로 사용한다.
+	@Bean
+	SQLQueryFactory sqlQueryFactory(DataSource dataSource){
+		com.querydsl.sql.Configuration configuration = new com.querydsl.sql.Configuration(H2Templates.builder().build());
+		configuration.setExceptionTranslator(new SpringExceptionTranslator());
+		return new SQLQueryFactory(configuration, new SpringConnectionProvider(dataSource));
 	}
 }
@@ -0,0 +1,48 @@
+package study.querydsl.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 한 트랜잭션(또는 한 번의 벌크 연산)에서 바뀐 회원/팀
+ * 커밋 후 MemberSearchCache 가 이 변경에 영향을 받을 수 있는 항목만 지운다.
+ */
+class MemberChanges {
+
+    //변경 전, 후 상태를 모두 담는다(전: 결과에서 빠질 수 있음, 후: 결과에 들어올 수 있음)
+    final List<MemberState> memberStates = new ArrayList<>();
+    //결과에 이 회원/팀이 들어 있으면 값이 바뀌었으므로 지운다
+    final Set<Long> memberIds = new HashSet<>();
+    final Set<Long> teamIds = new HashSet<>();
+    //이 팀명으로 검색한 항목은 지운다(팀명 변경 전/후)
+    final Set<String> teamNames = new HashSet<>();
+    //벌크 연산처럼 변경 전 상태를 모르면 total 이 바뀔 수 있으므로 페이지 항목은 모두 지운다
+    boolean pagesAffected;
+    //벌크 연산으로 팀명이 바뀌었으면 팀명 조건이 있는 항목은 모두 지운다
+    boolean anyTeamName;
+
+    void member(MemberState state) {
+        memberStates.add(state);
+        memberIds.add(state.getMemberId());
+    }
+
+    void team(Long teamId, Collection<String> names) {
+        teamIds.add(teamId);
+        for (String name : names) {
+            if (name != null) {
+                teamNames.add(name);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return memberIds.isEmpty() && teamIds.isEmpty() && !pagesAffected && !anyTeamName;
+    }
+
+    int size() {
+        return memberIds.size() + teamIds.size();
+    }
+}
@@ -0,0 +1,500 @@
+package study.querydsl.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.BulkChangeRecorded;
+import study.querydsl.repository.UnknownTotalPage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * MemberTeamDto 검색 결과 캐시(Caffeine)
+ * 키는 정규화한 MemberSearchCondition + Pageable 이고, 결과 행 수를 무게로 제거하며 TTL(expireAfterWrite)이 지나면 다시 조회한다.
+ * 회원/팀이 바뀌면 커밋 후 그 변경 전/후 값이 조건에 맞을 수 있는 항목만 지운다.
+ * (B 팀 회원이 바뀌면 teamName=B 또는 조건 없는 항목만, age 가 바뀌면 그 나이를 포함하는 범위의 항목만)
+ * 항목 전체를 훑지 않도록 조건의 팀명/나이 하한, 결과의 회원/팀 id 로 항목을 색인해 두고 후보만 확인한다.
+ * MemberTeamDto 는 setter 가 있으므로 넣을 때와 꺼낼 때 복사해 호출자끼리 같은 인스턴스를 나눠 쓰지 않는다.
+ * 쓰기 트랜잭션 안에서는 아직 커밋 안 된 변경을 봐야 하므로 캐시를 거치지 않는다.
+ */
+@Component
+public class MemberSearchCache {
+
+    private static final int LOAD_CHUNK = 1000;
+    //팀명 조건이 없는 항목의 색인 키
+    private static final String ANY_TEAM = "";
+
+    private final boolean enabled;
+    private final long maxWeight;
+    private final JdbcTemplate jdbcTemplate;
+
+    //제거 알림을 호출한 스레드에서 바로 처리해 색인과 어긋나는 시간을 없앤다
+    private final Cache<Key, Entry> entries;
+    //조건의 팀명(없으면 ANY_TEAM) -> 조건의 ageGoe(없으면 Integer.MIN_VALUE) -> 항목
+    private final Map<String, NavigableMap<Integer, Set<Entry>>> byCondition = new ConcurrentHashMap<>();
+    //결과에 들어 있는 회원/팀 id -> 항목
+    private final Map<Long, Set<Entry>> byMemberId = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Entry>> byTeamId = new ConcurrentHashMap<>();
+    private final Set<Entry> pages = ConcurrentHashMap.newKeySet();
+    //조회 도중 무효화가 일어났으면 그 결과는 넣지 않는다(커밋 전 값일 수 있다)
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final MeterRegistry meterRegistry;
+
+    public MemberSearchCache(@Value("${querydsl.search-cache.enabled:false}") boolean enabled,
+                             @Value("${querydsl.search-cache.max-weight:100000}") long maxWeight,
+                             @Value("${querydsl.search-cache.ttl:30000}") long ttlMillis,
+                             JdbcTemplate jdbcTemplate,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxWeight = maxWeight;
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Key key, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, entry.weight))
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .executor(Runnable::run)
+                .removalListener(this::onRemoval)
+                .build();
+        this.hits = meterRegistry.counter("member.search.cache", "result", "hit");
+        this.misses = meterRegistry.counter("member.search.cache", "result", "miss");
+        meterRegistry.gauge("member.search.cache.hit.ratio", this, MemberSearchCache::hitRatio);
+        meterRegistry.gauge("member.search.cache.size", this, MemberSearchCache::size);
+        meterRegistry.gauge("member.search.cache.weight", this, MemberSearchCache::weight);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<MemberTeamDto> list(String name, MemberSearchCondition condition,
+                                    Supplier<List<MemberTeamDto>> loader) {
+        if (bypass()) {
+            return loader.get();
+        }
+        Key key = new Key(name, normalize(condition), null);
+        Entry cached = lookup(key);
+        if (cached != null) {
+            return copy(cached.content);
+        }
+        long startGeneration = generation.get();
+        List<MemberTeamDto> content = loader.get();
+        store(new Entry(key, copy(content), -1), startGeneration);
+        return content;
+    }
+
+    public Page<MemberTeamDto> page(String name, MemberSearchCondition condition, Pageable pageable,
+                                    Supplier<Page<MemberTeamDto>> loader) {
+        if (bypass()) {
+            return loader.get();
+        }
+        Key key = new Key(name, normalize(condition), pageable);
+        Entry cached = lookup(key);
+        if (cached != null) {
+            return new PageImpl<>(copy(cached.content), pageable, cached.total);
+        }
+        long startGeneration = generation.get();
+        Page<MemberTeamDto> page = loader.get();
+        //마감이 지나 전체 건수를 모르는 페이지는 넣지 않는다(다음 요청이 count 를 다시 시도한다)
+        if (!UnknownTotalPage.isUnknown(page)) {
+            store(new Entry(key, copy(page.getContent()), page.getTotalElements()), startGeneration);
+        }
+        return page;
+    }
+
+    /**
+     * 캐시에 있는 항목만 돌려주고 없으면 null(불러오지도, 넣지도 않는다).
+     * fields= 처럼 같은 조건의 전체 row 가 있으면 줄여 쓰고, 없으면 더 좁은 쿼리로 읽는 조회가 쓴다.
+     */
+    public List<MemberTeamDto> cachedList(String name, MemberSearchCondition condition) {
+        if (bypass()) {
+            return null;
+        }
+        Entry cached = entries.getIfPresent(new Key(name, normalize(condition), null));
+        if (cached == null) {
+            return null;
+        }
+        hits.increment();
+        return copy(cached.content);
+    }
+
+    public Page<MemberTeamDto> cachedPage(String name, MemberSearchCondition condition, Pageable pageable) {
+        if (bypass()) {
+            return null;
+        }
+        Entry cached = entries.getIfPresent(new Key(name, normalize(condition), pageable));
+        if (cached == null) {
+            return null;
+        }
+        hits.increment();
+        return new PageImpl<>(copy(cached.content), pageable, cached.total);
+    }
+
+    private boolean bypass() {
+        return !enabled || (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+
+    private Entry lookup(Key key) {
+        Entry entry = entries.getIfPresent(key);
+        (entry != null ? hits : misses).increment();
+        return entry;
+    }
+
+    //색인을 먼저 만들고 넣는다. 넣는 사이에 무효화가 지나갔으면 다시 뺀다.
+    private void store(Entry entry, long startGeneration) {
+        if (generation.get() != startGeneration || entry.weight > maxWeight) {
+            return;
+        }
+        index(entry);
+        entries.put(entry.key, entry);
+        if (generation.get() != startGeneration) {
+            entries.asMap().remove(entry.key, entry);
+        }
+    }
+
+    private void onRemoval(Key key, Entry entry, RemovalCause cause) {
+        unindex(entry);
+        if (cause == RemovalCause.SIZE) {
+            meterRegistry.counter("member.search.cache.evictions", "cause", "size").increment();
+        } else if (cause == RemovalCause.EXPIRED) {
+            meterRegistry.counter("member.search.cache.evictions", "cause", "expired").increment();
+        }
+    }
+
+    private void index(Entry entry) {
+        MemberSearchCondition condition = entry.key.condition;
+        byCondition.computeIfAbsent(teamKey(condition.getTeamName()), teamName -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(ageKey(condition.getAgeGoe()), ageGoe -> ConcurrentHashMap.newKeySet())
+                .add(entry);
+        entry.memberIds.forEach(memberId -> add(byMemberId, memberId, entry));
+        entry.teamIds.forEach(teamId -> add(byTeamId, teamId, entry));
+        if (entry.isPage()) {
+            pages.add(entry);
+        }
+    }
+
+    private void unindex(Entry entry) {
+        MemberSearchCondition condition = entry.key.condition;
+        NavigableMap<Integer, Set<Entry>> byAge = byCondition.get(teamKey(condition.getTeamName()));
+        if (byAge != null) {
+            Set<Entry> sameAge = byAge.get(ageKey(condition.getAgeGoe()));
+            if (sameAge != null) {
+                sameAge.remove(entry);
+            }
+        }
+        entry.memberIds.forEach(memberId -> remove(byMemberId, memberId, entry));
+        entry.teamIds.forEach(teamId -> remove(byTeamId, teamId, entry));
+        pages.remove(entry);
+    }
+
+    private static void add(Map<Long, Set<Entry>> index, Long id, Entry entry) {
+        index.compute(id, (key, set) -> {
+            Set<Entry> bucket = set == null ? ConcurrentHashMap.newKeySet() : set;
+            bucket.add(entry);
+            return bucket;
+        });
+    }
+
+    private static void remove(Map<Long, Set<Entry>> index, Long id, Entry entry) {
+        index.computeIfPresent(id, (key, set) -> {
+            set.remove(entry);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static String teamKey(String teamName) {
+        return teamName == null ? ANY_TEAM : teamName;
+    }
+
+    private static int ageKey(Integer ageGoe) {
+        return ageGoe == null ? Integer.MIN_VALUE : ageGoe;
+    }
+
+    /**
+     * 변경에 영향을 받을 수 있는 항목만 지우고 지운 개수를 돌려준다.
+     * 지운 개수는 source(entity, bulk) 별로 member.search.cache.invalidation.fanout 에 남는다.
+     */
+    int invalidate(String source, MemberChanges changes) {
+        if (size() > 0) {
+            resolveTeamNames(changes);
+        }
+        return evict(source, changes);
+    }
+
+    private int evict(String source, MemberChanges changes) {
+        generation.incrementAndGet();
+        int removed = 0;
+        for (Entry entry : candidates(changes)) {
+            if (entries.asMap().remove(entry.key, entry)) {
+                removed++;
+            }
+        }
+        DistributionSummary.builder("member.search.cache.invalidation.fanout")
+                .tag("source", source)
+                .register(meterRegistry)
+                .record(removed);
+        if (removed > 0) {
+            meterRegistry.counter("member.search.cache.evictions", "cause", "invalidated").increment(removed);
+        }
+        return removed;
+    }
+
+    private Set<Entry> candidates(MemberChanges changes) {
+        Set<Entry> candidates = new HashSet<>();
+        if (changes.pagesAffected) {
+            candidates.addAll(pages);
+        }
+        if (changes.anyTeamName) {
+            byCondition.forEach((teamName, byAge) -> {
+                if (!ANY_TEAM.equals(teamName)) {
+                    byAge.values().forEach(candidates::addAll);
+                }
+            });
+        }
+        for (String teamName : changes.teamNames) {
+            NavigableMap<Integer, Set<Entry>> byAge = byCondition.get(teamName);
+            if (byAge != null) {
+                byAge.values().forEach(candidates::addAll);
+            }
+        }
+        //결과에 들어 있던 회원/팀의 값이 바뀌었다
+        changes.memberIds.forEach(memberId -> candidates.addAll(byMemberId.getOrDefault(memberId, Collections.emptySet())));
+        changes.teamIds.forEach(teamId -> candidates.addAll(byTeamId.getOrDefault(teamId, Collections.emptySet())));
+        //변경 전/후 상태가 조건에 맞으면 결과에 들어오거나 빠지고, total 이 바뀐다
+        for (MemberState state : changes.memberStates) {
+            for (Entry entry : conditionCandidates(state)) {
+                if (!candidates.contains(entry) && couldMatch(entry.key.condition, state)) {
+                    candidates.add(entry);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    //팀명 조건이 상태의 팀명(모르면 모든 팀명)이거나 없고, ageGoe <= age 인 항목
+    private List<Entry> conditionCandidates(MemberState state) {
+        List<NavigableMap<Integer, Set<Entry>>> byTeam = new ArrayList<>();
+        if (state.isTeamNameKnown()) {
+            NavigableMap<Integer, Set<Entry>> sameTeam = state.getTeamName() == null ? null : byCondition.get(state.getTeamName());
+            if (sameTeam != null) {
+                byTeam.add(sameTeam);
+            }
+            NavigableMap<Integer, Set<Entry>> anyTeam = byCondition.get(ANY_TEAM);
+            if (anyTeam != null) {
+                byTeam.add(anyTeam);
+            }
+        } else {
+            byTeam.addAll(byCondition.values());
+        }
+        List<Entry> candidates = new ArrayList<>();
+        for (NavigableMap<Integer, Set<Entry>> byAge : byTeam) {
+            byAge.headMap(state.getAge(), true).values().forEach(candidates::addAll);
+        }
+        return candidates;
+    }
+
+    //where 절(usernameEq, teamNameEq, ageGoe, ageLoe)과 같은 의미로 판단한다. 팀명을 모르는 상태는 팀명 조건에 맞는 것으로 본다
+    static boolean couldMatch(MemberSearchCondition condition, MemberState state) {
+        if (hasText(condition.getUsername())) {
+            boolean usernameMatches = condition.isUsernameIgnoreCase()
+                    ? Member.normalizeUsername(condition.getUsername()).equals(Member.normalizeUsername(state.getUsername()))
+                    : condition.getUsername().equals(state.getUsername());
+            if (!usernameMatches) {
+                return false;
+            }
+        }
+        if (state.isTeamNameKnown() && hasText(condition.getTeamName())
+                && !condition.getTeamName().equals(state.getTeamName())) {
+            return false;
+        }
+        if (condition.getAgeGoe() != null && state.getAge() < condition.getAgeGoe()) {
+            return false;
+        }
+        return condition.getAgeLoe() == null || state.getAge() <= condition.getAgeLoe();
+    }
+
+    /**
+     * 벌크 update/delete, write-behind 는 엔티티 이벤트를 거치지 않아 변경 전 상태를 모른다.
+     * 커밋 후 현재 상태로 맞춰 보고, 결과에 그 회원이 있던 항목과 total 이 바뀌었을 수 있는 페이지 항목을 지운다.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBulkChange(BulkChangeRecorded event) {
+        if (!enabled) {
+            return;
+        }
+        MemberChanges changes = new MemberChanges();
+        if (event.getAggregateType() == AggregateType.MEMBER) {
+            changes.memberIds.addAll(event.getAggregateIds());
+            if (size() > 0) {
+                changes.memberStates.addAll(loadStates(event.getAggregateIds()));
+            }
+            changes.pagesAffected = true;
+        } else if (event.getAggregateType() == AggregateType.TEAM) {
+            changes.teamIds.addAll(event.getAggregateIds());
+            changes.anyTeamName = true;
+        }
+        invalidate("bulk", changes);
+    }
+
+    //초기화 안 된 팀 프록시라 팀명을 모르는 상태는 팀 id 로 팀명을 채운다(모르면 모든 팀명 조건에 맞는 것으로 본다)
+    private void resolveTeamNames(MemberChanges changes) {
+        Set<Long> teamIds = changes.memberStates.stream()
+                .filter(state -> !state.isTeamNameKnown())
+                .map(MemberState::getTeamId)
+                .collect(Collectors.toSet());
+        if (teamIds.isEmpty()) {
+            return;
+        }
+        Map<Long, String> names = new HashMap<>();
+        List<Long> ids = new ArrayList<>(teamIds);
+        for (int from = 0; from < ids.size(); from += LOAD_CHUNK) {
+            List<Long> chunk = ids.subList(from, Math.min(from + LOAD_CHUNK, ids.size()));
+            jdbcTemplate.query("select id, name from team where id in (" + placeholders(chunk) + ")",
+                    rs -> {
+                        names.put(rs.getLong(1), rs.getString(2));
+                    }, chunk.toArray());
+        }
+        changes.memberStates.replaceAll(state -> state.isTeamNameKnown() || !names.containsKey(state.getTeamId())
+                ? state
+                : MemberState.of(state.getMemberId(), state.getUsername(), state.getAge(),
+                        state.getTeamId(), names.get(state.getTeamId())));
+    }
+
+    private List<MemberState> loadStates(List<Long> memberIds) {
+        List<MemberState> states = new ArrayList<>();
+        for (int from = 0; from < memberIds.size(); from += LOAD_CHUNK) {
+            List<Long> chunk = memberIds.subList(from, Math.min(from + LOAD_CHUNK, memberIds.size()));
+            states.addAll(jdbcTemplate.query(
+                    "select m.member_id, m.username, m.age, t.id, t.name from member m"
+                            + " left join team t on t.id = m.team_id where m.member_id in (" + placeholders(chunk) + ")",
+                    (rs, rowNum) -> MemberState.of(rs.getLong(1), rs.getString(2), rs.getInt(3),
+                            rs.getObject(4, Long.class), rs.getString(5)),
+                    chunk.toArray()));
+        }
+        return states;
+    }
+
+    private static String placeholders(List<Long> ids) {
+        return ids.stream().map(id -> "?").collect(Collectors.joining(","));
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        clearEntries();
+    }
+
+    private void clearEntries() {
+        entries.invalidateAll();
+        entries.cleanUp();
+    }
+
+    public int size() {
+        entries.cleanUp();
+        return (int) entries.estimatedSize();
+    }
+
+    long weight() {
+        return entries.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private static List<MemberTeamDto> copy(List<MemberTeamDto> content) {
+        List<MemberTeamDto> copies = new ArrayList<>(content.size());
+        for (MemberTeamDto dto : content) {
+            copies.add(new MemberTeamDto(dto.getMemberId(), dto.getUsername(), dto.getAge(),
+                    dto.getTeamId(), dto.getTeamName()));
+        }
+        return copies;
+    }
+
+    //빈 문자열은 조건이 없는 것과 같고, 대소문자 무시 검색은 정규화한 값으로 키를 만든다
+    static MemberSearchCondition normalize(MemberSearchCondition condition) {
+        MemberSearchCondition normalized = new MemberSearchCondition();
+        if (hasText(condition.getUsername())) {
+            normalized.setUsernameIgnoreCase(condition.isUsernameIgnoreCase());
+            normalized.setUsername(condition.isUsernameIgnoreCase()
+                    ? Member.normalizeUsername(condition.getUsername()) : condition.getUsername());
+        }
+        normalized.setTeamName(hasText(condition.getTeamName()) ? condition.getTeamName() : null);
+        normalized.setAgeGoe(condition.getAgeGoe());
+        normalized.setAgeLoe(condition.getAgeLoe());
+        return normalized;
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+        final String name;
+        final MemberSearchCondition condition;
+        final Pageable pageable; //목록(list)이면 null
+    }
+
+    //equals 를 두지 않는다(색인은 인스턴스로 구분해, 같은 키로 교체된 이전 항목만 빠지게 한다)
+    private static final class Entry {
+        final Key key;
+        final List<MemberTeamDto> content;
+        final long total; //목록(list)이면 -1
+        final long weight;
+        final Set<Long> memberIds = new HashSet<>();
+        final Set<Long> teamIds = new HashSet<>();
+
+        Entry(Key key, List<MemberTeamDto> content, long total) {
+            this.key = key;
+            this.content = Collections.unmodifiableList(content);
+            this.total = total;
+            this.weight = content.size() + 1L;
+            for (MemberTeamDto dto : content) {
+                memberIds.add(dto.getMemberId());
+                if (dto.getTeamId() != null) {
+                    teamIds.add(dto.getTeamId());
+                }
+            }
+        }
+
+        boolean isPage() {
+            return total >= 0;
+        }
+    }
+}
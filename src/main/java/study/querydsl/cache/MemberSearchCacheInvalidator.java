@@ -0,0 +1,147 @@
+package study.querydsl.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 엔티티 insert/update/delete 를 모아 커밋 후 MemberSearchCache 에서 영향받는 항목만 지운다.
+ * JPA 리스너(@PostUpdate)는 변경 전 값을 모르기 때문에 hibernate 이벤트의 old state 를 사용한다.
+ * 한 트랜잭션의 변경은 한번에 모아서 무효화한다(대량 등록에서 flush 마다 캐시를 훑지 않도록).
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberSearchCacheInvalidator
+        implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final MemberSearchCache cache;
+
+    @PostConstruct
+    void register() {
+        if (!cache.isEnabled()) {
+            return;
+        }
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        //새 팀에는 아직 회원이 없으므로 검색 결과가 바뀌지 않는다
+        if (event.getEntity() instanceof Member) {
+            MemberState state = memberState(event.getPersister(), event.getId(), event.getState());
+            record(changes -> changes.member(state));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Member) {
+            MemberState after = memberState(event.getPersister(), event.getId(), event.getState());
+            MemberState before = event.getOldState() != null
+                    ? memberState(event.getPersister(), event.getId(), event.getOldState()) : null;
+            record(changes -> {
+                changes.member(after);
+                if (before != null) {
+                    changes.member(before);
+                } else {
+                    //detached merge 처럼 변경 전 값을 모르면 total 이 바뀌었을 수 있는 페이지 항목은 모두 지운다
+                    changes.pagesAffected = true;
+                }
+            });
+        } else if (entity instanceof Team) {
+            Object[] oldState = event.getOldState();
+            String newName = (String) value(event.getPersister(), event.getState(), "name");
+            String oldName = oldState != null ? (String) value(event.getPersister(), oldState, "name") : null;
+            record(changes -> {
+                changes.team((Long) event.getId(), Arrays.asList(oldName, newName));
+                changes.anyTeamName |= oldState == null;
+            });
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Member) {
+            MemberState state = memberState(event.getPersister(), event.getId(), event.getDeletedState());
+            record(changes -> changes.member(state));
+        } else if (entity instanceof Team) {
+            String name = (String) value(event.getPersister(), event.getDeletedState(), "name");
+            record(changes -> changes.team((Long) event.getId(), Arrays.asList(name)));
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private static MemberState memberState(EntityPersister persister, Object id, Object[] state) {
+        String username = (String) value(persister, state, "username");
+        int age = (Integer) value(persister, state, "age");
+        Team team = (Team) value(persister, state, "team");
+        if (team == null) {
+            return MemberState.of((Long) id, username, age, null, null);
+        }
+        //프록시의 getId() 는 초기화하지 않지만 getName() 은 flush 도중 select 를 일으키므로 읽지 않는다
+        return Hibernate.isInitialized(team)
+                ? MemberState.of((Long) id, username, age, team.getId(), team.getName())
+                : MemberState.unknownTeamName((Long) id, username, age, team.getId());
+    }
+
+    private static Object value(EntityPersister persister, Object[] state, String property) {
+        return state[persister.getEntityMetamodel().getPropertyIndex(property)];
+    }
+
+    //트랜잭션마다 변경을 모아 두고, 커밋되면 한번에 무효화한다
+    private void record(Consumer<MemberChanges> change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            MemberChanges changes = new MemberChanges();
+            change.accept(changes);
+            cache.invalidate("entity", changes);
+            return;
+        }
+        MemberChanges changes = (MemberChanges) TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            MemberChanges created = new MemberChanges();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MemberSearchCacheInvalidator.this);
+                    if (status == STATUS_COMMITTED && !created.isEmpty()) {
+                        cache.invalidate("entity", created);
+                    }
+                }
+            });
+            changes = created;
+        }
+        change.accept(changes);
+    }
+}
@@ -0,0 +1,25 @@
+package study.querydsl.cache;
+
+import lombok.Value;
+
+/**
+ * 변경 전/후 회원 한 명의 검색 대상 값(username, age, 팀)
+ * teamNameKnown 이 false 면 팀명을 모르는 것(초기화 안 된 프록시)이므로 모든 팀명 조건과 맞는다고 본다.
+ */
+@Value
+public class MemberState {
+    Long memberId;
+    String username;
+    int age;
+    Long teamId;
+    String teamName;
+    boolean teamNameKnown;
+
+    public static MemberState of(Long memberId, String username, int age, Long teamId, String teamName) {
+        return new MemberState(memberId, username, age, teamId, teamName, true);
+    }
+
+    public static MemberState unknownTeamName(Long memberId, String username, int age, Long teamId) {
+        return new MemberState(memberId, username, age, teamId, null, false);
+    }
+}
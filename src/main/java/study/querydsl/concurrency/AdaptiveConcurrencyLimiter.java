@@ -0,0 +1,96 @@
+package study.querydsl.concurrency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 지연시간 기반(TCP Vegas 방식) 동시 실행 제한
+ *
+ * 가장 빠른 응답시간(minRtt)을 부하가 없을 때의 기준으로 보고,
+ * 현재 응답시간이 늘어난 만큼을 DB 앞에 쌓인 대기열 크기로 추정한다.
+ *   queue = limit * (1 - minRtt / rtt)
+ * 대기열이 작으면 limit 을 올리고, 크면 내린다. 한도를 넘는 요청은 기다리지 않고 바로 거절한다.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    //주기적으로 minRtt 를 현재 값으로 다시 잡아서 데이터 증가 등으로 기준이 바뀌는 것을 따라간다.
+    private static final int PROBE_INTERVAL = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    //아래 값들은 update 에서만 사용한다(synchronized)
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samplesSinceProbe;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 정상 완료된 호출의 응답시간으로 limit 을 조정한다.
+     */
+    public void release(long rttNanos) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+        update(rttNanos, inFlightAtCompletion);
+    }
+
+    /**
+     * 예외 등으로 응답시간을 신뢰할 수 없는 경우
+     */
+    public void releaseWithoutSample() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtCompletion) {
+        if (rttNanos <= 0) {
+            return;
+        }
+        if (++samplesSinceProbe >= PROBE_INTERVAL) {
+            samplesSinceProbe = 0;
+            minRttNanos = rttNanos;
+        }
+        minRttNanos = Math.min(minRttNanos, rttNanos);
+
+        int current = limit;
+        int log = Math.max(1, (int) Math.log10(current));
+        int alpha = 3 * log;
+        int beta = 6 * log;
+        double queue = current * (1 - (double) minRttNanos / rttNanos);
+
+        int next = current;
+        if (queue > beta) {
+            next = current - log;
+        } else if (queue < alpha) {
+            //한도까지 쓰지도 않았는데 limit 을 올리면 실제 부하에 상관없이 계속 커진다.
+            if (inFlightAtCompletion * 2 < current) {
+                return;
+            }
+            next = queue <= log ? current + beta : current + log;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.concurrency;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 동시 실행 한도를 넘어 바로 거절한 요청
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    public ConcurrencyLimitExceededException(String name) {
+        super("Concurrency limit exceeded: " + name);
+    }
+}
@@ -0,0 +1,82 @@
+package study.querydsl.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 엔드포인트별 AdaptiveConcurrencyLimiter
+ * 현재 limit, 실행중 건수, 거절 건수를 concurrency.* 메트릭으로 내보낸다.
+ */
+@Component
+public class ConcurrencyLimiters {
+
+    private final MeterRegistry meterRegistry;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimiters(MeterRegistry meterRegistry,
+                               @Value("${querydsl.concurrency-limit.initial:10}") int initialLimit,
+                               @Value("${querydsl.concurrency-limit.min:1}") int minLimit,
+                               @Value("${querydsl.concurrency-limit.max:200}") int maxLimit) {
+        this.meterRegistry = meterRegistry;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * 한도 안이면 call 을 실행하고 응답시간을 limit 조정에 반영한다.
+     * 한도를 넘으면 기다리지 않고 ConcurrencyLimitExceededException
+     */
+    public <T> T execute(String name, Supplier<T> call) {
+        Limiter limiter = limiters.computeIfAbsent(name, this::createLimiter);
+        if (!limiter.limiter.tryAcquire()) {
+            limiter.rejected.increment();
+            throw new ConcurrencyLimitExceededException(name);
+        }
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            T result = call.get();
+            completed = true;
+            return result;
+        } finally {
+            if (completed) {
+                limiter.limiter.release(System.nanoTime() - start);
+            } else {
+                limiter.limiter.releaseWithoutSample();
+            }
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter get(String name) {
+        return limiters.computeIfAbsent(name, this::createLimiter).limiter;
+    }
+
+    private Limiter createLimiter(String name) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+        Tags tags = Tags.of("endpoint", name);
+        meterRegistry.gauge("concurrency.limit", tags, limiter, AdaptiveConcurrencyLimiter::getLimit);
+        meterRegistry.gauge("concurrency.inflight", tags, limiter, AdaptiveConcurrencyLimiter::getInFlight);
+        return new Limiter(limiter, meterRegistry.counter("concurrency.rejected", tags));
+    }
+
+    private static class Limiter {
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final Counter rejected;
+
+        private Limiter(AdaptiveConcurrencyLimiter limiter, Counter rejected) {
+            this.limiter = limiter;
+            this.rejected = rejected;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package study.querydsl.concurrency;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.repository.QueryDeadline;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * DB 조회 전용 스레드풀(bulkhead)
+ * 스레드 수를 커넥션 풀 크기에 맞추고 대기열을 제한해서, DB가 느려져도 웹 스레드는 붙잡히지 않는다.
+ * - 대기열이 가득 차면 바로 DatabaseBusyException
+ * - timeout 안에 끝나지 않으면 TimeoutException (대기열에서 기다리다 타임아웃된 작업은 실행하지 않는다)
+ * - 반환한 future 가 타임아웃/취소되면 실행중인 JDBC statement 도 취소한다.
+ * - 요청 스레드의 QueryDeadline 을 이어받는다.
+ */
+@Component
+public class DatabaseBulkhead {
+
+    private final ThreadPoolExecutor executor;
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final long timeoutMillis;
+
+    public DatabaseBulkhead(DataSource dataSource,
+                            EntityManager em,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${querydsl.db-executor.threads:0}") int threads,
+                            @Value("${querydsl.db-executor.queue-capacity:100}") int queueCapacity,
+                            @Value("${querydsl.db-executor.timeout:5000}") long timeoutMillis) {
+        int poolSize = threads > 0 ? threads : connectionPoolSize(dataSource);
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "db-bulkhead-" + sequence.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.em = em;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Long deadline = QueryDeadline.current();
+        AtomicReference<Session> running = new AtomicReference<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) { //대기 중에 타임아웃 되었다면 커넥션을 쓰지 않는다.
+                    return;
+                }
+                QueryDeadline.restore(deadline);
+                try {
+                    future.complete(transactionTemplate.execute(status -> {
+                        running.set(em.unwrap(Session.class));
+                        try {
+                            return query.get();
+                        } finally {
+                            running.set(null);
+                        }
+                    }));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    QueryDeadline.clear();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new DatabaseBusyException("Database executor queue is full"));
+            return future;
+        }
+        future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                cancelRunningQuery(running.get());
+            }
+        });
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //응답을 기다리는 쪽이 없으니 DB 에서도 바로 중단시킨다(Statement.cancel).
+    private static void cancelRunningQuery(Session session) {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.cancelQuery();
+        } catch (RuntimeException e) {
+            //이미 끝난 조회라면 무시한다.
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    //p6spy 가 DataSource 를 감싸고 있으므로 unwrap 해서 확인한다.
+    private static int connectionPoolSize(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (SQLException e) {
+            //확인할 수 없으면 기본값을 쓴다.
+        }
+        return 10; //HikariCP 기본값
+    }
+}
@@ -0,0 +1,30 @@
+package study.querydsl.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.DigestUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 데이터 버전 + 요청(경로, 파라미터)으로 만든 ETag
+ * 파라미터 순서가 달라도 같은 조회면 같은 값이 나온다. 응답 본문을 만들지 않고 계산할 수 있어 304 를 저장소 조회 전에 판단한다.
+ */
+final class DataVersionETag {
+
+    private DataVersionETag() {
+    }
+
+    static String of(String dataVersion, HttpServletRequest request) {
+        //Accept 에 따라 인코딩(JSON, x-member-rows, x-member-columns)이 달라진다
+        StringBuilder key = new StringBuilder(dataVersion).append('|').append(request.getRequestURI())
+                .append('|').append(request.getHeader(HttpHeaders.ACCEPT));
+        for (Map.Entry<String, String[]> param : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            key.append('|').append(param.getKey()).append('=').append(Arrays.toString(param.getValue()));
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+}
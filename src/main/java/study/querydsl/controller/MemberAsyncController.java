@@ -0,0 +1,71 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import study.querydsl.concurrency.DatabaseBulkhead;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * MemberController 의 비동기 버전
+ * 조회는 DatabaseBulkhead 에서 실행되고, 웹 스레드는 바로 반환된다.
+ * 클라이언트 연결이 끊기거나 async 요청이 타임아웃되면 실행중인 조회를 취소한다.
+ */
+@RestController
+@RequiredArgsConstructor
+public class MemberAsyncController {
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final MemberRepository memberRepository;
+    private final DatabaseBulkhead databaseBulkhead;
+
+    @GetMapping("/async/v1/members")
+    public DeferredResult<List<MemberTeamDto>> searchMemberV1(MemberSearchCondition condition){
+        return toDeferredResult(databaseBulkhead.submit(() -> memberJpaRepository.search(condition)));
+    }
+
+    @GetMapping("/async/v2/members")
+    public DeferredResult<Page<MemberTeamDto>> searchMemberV2(MemberSearchCondition condition, Pageable pageable){
+        return toDeferredResult(databaseBulkhead.submit(() -> memberRepository.searchPageSimple(condition,pageable)));
+    }
+
+    @GetMapping("/async/v3/members")
+    public DeferredResult<Page<MemberTeamDto>> searchMemberV3(MemberSearchCondition condition, Pageable pageable){
+        return toDeferredResult(databaseBulkhead.submit(() -> memberRepository.searchPageComplex(condition,pageable)));
+    }
+
+    //대기열/실행 시간 초과도 과부하로 보고 503 으로 빠르게 돌려준다.
+    @ExceptionHandler(TimeoutException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void timeout(){
+    }
+
+    private <T> DeferredResult<T> toDeferredResult(CompletableFuture<T> future){
+        DeferredResult<T> result = new DeferredResult<>();
+        //연결 끊김(onError)이나 async 타임아웃이면 future 를 취소 -> bulkhead 가 statement 를 취소한다.
+        result.onError(ex -> future.cancel(true));
+        result.onTimeout(() -> future.cancel(true));
+        future.whenComplete((value, ex) -> {
+            if (ex == null) {
+                result.setResult(value);
+            } else {
+                result.setErrorResult(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        });
+        return result;
+    }
+}
@@ -1,36 +1,162 @@
 package study.querydsl.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import study.querydsl.concurrency.ConcurrencyLimiters;
+import study.querydsl.dto.MemberIngestDto;
+import study.querydsl.dto.MemberIngestResult;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.ingest.MemberIngestService;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.DataVersions;
+import study.querydsl.prefetch.MemberPagePrefetcher;
 import study.querydsl.repository.MemberJpaRepository;
 import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.query.MemberBatchSearch;
+import study.querydsl.repository.query.MemberQueryRepository;
+import study.querydsl.repository.query.MemberTeamFields;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
 @RequiredArgsConstructor
 public class MemberController {
 
+    private static final int MAX_BATCH_CONDITIONS = 100;
+
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final MemberQueryRepository memberQueryRepository;
+    private final MemberBatchSearch memberBatchSearch;
+    private final MemberIngestService memberIngestService;
+    private final ObjectMapper objectMapper;
+    //조회 API 는 엔드포인트별 동시 실행 한도 안에서만 DB 에 접근한다.
+    private final ConcurrencyLimiters concurrencyLimiters;
+    //member/team 이 바뀌지 않았으면 /v1, /v3 는 304 로 응답한다.
+    private final DataVersions dataVersions;
+    private final MemberPagePrefetcher memberPagePrefetcher;
 
+    @RequestDeadline(3000) //페이징이 없어 결과가 클 수 있으므로 짧게 둔다
     @GetMapping("/v1/members")
-    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition){
-        return memberJpaRepository.search(condition);
+    public List<?> searchMemberV1(MemberSearchCondition condition,
+                                  @RequestParam(required = false) String fields,
+                                  ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
+        if(fields != null){
+            MemberTeamFields selected = MemberTeamFields.parse(fields);
+            return concurrencyLimiters.execute("v1/members", () -> memberQueryRepository.searchFields(condition, selected));
+        }
+        return concurrencyLimiters.execute("v1/members", () -> memberJpaRepository.search(condition));
+    }
+
+    //화면의 위젯마다 보내던 /v1/members 검색을 한번에 보낸다. 결과는 조건 순서대로의 목록이다.
+    @RequestDeadline(3000)
+    @PostMapping(value = "/v1/members/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<List<MemberTeamDto>> searchMemberV1Batch(@RequestBody List<MemberSearchCondition> conditions){
+        if(conditions.size() > MAX_BATCH_CONDITIONS){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + MAX_BATCH_CONDITIONS + " conditions are allowed");
+        }
+        return concurrencyLimiters.execute("v1/members/batch", () -> memberBatchSearch.search(conditions));
     }
 
+    //차례로 페이지를 넘기면 다음 페이지를 미리 조회해 둔다(querydsl.prefetch.enabled)
     @GetMapping("/v2/members")
-    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable){
-        return memberRepository.searchPageSimple(condition,pageable);
+    public Page<?> searchMemberV2(MemberSearchCondition condition, Pageable pageable,
+                                  @RequestParam(required = false) String fields,
+                                  HttpServletRequest request){
+        if(fields != null){
+            MemberTeamFields selected = MemberTeamFields.parse(fields);
+            return memberPagePrefetcher.page("v2/members", request, condition, fields, pageable,
+                    page -> memberQueryRepository.searchFieldsPage(condition, selected, page));
+        }
+        return memberPagePrefetcher.page("v2/members", request, condition, null, pageable,
+                page -> memberRepository.searchPageSimple(condition, page));
     }
 
+    //fields=username,teamName 처럼 주면 그 속성만 조회해서 응답한다(teamName 이 없으면 team 조인도 안 한다)
     @GetMapping("/v3/members")
-    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable){
-        return memberRepository.searchPageComplex(condition,pageable);
+    public Page<?> searchMemberV3(MemberSearchCondition condition, Pageable pageable,
+                                  @RequestParam(required = false) String fields,
+                                  ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
+        if(fields != null){
+            MemberTeamFields selected = MemberTeamFields.parse(fields);
+            return memberPagePrefetcher.page("v3/members", request.getRequest(), condition, fields, pageable,
+                    page -> memberQueryRepository.searchFieldsPage(condition, selected, page));
+        }
+        return memberPagePrefetcher.page("v3/members", request.getRequest(), condition, null, pageable,
+                page -> memberRepository.searchPageComplex(condition, page));
+    }
+
+    //If-None-Match 가 현재 ETag 와 같으면 304 (동시 실행 한도, 저장소를 거치지 않는다)
+    //버전은 조회 전에 읽는다. 조회 도중 커밋된 변경은 다음 요청에서 ETag 가 달라진다.
+    private boolean notModified(ServletWebRequest request){
+        String dataVersion = dataVersions.tag(AggregateType.MEMBER, AggregateType.TEAM);
+        return request.checkNotModified(DataVersionETag.of(dataVersion, request.getRequest()));
+    }
+
+    @PostMapping(value = "/members/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<MemberIngestResult> bulkInsert(@RequestBody List<MemberIngestDto> members){
+        return toIngestResponse(memberIngestService.submit(members));
+    }
+
+    //한 줄에 회원 하나씩(NDJSON). 잘못된 줄이 있으면 아무것도 넣지 않고 400 과 줄 번호를 돌려준다.
+    @PostMapping(value = "/members/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<MemberIngestResult> bulkInsertNdjson(HttpServletRequest request) throws IOException {
+        List<MemberIngestDto> members = new ArrayList<>();
+        BufferedReader reader = request.getReader();
+        String line;
+        int lineNumber = 0;
+        while((line = reader.readLine()) != null){
+            lineNumber++;
+            if(line.isBlank())
+                continue;
+            try {
+                members.add(objectMapper.readValue(line, MemberIngestDto.class));
+            } catch (JsonProcessingException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "line " + lineNumber + ": " + e.getOriginalMessage());
+            }
+        }
+        return toIngestResponse(memberIngestService.submit(members));
+    }
+
+    @GetMapping("/members/bulk")
+    public MemberIngestResult bulkInsertStats(){
+        return memberIngestService.stats();
+    }
+
+    //큐가 가득 차면 429 로 재시도를 유도한다.
+    private ResponseEntity<MemberIngestResult> toIngestResponse(MemberIngestResult result){
+        if(result == null){
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(memberIngestService.stats());
+        }
+        return ResponseEntity.accepted().body(result);
     }
 }
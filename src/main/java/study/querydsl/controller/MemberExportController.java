@@ -0,0 +1,60 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import study.querydsl.export.ColumnarMemberExportWriter;
+import study.querydsl.export.CsvMemberExportWriter;
+import study.querydsl.export.MemberExportService;
+import study.querydsl.export.MemberExportWriter;
+
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 회원 전체 내보내기
+ * GET /members/export?format=csv|columnar&afterId=...
+ * Accept-Encoding 에 gzip 이 있으면 gzip 으로 압축해서 보낸다.
+ */
+@RestController
+@RequiredArgsConstructor
+public class MemberExportController {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+
+    private final MemberExportService memberExportService;
+
+    @GetMapping("/members/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "csv") String format,
+                                                        @RequestParam(required = false) Long afterId,
+                                                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding){
+        boolean columnar = "columnar".equalsIgnoreCase(format);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = gzip ? new GZIPOutputStream(outputStream, 64 * 1024) : outputStream;
+            MemberExportWriter writer = columnar
+                    ? new ColumnarMemberExportWriter(out)
+                    : new CsvMemberExportWriter(out);
+            memberExportService.export(afterId, writer);
+            if (gzip) {
+                ((GZIPOutputStream) out).finish();
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(columnar ? MediaType.APPLICATION_OCTET_STREAM : TEXT_CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=members." + (columnar ? "mtc" : "csv"));
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+}
@@ -0,0 +1,37 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.search.MemberFullTextSearch;
+import study.querydsl.search.MemberSearchIndexer;
+
+import java.util.List;
+
+/**
+ * 회원명/팀명 전문 검색(오타 허용, 점수 순)
+ * GET /members/search?q=...&limit=20
+ */
+@RestController
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "querydsl.search-index.enabled", havingValue = "true")
+public class MemberSearchController {
+
+    private final MemberFullTextSearch memberFullTextSearch;
+    private final MemberSearchIndexer memberSearchIndexer;
+
+    @GetMapping("/members/search")
+    public List<MemberTeamDto> search(@RequestParam("q") String text,
+                                      @RequestParam(defaultValue = "20") int limit){
+        return memberFullTextSearch.search(text, limit);
+    }
+
+    @PostMapping("/members/search/rebuild")
+    public int rebuild(){
+        return memberSearchIndexer.rebuild();
+    }
+}
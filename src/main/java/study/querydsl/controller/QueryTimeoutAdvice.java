@@ -0,0 +1,19 @@
+package study.querydsl.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * query timeout 힌트로 DB가 중단시킨 조회는 504 로 응답한다.
+ */
+@RestControllerAdvice
+public class QueryTimeoutAdvice {
+
+    @ExceptionHandler({org.springframework.dao.QueryTimeoutException.class,
+            javax.persistence.QueryTimeoutException.class})
+    @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+    public void queryTimeout() {
+    }
+}
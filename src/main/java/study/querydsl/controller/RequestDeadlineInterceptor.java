@@ -0,0 +1,64 @@
+package study.querydsl.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import study.querydsl.repository.QueryDeadline;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 요청마다 QueryDeadline 을 설정한다.
+ * 엔드포인트 설정(@RequestDeadline 또는 기본값)과 클라이언트가 보낸 X-Request-Timeout(ms) 중 짧은 쪽을 쓴다.
+ */
+@Component
+public class RequestDeadlineInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private final long defaultTimeoutMillis;
+
+    public RequestDeadlineInterceptor(@Value("${querydsl.query-deadline.default-timeout:0}") long defaultTimeoutMillis) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long timeout = defaultTimeoutMillis; //0 이면 마감 없음
+        if (handler instanceof HandlerMethod) {
+            RequestDeadline deadline = ((HandlerMethod) handler).getMethodAnnotation(RequestDeadline.class);
+            if (deadline != null) {
+                timeout = deadline.value();
+            }
+        }
+        String header = request.getHeader(TIMEOUT_HEADER);
+        if (hasText(header)) {
+            try {
+                long requested = Long.parseLong(header.trim());
+                if (requested > 0) {
+                    timeout = timeout > 0 ? Math.min(timeout, requested) : requested;
+                }
+            } catch (NumberFormatException e) {
+                //잘못된 헤더는 무시한다.
+            }
+        }
+        if (timeout > 0) {
+            QueryDeadline.set(timeout);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        QueryDeadline.clear();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        QueryDeadline.clear();
+    }
+}
@@ -0,0 +1,34 @@
+package study.querydsl.controller;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+import study.querydsl.repository.UnknownTotalPage;
+
+/**
+ * 마감이 지나 전체 건수를 모르는 페이지(UnknownTotalPage)는 클라이언트가 저장하지 않게 한다.
+ * 조회 전에 붙인 ETag 로 재검증하면 304 와 함께 건수 없는 응답을 계속 쓰게 되기 때문이다.
+ */
+@RestControllerAdvice
+public class UnknownTotalPageAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof UnknownTotalPage) {
+            response.getHeaders().set(HttpHeaders.CACHE_CONTROL, "no-store");
+        }
+        return body;
+    }
+}
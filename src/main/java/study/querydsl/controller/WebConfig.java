@@ -0,0 +1,33 @@
+package study.querydsl.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import study.querydsl.export.MemberPageBinaryConverter;
+import study.querydsl.export.MemberPageColumnarJsonConverter;
+
+import java.util.List;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+
+    private final RequestDeadlineInterceptor requestDeadlineInterceptor;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(requestDeadlineInterceptor);
+    }
+
+    //Accept 로 고를 때만 쓰이도록 기본 JSON 변환기 뒤에 둔다(Accept: */* 는 지금처럼 JSON)
+    //두 타입 모두 +json 이 아니므로 Jackson 변환기(application/json, application/*+json)에 가려지지 않는다
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new MemberPageBinaryConverter());
+        converters.add(new MemberPageColumnarJsonConverter(objectMapper.getFactory()));
+    }
+}
@@ -3,8 +3,10 @@ package study.querydsl.dto;
 import com.querydsl.core.annotations.QueryProjection;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import study.querydsl.projection.BeanProjection;
 
 @Data
+@BeanProjection //MemberDtoProjection 생성(setter 주입, 리플렉션 없음)
 @NoArgsConstructor //기본 생성자를 만들어 주어야 한다.
 public class MemberDto {
     private String username;
@@ -0,0 +1,18 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class MemberIngestDto {
+    private String username;
+    private int age;
+    private String teamName; //없으면 팀 없이 저장한다.
+
+    public MemberIngestDto(String username, int age, String teamName) {
+        this.username = username;
+        this.age = age;
+        this.teamName = teamName;
+    }
+}
@@ -0,0 +1,14 @@
+package study.querydsl.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class MemberIngestResult {
+    private long accepted;  //큐에 들어간 건수
+    private long committed; //DB에 반영된 건수
+    private long rejected;  //큐가 가득 찼거나 이름이 없거나 팀이 없어 받지 않은 건수
+    private long failed;    //받은 뒤 저장하지 못해 member_ingest_dead_letter 에 남긴 건수
+    private int queued;     //아직 반영 대기중인 건수
+}
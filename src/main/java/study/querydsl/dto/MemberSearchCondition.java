@@ -9,4 +9,6 @@ public class MemberSearchCondition {
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
+    //true 면 username 을 대소문자 구분 없이 비교한다(username_lower 인덱스 사용)
+    private boolean usernameIgnoreCase;
 }
@@ -2,8 +2,10 @@ package study.querydsl.dto;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import study.querydsl.projection.BeanProjection;
 
 @Data
+@BeanProjection
 @NoArgsConstructor
 public class UserDto {
     private String name;
@@ -1,10 +1,18 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import study.querydsl.outbox.OutboxEntityListener;
 
 import javax.persistence.*;
+import java.util.Locale;
 
 @Entity
+@EntityListeners(OutboxEntityListener.class) //변경 이력을 outbox에 남긴다
+@Table(indexes = { //정렬 허용(SortPolicy) 대상 컬럼
+        @Index(name = "idx_member_age", columnList = "age"),
+        @Index(name = "idx_member_username", columnList = "username"),
+        @Index(name = "idx_member_username_lower", columnList = "username_lower") //대소문자 무시 검색
+})
 @Getter
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
@@ -16,6 +24,12 @@ public class Member {
     private Long id;
 
     private String username;
+    //username 을 소문자로 정규화한 값. DB 가 계산하는 컬럼이라 벌크 update, JDBC insert 에서도 어긋나지 않는다.
+    //insert/update 에는 포함하지 않고, 엔티티 필드는 setUsername/생성자에서 같은 규칙으로 맞춰 둔다.
+    @Column(name = "username_lower", insertable = false, updatable = false,
+            columnDefinition = "varchar(255) as lower(username)")
+    @Setter(AccessLevel.NONE)
+    private String usernameLower;
     private int age;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -31,11 +45,20 @@ public class Member {
 
     public Member(String username,int age, Team team){
         this.age = age;
-        this.username = username;
+        setUsername(username);
         if(team != null)
             changeTeam(team);
     }
 
+    public void setUsername(String username) {
+        this.username = username;
+        this.usernameLower = normalizeUsername(username);
+    }
+
+    public static String normalizeUsername(String username) {
+        return username == null ? null : username.toLowerCase(Locale.ROOT);
+    }
+
     private void changeTeam(Team team) {
         this.team = team;
         team.getMembers().add(this);
@@ -0,0 +1,38 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * 대량 등록(202 로 받은 뒤)에서 저장하지 못한 회원
+ * 재시도해도 실패했거나 종료 전에 쓰지 못한 회원을 남겨 두고, 원인을 고친 뒤 다시 등록할 수 있게 한다.
+ */
+@Entity
+@Table(name = "member_ingest_dead_letter")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class MemberIngestDeadLetter {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY) //JDBC로 바로 insert 하기 때문에 DB에서 채번
+    private Long id;
+
+    private String username;
+    private int age;
+    private String teamName;
+
+    @Column(length = 2000)
+    private String error;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,40 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * member ⋈ team 결과를 미리 펼쳐둔 조회 전용 테이블
+ * 쓰기는 outbox를 통해 MemberTeamProjector 만 수행한다.
+ */
+@Entity
+@Immutable //조회 전용이므로 dirty checking 대상에서 제외
+@Table(name = "member_team", indexes = @Index(name = "idx_member_team_username_lower", columnList = "username_lower"))
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class MemberTeamView {
+    @Id
+    @Column(name = "member_id")
+    private Long memberId;
+
+    private String username;
+    @Column(name = "username_lower")
+    private String usernameLower;
+    private int age;
+
+    @Column(name = "team_id")
+    private Long teamId;
+
+    @Column(name = "team_name")
+    private String teamName;
+}
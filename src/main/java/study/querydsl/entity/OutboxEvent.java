@@ -0,0 +1,38 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.EventType;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Member/Team 변경 이력
+ * 엔티티 변경과 같은 트랜잭션에서 기록되고, id 순서가 곧 변경 순서이다.
+ */
+@Entity
+@Table(name = "outbox_event")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY) //JDBC로 바로 insert 하기 때문에 DB에서 채번
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private AggregateType aggregateType;
+    private Long aggregateId;
+
+    @Enumerated(EnumType.STRING)
+    private EventType eventType;
+
+    @Column(length = 2000)
+    private String payload;
+
+    private LocalDateTime createdAt;
+}
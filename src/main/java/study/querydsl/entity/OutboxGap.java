@@ -0,0 +1,37 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 소비자가 gap-timeout 이 지나 건너뛴 outbox id
+ * 늦게 커밋된 트랜잭션의 이벤트일 수 있으므로 gap-recheck 동안 다시 확인한다.
+ */
+@Entity
+@Table(name = "outbox_gap")
+@IdClass(OutboxGap.Key.class)
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class OutboxGap {
+    @Id
+    private String consumer;
+    @Id
+    private Long eventId;
+    private LocalDateTime skippedAt;
+
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private String consumer;
+        private Long eventId;
+    }
+}
@@ -0,0 +1,22 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * outbox 소비자별로 어디까지 처리했는지 저장한다.
+ */
+@Entity
+@Table(name = "outbox_offset")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class OutboxOffset {
+    @Id
+    private String consumer;
+    private Long lastEventId;
+}
@@ -1,8 +1,12 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
+import study.querydsl.outbox.OutboxEntityListener;
 
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
@@ -10,6 +14,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@EntityListeners(OutboxEntityListener.class) //팀명 변경도 member_team 에 반영되어야 한다
 @Getter
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
@@ -21,7 +26,10 @@ public class Team {
 
     private String name;
 
+    //EXTRA: size()/contains() 는 count 쿼리로, add() 는 컬렉션을 초기화하지 않는다.
+    //순회하면 전체가 로딩되므로 큰 팀은 TeamMemberRepository 로 페이징 조회한다.
     @OneToMany(mappedBy = "team")
+    @LazyCollection(LazyCollectionOption.EXTRA)
     private List<Member> members = new ArrayList<>();
 
     public Team(String name){
@@ -0,0 +1,39 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * write-behind 버퍼가 max-attempts 번 실패해 반영하지 못한 회원 변경
+ * 재시작해도 남으므로 원인을 고친 뒤 다시 반영할 수 있다.
+ */
+@Entity
+@Table(name = "write_behind_dead_letter")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class WriteBehindDeadLetter {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY) //JDBC로 바로 insert 하기 때문에 DB에서 채번
+    private Long id;
+
+    private Long memberId;
+    private Integer age;
+    private Long teamId;
+    private int failures;
+
+    @Column(length = 2000)
+    private String error;
+
+    private LocalDateTime createdAt;
+}
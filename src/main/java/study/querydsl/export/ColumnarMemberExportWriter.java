@@ -0,0 +1,119 @@
+package study.querydsl.export;
+
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * row group 단위의 컬럼형 바이너리 포맷
+ *
+ * <pre>
+ * "MTC1"
+ * row group* :
+ *   varint rowCount
+ *   varint newTeamCount, (varint teamId, string teamName)*   - 처음 나온 팀만 사전에 추가
+ *   memberId 컬럼 : 이전 id 와의 차이(zigzag varint)
+ *   username 컬럼 : string
+ *   age 컬럼      : zigzag varint
+ *   teamId 컬럼   : varint (0 = 팀 없음)
+ * varint 0 (끝)
+ *
+ * string = varint (null 이면 0, 아니면 byteLength + 1) + UTF-8 bytes
+ * </pre>
+ * 메모리는 row group 하나(ROW_GROUP_SIZE)와 팀 사전만 사용한다.
+ */
+public class ColumnarMemberExportWriter implements MemberExportWriter {
+
+    static final byte[] MAGIC = "MTC1".getBytes(StandardCharsets.US_ASCII);
+    private static final int ROW_GROUP_SIZE = 4096;
+
+    private final OutputStream out;
+    private final List<MemberTeamDto> group = new ArrayList<>(ROW_GROUP_SIZE);
+    private final Set<Long> knownTeams = new HashSet<>();
+    private long previousMemberId;
+
+    public ColumnarMemberExportWriter(OutputStream out) throws IOException {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        this.out.write(MAGIC);
+    }
+
+    @Override
+    public void write(MemberTeamDto row) throws IOException {
+        group.add(row);
+        if (group.size() == ROW_GROUP_SIZE) {
+            writeGroup();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (!group.isEmpty()) {
+            writeGroup();
+        }
+        writeVarint(0);
+        out.flush();
+    }
+
+    private void writeGroup() throws IOException {
+        writeVarint(group.size());
+
+        Map<Long, String> newTeams = new LinkedHashMap<>();
+        for (MemberTeamDto row : group) {
+            if (row.getTeamId() != null && !knownTeams.contains(row.getTeamId())) {
+                newTeams.putIfAbsent(row.getTeamId(), row.getTeamName());
+            }
+        }
+        writeVarint(newTeams.size());
+        for (Map.Entry<Long, String> team : newTeams.entrySet()) {
+            writeVarint(team.getKey());
+            writeString(team.getValue());
+            knownTeams.add(team.getKey());
+        }
+
+        for (MemberTeamDto row : group) {
+            writeVarint(zigzag(row.getMemberId() - previousMemberId));
+            previousMemberId = row.getMemberId();
+        }
+        for (MemberTeamDto row : group) {
+            writeString(row.getUsername());
+        }
+        for (MemberTeamDto row : group) {
+            writeVarint(zigzag(row.getAge()));
+        }
+        for (MemberTeamDto row : group) {
+            writeVarint(row.getTeamId() == null ? 0 : row.getTeamId());
+        }
+        group.clear();
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
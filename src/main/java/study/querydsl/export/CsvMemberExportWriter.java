@@ -0,0 +1,60 @@
+package study.querydsl.export;
+
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * member_id,username,age,team_id,team_name (RFC 4180, 줄 끝은 CRLF)
+ */
+public class CsvMemberExportWriter implements MemberExportWriter {
+
+    private final Writer writer;
+
+    public CsvMemberExportWriter(OutputStream out) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write("member_id,username,age,team_id,team_name\r\n");
+    }
+
+    @Override
+    public void write(MemberTeamDto row) throws IOException {
+        writer.write(String.valueOf(row.getMemberId()));
+        writer.write(',');
+        writeText(row.getUsername());
+        writer.write(',');
+        writer.write(Integer.toString(row.getAge()));
+        writer.write(',');
+        if (row.getTeamId() != null) {
+            writer.write(String.valueOf(row.getTeamId()));
+        }
+        writer.write(',');
+        writeText(row.getTeamName());
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+    }
+
+    //구분자, 따옴표, 줄바꿈이 있을 때만 따옴표로 감싼다.
+    private void writeText(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,75 @@
+package study.querydsl.export;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 회원 전체 내보내기
+ * MemberTeamDto 프로젝션을 forward-only 커서(Hibernate scroll)로 읽으면서 바로 writer 로 넘기므로
+ * 결과 전체를 메모리에 올리지 않는다. member_id 순서로 내보내므로 마지막 id 다음부터 이어받을 수 있다.
+ */
+@Service
+public class MemberExportService {
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+
+    public MemberExportService(JPAQueryFactory queryFactory, PlatformTransactionManager transactionManager) {
+        this.queryFactory = queryFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * @param afterId 이 id 다음부터 내보낸다(null 이면 처음부터)
+     * @return 내보낸 건수
+     */
+    public long export(Long afterId, MemberExportWriter writer) throws IOException {
+        try {
+            Long count = transactionTemplate.execute(status -> {
+                long exported = 0;
+                try (Stream<MemberTeamDto> rows = queryFactory
+                        .select(new QMemberTeamDto(
+                                member.id.as("memberId"),
+                                member.username,
+                                member.age,
+                                team.id.as("teamId"),
+                                team.name.as("teamName")
+                        ))
+                        .from(member)
+                        .leftJoin(member.team, team)
+                        .where(afterId != null ? member.id.gt(afterId) : null)
+                        .orderBy(member.id.asc())
+                        .setHint("org.hibernate.fetchSize", FETCH_SIZE)
+                        .stream()) {
+                    Iterator<MemberTeamDto> iterator = rows.iterator();
+                    while (iterator.hasNext()) {
+                        writer.write(iterator.next());
+                        exported++;
+                    }
+                    writer.finish();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return exported;
+            });
+            return count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package study.querydsl.export;
+
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+
+/**
+ * 조회된 row 를 바로 출력 스트림에 인코딩한다.
+ * 구현체는 row 를 모아두지 않아야(또는 고정 크기만큼만) 메모리가 일정하게 유지된다.
+ */
+public interface MemberExportWriter {
+
+    void write(MemberTeamDto row) throws IOException;
+
+    //남은 버퍼를 모두 내보낸다(스트림은 닫지 않는다).
+    void finish() throws IOException;
+}
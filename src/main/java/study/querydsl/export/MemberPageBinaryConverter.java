@@ -0,0 +1,129 @@
+package study.querydsl.export;
+
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import study.querydsl.repository.UnknownTotalPage;
+import study.querydsl.repository.query.MemberTeamField;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Accept: application/x-member-rows 이면 검색 페이지를 길이 접두 바이너리 row 로 쓴다.
+ *
+ * <pre>
+ * "MTR2"
+ * varint fieldMask        - 들어 있는 속성(bit = MemberTeamField 순서: memberId, username, age, teamId, teamName)
+ * varint page, size
+ * varint totalElements    - 전체 건수를 모르면 0(마감이 지나 count 를 건너뜀), 아니면 totalElements + 1
+ * varint rowCount
+ * row* : varint byteLength + 속성 값(fieldMask 순서)
+ *   memberId : varint
+ *   username : string
+ *   age      : zigzag varint
+ *   teamId   : varint (0 = 팀 없음)
+ *   teamName : string
+ *
+ * string = varint (null 이면 0, 아니면 byteLength + 1) + UTF-8 bytes
+ * </pre>
+ * row 길이가 앞에 있어 모르는 속성이 늘어나도 읽는 쪽이 row 를 건너뛸 수 있다.
+ */
+public class MemberPageBinaryConverter extends AbstractHttpMessageConverter<Page<?>> {
+
+    public static final MediaType MEDIA_TYPE = new MediaType("application", "x-member-rows");
+    static final byte[] MAGIC = "MTR2".getBytes(StandardCharsets.US_ASCII);
+
+    public MemberPageBinaryConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Page.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Page<?> readInternal(Class<? extends Page<?>> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("x-member-rows is write only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Page<?> page, HttpOutputMessage outputMessage) throws IOException {
+        List<?> content = page.getContent();
+        if (!MemberRows.supports(content)) {
+            throw new HttpMessageNotWritableException("Not a member search page: " + content.get(0).getClass());
+        }
+        List<MemberTeamField> fields = MemberRows.fields(content);
+        OutputStream out = new BufferedOutputStream(outputMessage.getBody(), 16 * 1024);
+        out.write(MAGIC);
+        writeVarint(out, MemberRows.mask(fields));
+        writeVarint(out, page.getNumber());
+        writeVarint(out, page.getSize());
+        writeVarint(out, UnknownTotalPage.isUnknown(page) ? 0 : page.getTotalElements() + 1);
+        writeVarint(out, content.size());
+
+        //row 를 먼저 버퍼에 쓰고 길이와 함께 내보낸다(버퍼는 재사용)
+        ByteArrayOutputStream row = new ByteArrayOutputStream(64);
+        for (Object value : content) {
+            row.reset();
+            for (MemberTeamField field : fields) {
+                writeValue(row, field, MemberRows.value(value, field));
+            }
+            writeVarint(out, row.size());
+            row.writeTo(out);
+        }
+        out.flush();
+    }
+
+    private static void writeValue(OutputStream out, MemberTeamField field, Object value) throws IOException {
+        switch (field) {
+            case MEMBER_ID:
+                writeVarint(out, (Long) value);
+                break;
+            case AGE:
+                writeVarint(out, zigzag((Integer) value));
+                break;
+            case TEAM_ID:
+                writeVarint(out, value == null ? 0 : (Long) value);
+                break;
+            default:
+                writeString(out, (String) value);
+        }
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,112 @@
+package study.querydsl.export;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import study.querydsl.repository.UnknownTotalPage;
+import study.querydsl.repository.query.MemberTeamField;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accept: application/x-member-columns 이면 검색 페이지를 속성별 배열(JSON)로 쓴다.
+ * +json 접미사를 쓰면 application/*+json 을 받는 기본 Jackson 변환기가 먼저 골라지므로 쓰지 않는다.
+ *
+ * <pre>
+ * {"page":0,"size":20,"totalKnown":true,"totalElements":100,"totalPages":5,
+ *  "teamNames":["teamA","teamB"],
+ *  "columns":{"memberId":[1,2],"username":["a","b"],"age":[10,20],"teamId":[1,2],"teamName":[0,1]}}
+ * </pre>
+ * 마감이 지나 전체 건수를 모르면 totalKnown 이 false 이고 totalElements, totalPages 는 -1 이다.
+ * 속성 이름은 한번만 나오고, teamName 은 teamNames 사전의 index(팀 없음은 null)로 쓴다.
+ * JsonGenerator 로 스트림에 바로 쓰므로 row 별 Map/노드를 만들지 않는다.
+ */
+public class MemberPageColumnarJsonConverter extends AbstractHttpMessageConverter<Page<?>> {
+
+    public static final MediaType MEDIA_TYPE = new MediaType("application", "x-member-columns");
+
+    private final JsonFactory jsonFactory;
+
+    public MemberPageColumnarJsonConverter(JsonFactory jsonFactory) {
+        super(MEDIA_TYPE);
+        this.jsonFactory = jsonFactory;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Page.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Page<?> readInternal(Class<? extends Page<?>> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("x-member-columns is write only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Page<?> page, HttpOutputMessage outputMessage) throws IOException {
+        List<?> content = page.getContent();
+        if (!MemberRows.supports(content)) {
+            throw new HttpMessageNotWritableException("Not a member search page: " + content.get(0).getClass());
+        }
+        List<MemberTeamField> fields = MemberRows.fields(content);
+        try (JsonGenerator json = jsonFactory.createGenerator(outputMessage.getBody(), JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) { //응답 스트림은 닫지 않는다
+            json.writeStartObject();
+            json.writeNumberField("page", page.getNumber());
+            json.writeNumberField("size", page.getSize());
+            json.writeBooleanField("totalKnown", !UnknownTotalPage.isUnknown(page));
+            json.writeNumberField("totalElements", page.getTotalElements());
+            json.writeNumberField("totalPages", page.getTotalPages());
+
+            Map<String, Integer> teamNames = new HashMap<>();
+            if (fields.contains(MemberTeamField.TEAM_NAME)) {
+                json.writeArrayFieldStart("teamNames");
+                for (Object row : content) {
+                    String teamName = (String) MemberRows.value(row, MemberTeamField.TEAM_NAME);
+                    if (teamName != null && !teamNames.containsKey(teamName)) {
+                        teamNames.put(teamName, teamNames.size());
+                        json.writeString(teamName);
+                    }
+                }
+                json.writeEndArray();
+            }
+
+            json.writeObjectFieldStart("columns");
+            for (MemberTeamField field : fields) {
+                json.writeArrayFieldStart(field.getProperty());
+                for (Object row : content) {
+                    Object value = MemberRows.value(row, field);
+                    if (value == null) {
+                        json.writeNull();
+                    } else if (field == MemberTeamField.TEAM_NAME) {
+                        json.writeNumber(teamNames.get(value));
+                    } else if (value instanceof String) {
+                        json.writeString((String) value);
+                    } else if (value instanceof Integer) {
+                        json.writeNumber((Integer) value);
+                    } else {
+                        json.writeNumber((Long) value);
+                    }
+                }
+                json.writeEndArray();
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package study.querydsl.export;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * x-member-columns / x-member-rows 는 회원 검색 페이지(MemberTeamDto 또는 fields= Map row)만 쓸 수 있다.
+ * 변환기의 canWrite 는 클래스(Page)만 보고 내용은 모르므로, 변환기가 골라진 뒤 쓰기 전에 내용을 보고 406 으로 응답한다.
+ */
+@RestControllerAdvice
+public class MemberPageConverterAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return MemberPageBinaryConverter.class.isAssignableFrom(converterType)
+                || MemberPageColumnarJsonConverter.class.isAssignableFrom(converterType);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof Page && !MemberRows.supports(((Page<?>) body).getContent())) {
+            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE,
+                    selectedContentType + " is only available for member search pages");
+        }
+        return body;
+    }
+}
@@ -0,0 +1,70 @@
+package study.querydsl.export;
+
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.query.MemberTeamField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 검색 결과 row(MemberTeamDto 또는 fields= 로 고른 속성 Map)의 속성 값을 꺼낸다.
+ * 인코더가 row 마다 Map 을 새로 만들지 않고 바로 값을 읽도록 한다.
+ */
+final class MemberRows {
+
+    private static final List<MemberTeamField> ALL =
+            Collections.unmodifiableList(Arrays.asList(MemberTeamField.values()));
+
+    private MemberRows() {
+    }
+
+    static boolean supports(List<?> content) {
+        return content.isEmpty() || content.get(0) instanceof MemberTeamDto || content.get(0) instanceof Map;
+    }
+
+    //Map row 는 첫 row 의 속성만 있다(같은 페이지의 row 는 모두 같은 속성을 가진다)
+    static List<MemberTeamField> fields(List<?> content) {
+        if (content.isEmpty() || content.get(0) instanceof MemberTeamDto) {
+            return ALL;
+        }
+        Map<?, ?> first = (Map<?, ?>) content.get(0);
+        List<MemberTeamField> fields = new ArrayList<>();
+        for (MemberTeamField field : MemberTeamField.values()) {
+            if (first.containsKey(field.getProperty())) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    static Object value(Object row, MemberTeamField field) {
+        if (row instanceof Map) {
+            return ((Map<?, ?>) row).get(field.getProperty());
+        }
+        MemberTeamDto dto = (MemberTeamDto) row;
+        switch (field) {
+            case MEMBER_ID:
+                return dto.getMemberId();
+            case USERNAME:
+                return dto.getUsername();
+            case AGE:
+                return dto.getAge();
+            case TEAM_ID:
+                return dto.getTeamId();
+            default:
+                return dto.getTeamName();
+        }
+    }
+
+    //fields 에 해당하는 비트(MemberTeamField 선언 순서)
+    static int mask(List<MemberTeamField> fields) {
+        int mask = 0;
+        for (MemberTeamField field : fields) {
+            mask |= 1 << field.ordinal();
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,77 @@
+package study.querydsl.ingest;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.Oracle8iDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.enhanced.DatabaseStructure;
+import org.hibernate.id.enhanced.NoopOptimizer;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Member 엔티티(@GeneratedValue)와 같은 방법으로 id 를 n 개 받는다.
+ * 시퀀스를 그대로(증가 1, optimizer 없음) 쓰고 DB 가 여러 행을 한 문장으로 뽑을 수 있으면(H2, PostgreSQL, Oracle)
+ * 한번에 받고, 그 밖에는 Hibernate 의 IdentifierGenerator 로 한 개씩 받는다.
+ */
+class MemberIdAllocator {
+
+    private final EntityManager em;
+    private final JdbcTemplate jdbcTemplate;
+    private final IdentifierGenerator generator;
+    private final String bulkSql; //한번에 받을 수 없으면 null
+
+    MemberIdAllocator(EntityManager em, JdbcTemplate jdbcTemplate) {
+        SessionFactoryImplementor sessionFactory =
+                em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        this.em = em;
+        this.jdbcTemplate = jdbcTemplate;
+        this.generator = sessionFactory.getMetamodel().entityPersister(Member.class).getIdentifierGenerator();
+        this.bulkSql = bulkSql(generator, sessionFactory.getJdbcServices().getDialect());
+    }
+
+    //트랜잭션 안에서 호출한다
+    List<Long> next(int count) {
+        if (bulkSql != null) {
+            return jdbcTemplate.queryForList(bulkSql, Long.class, count);
+        }
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        List<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(((Number) generator.generate(session, null)).longValue());
+        }
+        return ids;
+    }
+
+    private static String bulkSql(IdentifierGenerator generator, Dialect dialect) {
+        if (!(generator instanceof SequenceStyleGenerator)) {
+            return null;
+        }
+        SequenceStyleGenerator sequence = (SequenceStyleGenerator) generator;
+        DatabaseStructure structure = sequence.getDatabaseStructure();
+        //pooled 등 optimizer 가 있으면 시퀀스 값이 곧 id 가 아니다
+        if (!structure.isPhysicalSequence() || structure.getIncrementSize() != 1
+                || !(sequence.getOptimizer() instanceof NoopOptimizer)) {
+            return null;
+        }
+        String nextValue = dialect.getSelectSequenceNextValString(structure.getName());
+        if (dialect instanceof H2Dialect) {
+            return "select " + nextValue + " from system_range(1, ?)";
+        }
+        if (dialect instanceof PostgreSQL81Dialect) {
+            return "select " + nextValue + " from generate_series(1, ?)";
+        }
+        if (dialect instanceof Oracle8iDialect) {
+            return "select " + nextValue + " from dual connect by level <= ?";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,296 @@
+package study.querydsl.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberIngestDto;
+import study.querydsl.dto.MemberIngestResult;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.EventType;
+import study.querydsl.outbox.OutboxRecorder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 회원 대량 등록
+ * 요청 스레드는 제한된 크기의 큐에 넣기만 하고, writer 스레드들이 큐를 batch 단위로 꺼내 저장한다.
+ * 큐에 배치 전체가 들어갈 자리가 없으면 배치 전체를 거절한다(클라이언트는 429 를 받고 재시도).
+ * 받은(202) 뒤에 저장하지 못한 회원은 버리지 않는다. batch 를 max-attempts 번 다시 시도하고, 그래도 실패하면 한 건씩 저장해
+ * 실패한 회원만 member_ingest_dead_letter 에 남긴다(failed). 종료할 때 shutdown-timeout 안에 쓰지 못한 회원도 같은 곳에 남긴다.
+ */
+@Slf4j
+@Service
+public class MemberIngestService {
+
+    private static final String INSERT_SQL =
+            "insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)";
+    private static final String DEAD_LETTER_SQL = "insert into member_ingest_dead_letter" +
+            " (username, age, team_name, error, created_at) values (?, ?, ?, ?, ?)";
+    private static final int ERROR_LENGTH = 2000;
+
+    private final BlockingQueue<MemberIngestDto> queue;
+    private final EntityManager em;
+    private final JdbcTemplate jdbcTemplate;
+    private final OutboxRecorder outboxRecorder;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int writerCount;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long shutdownTimeoutMillis;
+    private final long teamCacheTtlMillis;
+    private final ExecutorService writers;
+    //팀명 -> 팀 id, 회원마다 팀을 조회하지 않도록 캐시한다.
+    private final Map<String, CachedTeam> teamCache = new ConcurrentHashMap<>();
+
+    private final Counter accepted;
+    private final Counter committed;
+    private final Counter rejected;
+    private final Counter failed;
+
+    private MemberIdAllocator idAllocator;
+    private volatile boolean running = true;
+
+    public MemberIngestService(EntityManager em,
+                               JdbcTemplate jdbcTemplate,
+                               OutboxRecorder outboxRecorder,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${querydsl.ingest.queue-capacity:10000}") int queueCapacity,
+                               @Value("${querydsl.ingest.batch-size:500}") int batchSize,
+                               @Value("${querydsl.ingest.writers:2}") int writerCount,
+                               @Value("${querydsl.ingest.max-attempts:3}") int maxAttempts,
+                               @Value("${querydsl.ingest.retry-backoff:200}") long retryBackoffMillis,
+                               @Value("${querydsl.ingest.shutdown-timeout:10000}") long shutdownTimeoutMillis,
+                               @Value("${querydsl.ingest.team-cache-ttl:60000}") long teamCacheTtlMillis) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.em = em;
+        this.jdbcTemplate = jdbcTemplate;
+        this.outboxRecorder = outboxRecorder;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.writerCount = writerCount;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.teamCacheTtlMillis = teamCacheTtlMillis;
+        AtomicInteger sequence = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writerCount, runnable -> {
+            Thread thread = new Thread(runnable, "member-ingest-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.accepted = meterRegistry.counter("member.ingest", "result", "accepted");
+        this.committed = meterRegistry.counter("member.ingest", "result", "committed");
+        this.rejected = meterRegistry.counter("member.ingest", "result", "rejected");
+        this.failed = meterRegistry.counter("member.ingest", "result", "failed");
+        meterRegistry.gauge("member.ingest.queued", queue, BlockingQueue::size);
+    }
+
+    @PostConstruct
+    public void start() {
+        idAllocator = new MemberIdAllocator(em, jdbcTemplate);
+        for (int i = 0; i < writerCount; i++) {
+            writers.execute(this::drainLoop);
+        }
+    }
+
+    //writer 가 큐를 다 비울 때까지 기다리고, 시간 안에 못 쓴 회원은 dead letter 로 남긴다
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        synchronized (this) { //이후의 submit 은 거절되므로 큐에 더 들어오지 않는다
+            running = false;
+        }
+        writers.shutdown();
+        if (writers.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            return;
+        }
+        List<MemberIngestDto> unwritten = new ArrayList<>();
+        queue.drainTo(unwritten);
+        if (!unwritten.isEmpty()) {
+            log.warn("Member ingest stopped with {} members unwritten, moving them to the dead letter table",
+                    unwritten.size());
+            deadLetter(unwritten, "Not written before shutdown");
+        }
+        //쓰는 중인 batch 는 마저 끝낸다
+        if (!writers.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            log.error("Member ingest writers did not finish their batches within {} ms", shutdownTimeoutMillis);
+        }
+    }
+
+    /**
+     * @return 큐에 자리가 없거나 종료 중이면 null (배치 전체 거절)
+     */
+    public synchronized MemberIngestResult submit(List<MemberIngestDto> members) {
+        //큐에서 꺼내는 쪽(writer)은 자리를 늘리기만 하므로 확인 후 넣어도 자리가 모자라지 않는다.
+        if (!running || queue.remainingCapacity() < members.size()) {
+            rejected.increment(members.size());
+            return null;
+        }
+        queue.addAll(members);
+        accepted.increment(members.size());
+        return new MemberIngestResult(members.size(), 0, 0, 0, queue.size());
+    }
+
+    public MemberIngestResult stats() {
+        return new MemberIngestResult((long) accepted.count(), (long) committed.count(),
+                (long) rejected.count(), (long) failed.count(), queue.size());
+    }
+
+    private void drainLoop() {
+        List<MemberIngestDto> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                MemberIngestDto first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                //꺼낸 batch 는 큐로 돌려놓을 수 없으므로 남긴다
+                deadLetter(batch, "Interrupted before the batch was written");
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    //실패한 batch 는 다시 시도하고, 그래도 실패하면 한 건씩 저장해 실패한 회원만 dead letter 로 남긴다.
+    private void writeWithRetry(List<MemberIngestDto> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                write(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    log.warn("Member ingest batch of {} failed {} times, writing one by one", batch.size(), attempt, e);
+                    break;
+                }
+                log.warn("Member ingest batch of {} failed, retrying", batch.size(), e);
+                Thread.sleep(retryBackoffMillis * attempt);
+            }
+        }
+        for (MemberIngestDto member : batch) {
+            try {
+                write(Collections.singletonList(member));
+            } catch (RuntimeException e) {
+                deadLetter(Collections.singletonList(member), String.valueOf(e.getMessage()));
+            }
+        }
+    }
+
+    //저장하지 못한 회원은 테이블에 남긴다(failed 로 센다, 큐가 가득 차서 거절한 rejected 와 따로 센다)
+    private void deadLetter(List<MemberIngestDto> members, String error) {
+        if (members.isEmpty()) {
+            return;
+        }
+        failed.increment(members.size());
+        log.error("{} ingested members could not be written: {}", members.size(), error);
+        String message = error.length() > ERROR_LENGTH ? error.substring(0, ERROR_LENGTH) : error;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            jdbcTemplate.batchUpdate(DEAD_LETTER_SQL, members, batchSize, (ps, member) -> {
+                ps.setString(1, member.getUsername());
+                ps.setInt(2, member.getAge());
+                ps.setString(3, member.getTeamName());
+                ps.setString(4, message);
+                ps.setTimestamp(5, now);
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to store member ingest dead letters {}", members, e);
+        }
+    }
+
+    /*
+     * 엔티티로 persist 하면 회원마다 hibernate_sequence 조회 한번(allocationSize 1)과 outbox insert 한번이 따로 나가
+     * JDBC batch 가 의미가 없어진다. id 는 MemberIdAllocator 로 한번에 받아 오고, member/outbox insert 는 각각 batch 한번으로 보낸다.
+     * 엔티티 리스너를 거치지 않으므로 outbox 는 직접 기록한다.
+     */
+    private void write(List<MemberIngestDto> batch) {
+        int[] counts = transactionTemplate.execute(status -> {
+            List<Object[]> rows = new ArrayList<>(batch.size());
+            for (MemberIngestDto dto : batch) {
+                if (!hasText(dto.getUsername())) {
+                    continue;
+                }
+                Long teamId = null;
+                if (hasText(dto.getTeamName())) {
+                    teamId = resolveTeamId(dto.getTeamName());
+                    if (teamId == null) {
+                        continue;
+                    }
+                }
+                rows.add(new Object[]{null, dto.getUsername(), dto.getAge(), teamId});
+            }
+            if (rows.isEmpty()) {
+                return new int[]{0, batch.size()};
+            }
+            List<Long> ids = idAllocator.next(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                rows.get(i)[0] = ids.get(i);
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows,
+                    new int[]{Types.BIGINT, Types.VARCHAR, Types.INTEGER, Types.BIGINT});
+            outboxRecorder.recordAll(AggregateType.MEMBER, ids, EventType.INSERT, null);
+            return new int[]{rows.size(), batch.size() - rows.size()};
+        });
+        committed.increment(counts[0]);
+        rejected.increment(counts[1]);
+    }
+
+    //없는 팀은 캐시하지 않는다(이후에 만들어질 수 있다).
+    private Long resolveTeamId(String teamName) {
+        long now = System.currentTimeMillis();
+        CachedTeam cached = teamCache.get(teamName);
+        if (cached != null && now - cached.loadedAt < teamCacheTtlMillis) {
+            return cached.id;
+        }
+        List<Long> ids = em.createQuery("select t.id from Team t where t.name = :name order by t.id", Long.class)
+                .setParameter("name", teamName)
+                .setMaxResults(1)
+                .getResultList();
+        if (ids.isEmpty()) {
+            teamCache.remove(teamName);
+            return null;
+        }
+        teamCache.put(teamName, new CachedTeam(ids.get(0), now));
+        return ids.get(0);
+    }
+
+    private static class CachedTeam {
+        private final Long id;
+        private final long loadedAt;
+
+        private CachedTeam(Long id, long loadedAt) {
+            this.id = id;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
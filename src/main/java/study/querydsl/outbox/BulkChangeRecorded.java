@@ -0,0 +1,16 @@
+package study.querydsl.outbox;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * 벌크 update/delete 로 바뀐 id 들(OutboxRecorder.recordAll)
+ * 엔티티 이벤트를 거치지 않는 변경을 캐시 등 다른 컴포넌트에 알린다. 트랜잭션 안에서 발행된다.
+ */
+@Value
+public class BulkChangeRecorded {
+    AggregateType aggregateType;
+    List<Long> aggregateIds;
+    EventType eventType;
+}
@@ -0,0 +1,43 @@
+package study.querydsl.outbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 소비자에게 한번에 넘기는 이벤트 묶음(id 순)
+ */
+public class ChangeBatch {
+
+    private final List<ChangeEvent> events;
+
+    public ChangeBatch(List<ChangeEvent> events) {
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    public List<ChangeEvent> getEvents() {
+        return events;
+    }
+
+    public boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    public long lastEventId() {
+        return events.get(events.size() - 1).getId();
+    }
+
+    /**
+     * 엔티티별 이벤트 목록. 엔티티 안에서는 발생 순서, 엔티티끼리는 처음 바뀐 순서이다.
+     * 현재 값을 다시 읽는 소비자라면 엔티티당 한번만 처리하면 된다.
+     */
+    public Map<String, List<ChangeEvent>> byAggregate() {
+        Map<String, List<ChangeEvent>> grouped = new LinkedHashMap<>();
+        for (ChangeEvent event : events) {
+            grouped.computeIfAbsent(event.aggregateKey(), key -> new ArrayList<>()).add(event);
+        }
+        return grouped;
+    }
+}
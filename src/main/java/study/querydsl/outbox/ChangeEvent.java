@@ -0,0 +1,35 @@
+package study.querydsl.outbox;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * outbox_event 한 건. id 순서가 커밋된 변경 순서이다.
+ * payload 는 벌크 연산일 때 실행한 update/delete 문(조건 포함)이다.
+ */
+@Getter
+@ToString
+public class ChangeEvent {
+    private final long id;
+    private final AggregateType aggregateType;
+    private final Long aggregateId;
+    private final EventType eventType;
+    private final String payload;
+    private final LocalDateTime createdAt;
+
+    public ChangeEvent(long id, AggregateType aggregateType, Long aggregateId, EventType eventType,
+                       String payload, LocalDateTime createdAt) {
+        this.id = id;
+        this.aggregateType = aggregateType;
+        this.aggregateId = aggregateId;
+        this.eventType = eventType;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+
+    public String aggregateKey() {
+        return aggregateType + ":" + aggregateId;
+    }
+}
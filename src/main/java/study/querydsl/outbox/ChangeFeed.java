@@ -0,0 +1,184 @@
+package study.querydsl.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * outbox_event 를 소비자별 offset(outbox_offset) 이후부터 배치로 읽어 넘겨준다.
+ * - 소비자마다 id 순서대로 한 배치씩 처리하므로 같은 엔티티의 변경 순서가 유지된다.
+ * - offset 은 소비자 처리와 같은 트랜잭션에서 갱신된다(select for update 로 동시 처리 방지).
+ * - IDENTITY 는 채번 순서와 커밋 순서가 다를 수 있다. id 가 비어 있으면 아직 커밋되지 않은 트랜잭션일 수 있으므로
+ *   gap-timeout 이 지날 때까지 그 뒤 이벤트는 넘기지 않는다.
+ * - gap-timeout 이 지나 건너뛴 id 는 outbox_gap 에 남기고, gap-recheck 동안 poll 마다 다시 확인한다.
+ *   그 사이 커밋된 이벤트는 다음 배치 앞에 붙여 넘긴다(순서는 늦지만 소비자는 현재 값을 다시 읽으므로 결과는 같다).
+ *   gap-recheck 보다 오래 걸린 트랜잭션의 이벤트는 놓치므로 경고 로그를 남긴다(롤백으로 생긴 빈 id 도 이때 정리된다).
+ */
+@Slf4j
+@Component
+public class ChangeFeed {
+
+    //한 자리에서 다시 확인할 빈 id 최대 개수. 이보다 큰 빈 구간은 seek 등으로 생긴 것으로 보고 앞부분만 남긴다
+    private static final int GAP_LIMIT = 1000;
+
+    private static final RowMapper<ChangeEvent> EVENT_MAPPER = (rs, rowNum) -> new ChangeEvent(
+            rs.getLong(1),
+            AggregateType.valueOf(rs.getString(2)),
+            rs.getLong(3),
+            EventType.valueOf(rs.getString(4)),
+            rs.getString(5),
+            rs.getTimestamp(6).toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<ChangeFeedConsumer> consumers;
+    private final long gapTimeoutMillis;
+    private final long gapRecheckMillis;
+
+    public ChangeFeed(JdbcTemplate jdbcTemplate,
+                      PlatformTransactionManager transactionManager,
+                      ObjectProvider<ChangeFeedConsumer> consumers,
+                      @Value("${querydsl.change-feed.gap-timeout:2000}") long gapTimeoutMillis,
+                      @Value("${querydsl.change-feed.gap-recheck:600000}") long gapRecheckMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.consumers = consumers;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.gapRecheckMillis = gapRecheckMillis;
+    }
+
+    @Scheduled(initialDelayString = "${querydsl.change-feed.poll-interval:${querydsl.read-model.relay-interval:1000}}",
+            fixedDelayString = "${querydsl.change-feed.poll-interval:${querydsl.read-model.relay-interval:1000}}")
+    public void pollAll() {
+        consumers.orderedStream().forEach(consumer -> {
+            try {
+                //밀린 이벤트가 있으면 한번에 따라잡는다
+                int delivered;
+                do {
+                    delivered = poll(consumer);
+                } while (delivered >= consumer.batchSize());
+            } catch (RuntimeException e) {
+                log.warn("change feed consumer {} failed, will retry", consumer.name(), e);
+            }
+        });
+    }
+
+    /**
+     * 다음 배치 하나를 consumer 에게 넘기고 offset 을 옮긴다.
+     * @return 넘긴 이벤트 수(멈춘 소비자는 0)
+     */
+    public int poll(ChangeFeedConsumer consumer) {
+        if (consumer.paused()) {
+            return 0;
+        }
+        Integer delivered = transactionTemplate.execute(status -> {
+            long offset = lockOffset(consumer.name());
+            List<ChangeEvent> late = lateEvents(consumer.name());
+            List<Long> skipped = new ArrayList<>();
+            List<ChangeEvent> settled = settled(offset, readAfter(offset, consumer.batchSize()), skipped);
+            //건너뛴 id 는 모두 offset 보다 작으므로 합쳐도 id 순이다
+            List<ChangeEvent> events = new ArrayList<>(late);
+            events.addAll(settled);
+            if (events.isEmpty()) {
+                return 0;
+            }
+            consumer.accept(new ChangeBatch(events));
+            for (ChangeEvent event : late) {
+                jdbcTemplate.update("delete from outbox_gap where consumer = ? and event_id = ?", consumer.name(), event.getId());
+            }
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            for (Long id : skipped) {
+                jdbcTemplate.update("insert into outbox_gap (consumer, event_id, skipped_at) values (?, ?, ?)",
+                        consumer.name(), id, now);
+            }
+            if (!settled.isEmpty()) {
+                jdbcTemplate.update("update outbox_offset set last_event_id = ? where consumer = ?",
+                        settled.get(settled.size() - 1).getId(), consumer.name());
+            }
+            return events.size();
+        });
+        return delivered == null ? 0 : delivered;
+    }
+
+    public long offset(String consumer) {
+        List<Long> offsets = jdbcTemplate.queryForList(
+                "select last_event_id from outbox_offset where consumer = ?", Long.class, consumer);
+        return offsets.isEmpty() ? 0L : offsets.get(0);
+    }
+
+    //소비자를 처음부터 다시 돌리거나(0) 특정 지점부터 재개할 때
+    public void seek(String consumer, long lastEventId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            lockOffset(consumer);
+            jdbcTemplate.update("update outbox_offset set last_event_id = ? where consumer = ?", lastEventId, consumer);
+            jdbcTemplate.update("delete from outbox_gap where consumer = ?", consumer);
+        });
+    }
+
+    private long lockOffset(String consumer) {
+        List<Long> offsets = jdbcTemplate.queryForList(
+                "select last_event_id from outbox_offset where consumer = ? for update", Long.class, consumer);
+        if (offsets.isEmpty()) {
+            jdbcTemplate.update("insert into outbox_offset (consumer, last_event_id) values (?, 0)", consumer);
+            return 0L;
+        }
+        return offsets.get(0);
+    }
+
+    private List<ChangeEvent> readAfter(long offset, int limit) {
+        return jdbcTemplate.query(
+                "select id, aggregate_type, aggregate_id, event_type, payload, created_at" +
+                        " from outbox_event where id > ? order by id limit ?",
+                EVENT_MAPPER, offset, limit);
+    }
+
+    //건너뛰었던 id 중 그 사이 커밋된 이벤트. gap-recheck 가 지난 id 는 더 기다리지 않고 지운다
+    private List<ChangeEvent> lateEvents(String consumer) {
+        Timestamp expiredBefore = Timestamp.valueOf(LocalDateTime.now().minusNanos(gapRecheckMillis * 1_000_000L));
+        List<ChangeEvent> late = jdbcTemplate.query(
+                "select e.id, e.aggregate_type, e.aggregate_id, e.event_type, e.payload, e.created_at" +
+                        " from outbox_gap g join outbox_event e on e.id = g.event_id" +
+                        " where g.consumer = ? order by e.id",
+                EVENT_MAPPER, consumer);
+        int expired = jdbcTemplate.update("delete from outbox_gap g where g.consumer = ? and g.skipped_at < ?" +
+                " and not exists (select 1 from outbox_event e where e.id = g.event_id)", consumer, expiredBefore);
+        if (expired > 0) {
+            log.warn("change feed consumer {} gave up on {} outbox ids (rolled back or committed after gap-recheck)",
+                    consumer, expired);
+        }
+        return late;
+    }
+
+    /**
+     * id 가 비어 있는 지점 이후는, 그 이벤트가 gap-timeout 보다 오래되었을 때만 넘긴다.
+     * 그렇게 건너뛴 id 는 skipped 에 담는다(한 자리에서 GAP_LIMIT 개까지).
+     */
+    private List<ChangeEvent> settled(long offset, List<ChangeEvent> events, List<Long> skipped) {
+        LocalDateTime settledBefore = LocalDateTime.now().minusNanos(gapTimeoutMillis * 1_000_000L);
+        List<ChangeEvent> settled = new ArrayList<>();
+        //처음 시작하는 소비자(offset 0)는 이전 id 를 알 수 없으므로 첫 이벤트부터 시작한다
+        long expected = offset == 0 && !events.isEmpty() ? events.get(0).getId() : offset + 1;
+        for (ChangeEvent event : events) {
+            if (event.getId() != expected && event.getCreatedAt().isAfter(settledBefore)) {
+                break;
+            }
+            for (long id = expected; id < event.getId() && id < expected + GAP_LIMIT; id++) {
+                skipped.add(id);
+            }
+            settled.add(event);
+            expected = event.getId() + 1;
+        }
+        return settled;
+    }
+}
@@ -0,0 +1,23 @@
+package study.querydsl.outbox;
+
+/**
+ * 변경 피드 소비자. 빈으로 등록하면 ChangeFeed 가 주기적으로 새 이벤트를 넘겨준다.
+ * accept 는 offset 갱신과 같은 트랜잭션에서 호출되므로, DB 에 쓰는 소비자는 정확히 한번 반영된다.
+ * 예외를 던지면 offset 이 그대로라 다음 poll 에서 같은 배치를 다시 받는다.
+ */
+public interface ChangeFeedConsumer {
+
+    //outbox_offset.consumer 값. 소비자마다 달라야 한다.
+    String name();
+
+    default int batchSize() {
+        return 500;
+    }
+
+    //true 인 동안 ChangeFeed 는 이 소비자에게 넘기지 않고 offset 도 그대로 둔다(전체 재구축 중 등)
+    default boolean paused() {
+        return false;
+    }
+
+    void accept(ChangeBatch batch);
+}
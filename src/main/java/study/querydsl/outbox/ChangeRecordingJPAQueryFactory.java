@@ -0,0 +1,127 @@
+package study.querydsl.outbox;
+
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.JPADeleteClause;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.DeadlineJPAQueryFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Member/Team 에 대한 벌크 update/delete 도 outbox 에 남기는 JPAQueryFactory
+ * 실행 직전에 같은 트랜잭션에서 같은 조건으로 대상 id 를 select ... for update 로 잠그고, 실행 후 id 마다 이벤트를 기록한다.
+ * 소비자는 id 별로 원본의 현재 값을 다시 읽어 반영하므로(전체 재적재 없이) 증분으로 따라온다.
+ * 조회와 실행 사이에 새로 들어온 행은 그 행의 INSERT 이벤트가 따로 있으므로 소비자가 현재 값을 읽을 때 함께 반영된다.
+ * payload 에는 실행한 JPQL(조건 포함)을 메타데이터로만 남긴다.
+ */
+public class ChangeRecordingJPAQueryFactory extends DeadlineJPAQueryFactory {
+
+    private static final int PAYLOAD_LENGTH = 2000;
+
+    private final EntityManager entityManager;
+    private final OutboxRecorder outboxRecorder;
+
+    public ChangeRecordingJPAQueryFactory(EntityManager entityManager, OutboxRecorder outboxRecorder) {
+        super(entityManager);
+        this.entityManager = entityManager;
+        this.outboxRecorder = outboxRecorder;
+    }
+
+    @Override
+    public JPAUpdateClause update(EntityPath<?> path) {
+        AggregateType aggregateType = aggregateTypeOf(path);
+        return aggregateType == null ? super.update(path) : new RecordingUpdateClause(path, aggregateType);
+    }
+
+    @Override
+    public JPADeleteClause delete(EntityPath<?> path) {
+        AggregateType aggregateType = aggregateTypeOf(path);
+        return aggregateType == null ? super.delete(path) : new RecordingDeleteClause(path, aggregateType);
+    }
+
+    private static AggregateType aggregateTypeOf(EntityPath<?> path) {
+        if (Member.class.equals(path.getType())) {
+            return AggregateType.MEMBER;
+        }
+        if (Team.class.equals(path.getType())) {
+            return AggregateType.TEAM;
+        }
+        return null;
+    }
+
+    //Member, Team 모두 식별자 속성 이름이 id 이다. 실행할 update/delete 와 같은 행을 잠근다.
+    private List<Long> lockTargetIds(EntityPath<?> path, List<Predicate> where) {
+        return new JPAQuery<>(entityManager)
+                .select(Expressions.numberPath(Long.class, path, "id"))
+                .from(path)
+                .where(where.toArray(new Predicate[0]))
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .fetch();
+    }
+
+    private static String payload(Object clause) {
+        String jpql = String.valueOf(clause);
+        return jpql.length() > PAYLOAD_LENGTH ? jpql.substring(0, PAYLOAD_LENGTH) : jpql;
+    }
+
+    private class RecordingUpdateClause extends JPAUpdateClause {
+        private final EntityPath<?> path;
+        private final AggregateType aggregateType;
+        private final List<Predicate> where = new ArrayList<>();
+
+        RecordingUpdateClause(EntityPath<?> path, AggregateType aggregateType) {
+            super(entityManager, path);
+            this.path = path;
+            this.aggregateType = aggregateType;
+        }
+
+        @Override
+        public JPAUpdateClause where(Predicate... o) {
+            where.addAll(Arrays.asList(o));
+            return super.where(o);
+        }
+
+        @Override
+        public long execute() {
+            List<Long> ids = lockTargetIds(path, where);
+            long count = super.execute();
+            outboxRecorder.recordAll(aggregateType, ids, EventType.UPDATE, payload(this));
+            return count;
+        }
+    }
+
+    private class RecordingDeleteClause extends JPADeleteClause {
+        private final EntityPath<?> path;
+        private final AggregateType aggregateType;
+        private final List<Predicate> where = new ArrayList<>();
+
+        RecordingDeleteClause(EntityPath<?> path, AggregateType aggregateType) {
+            super(entityManager, path);
+            this.path = path;
+            this.aggregateType = aggregateType;
+        }
+
+        @Override
+        public JPADeleteClause where(Predicate... o) {
+            where.addAll(Arrays.asList(o));
+            return super.where(o);
+        }
+
+        @Override
+        public long execute() {
+            List<Long> ids = lockTargetIds(path, where);
+            long count = super.execute();
+            outboxRecorder.recordAll(aggregateType, ids, EventType.DELETE, payload(this));
+            return count;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package study.querydsl.outbox;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * member, team 테이블의 데이터 버전(ETag 재료)
+ * 모든 쓰기는 outbox_event 를 남기므로, 타입별로 마지막으로 확인한 outbox id 를 버전으로 쓴다.
+ * DB 에서 읽은 값이라 인스턴스가 여러 대여도 같은 데이터에는 같은 버전이 나온다.
+ * - 주기(refresh-interval)마다 마지막 위치 이후의 outbox 를 읽어 올린다. 다른 인스턴스의 변경은 그만큼 늦게 보인다.
+ * - 이 인스턴스의 쓰기는 커밋 직후 바로 다시 읽는다.
+ * - id 가 비어 있으면(미커밋 트랜잭션) ChangeFeed 처럼 gap-timeout 까지 그 뒤를 반영하지 않는다.
+ *   늦게 커밋된 작은 id 가 버전에서 빠져 이전 ETag 로 304 를 받는 일을 막는다.
+ *   gap-timeout 이 지나 건너뛴 id 는 gap-recheck 동안 refresh 마다 다시 보고, 늦게 커밋되면 그 타입의 태그에 늦은 건수를 붙인다.
+ *   건너뛴 id 는 인스턴스마다 다를 수 있어 그때는 인스턴스끼리 태그가 달라진다(304 대신 200 이 나갈 뿐 이전 데이터로 304 를 주지는 않는다).
+ * - 변경 피드로 따라오는 조회 모델은 track 한 소비자의 offset 도 버전에 넣는다(반영되면 ETag 가 바뀐다).
+ */
+@Component
+public class DataVersions {
+
+    private static final int READ_LIMIT = 1000;
+    //한 자리에서 다시 확인할 빈 id 최대 개수(ChangeFeed 와 같다)
+    private static final int GAP_LIMIT = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final long gapTimeoutMillis;
+    private final long gapRecheckMillis;
+    private final Set<String> trackedConsumers = ConcurrentHashMap.newKeySet();
+    //건너뛴 id -> 건너뛴 시각(ms)
+    private final Map<Long, Long> skipped = new LinkedHashMap<>();
+
+    //-1 이면 아직 읽지 않았다
+    private long lastEventId = -1;
+    private volatile Map<AggregateType, Long> versions = Collections.emptyMap();
+    //건너뛰었다가 늦게 커밋된 이벤트 수
+    private volatile Map<AggregateType, Long> late = Collections.emptyMap();
+    private volatile Map<String, Long> offsets = Collections.emptyMap();
+
+    public DataVersions(JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${querydsl.change-feed.gap-timeout:2000}") long gapTimeoutMillis,
+                        @Value("${querydsl.change-feed.gap-recheck:600000}") long gapRecheckMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        //커밋 후(afterCompletion)에 읽으므로 끝난 트랜잭션에 참여하지 않도록 새 트랜잭션으로 읽는다
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.newTransaction.setReadOnly(true);
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.gapRecheckMillis = gapRecheckMillis;
+    }
+
+    public long version(AggregateType aggregateType) {
+        initialize();
+        return versions.getOrDefault(aggregateType, 0L);
+    }
+
+    //타입별 버전과 track 한 소비자 offset 을 이어 붙인 값
+    public String tag(AggregateType... aggregateTypes) {
+        initialize();
+        StringBuilder tag = new StringBuilder();
+        for (AggregateType type : aggregateTypes) {
+            tag.append(tag.length() == 0 ? "" : "-").append(Long.toString(version(type), 36));
+            Long lateCount = late.get(type);
+            if (lateCount != null) {
+                tag.append('~').append(Long.toString(lateCount, 36));
+            }
+        }
+        offsets.values().forEach(offset -> tag.append('.').append(Long.toString(offset, 36)));
+        return tag.toString();
+    }
+
+    //outbox_offset.consumer 의 위치도 버전에 넣는다(변경 피드로 따라오는 조회 모델)
+    public void track(String consumer) {
+        trackedConsumers.add(consumer);
+    }
+
+    /**
+     * 트랜잭션 안이면 커밋된 뒤에 다시 읽는다(롤백되면 그대로).
+     * 커밋 전에 올리면 그 사이 조회가 새 버전으로 이전 데이터를 응답할 수 있다.
+     */
+    public void changed(AggregateType aggregateType) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            refresh();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(DataVersions.this);
+                if (status == STATUS_COMMITTED) {
+                    newTransaction.executeWithoutResult(s -> refresh());
+                }
+            }
+        });
+    }
+
+    @Scheduled(initialDelayString = "${querydsl.data-versions.refresh-interval:1000}",
+            fixedDelayString = "${querydsl.data-versions.refresh-interval:1000}")
+    public synchronized void refresh() {
+        Map<AggregateType, Long> next = new EnumMap<>(AggregateType.class);
+        next.putAll(versions);
+        if (lastEventId < 0) {
+            //시작 시점까지의 outbox 는 모두 커밋된 것으로 본다
+            lastEventId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from outbox_event", Long.class);
+            for (AggregateType type : AggregateType.values()) {
+                next.put(type, jdbcTemplate.queryForObject(
+                        "select coalesce(max(id), 0) from outbox_event where aggregate_type = ?", Long.class, type.name()));
+            }
+        }
+        //id 가 비어 있는 지점 이후는, 그 이벤트가 gap-timeout 보다 오래되었을 때만 반영한다(ChangeFeed 와 같은 규칙)
+        Timestamp settledBefore = Timestamp.valueOf(LocalDateTime.now().minusNanos(gapTimeoutMillis * 1_000_000L));
+        boolean more = true;
+        while (more) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "select id, aggregate_type, created_at from outbox_event where id > ? order by id limit ?",
+                    lastEventId, READ_LIMIT);
+            more = rows.size() == READ_LIMIT;
+            for (Map<String, Object> row : rows) {
+                long id = ((Number) row.get("id")).longValue();
+                Timestamp createdAt = (Timestamp) row.get("created_at");
+                if (id != lastEventId + 1 && createdAt.after(settledBefore)) {
+                    more = false;
+                    break;
+                }
+                for (long gap = lastEventId + 1; gap < id && gap <= lastEventId + GAP_LIMIT; gap++) {
+                    skipped.put(gap, System.currentTimeMillis());
+                }
+                next.put(AggregateType.valueOf((String) row.get("aggregate_type")), id);
+                lastEventId = id;
+            }
+        }
+        versions = next;
+        recheckSkipped();
+        if (!trackedConsumers.isEmpty()) {
+            Map<String, Long> nextOffsets = new LinkedHashMap<>();
+            trackedConsumers.stream().sorted().forEach(consumer -> {
+                List<Long> offset = jdbcTemplate.queryForList(
+                        "select last_event_id from outbox_offset where consumer = ?", Long.class, consumer);
+                nextOffsets.put(consumer, offset.isEmpty() ? 0L : offset.get(0));
+            });
+            offsets = nextOffsets;
+        }
+    }
+
+    //건너뛴 id 중 그 사이 커밋된 것은 타입별 늦은 건수로 올리고, gap-recheck 가 지난 것은 더 보지 않는다
+    private void recheckSkipped() {
+        if (skipped.isEmpty()) {
+            return;
+        }
+        Map<AggregateType, Long> nextLate = new EnumMap<>(AggregateType.class);
+        nextLate.putAll(late);
+        List<Long> ids = new ArrayList<>(skipped.keySet());
+        for (int i = 0; i < ids.size(); i += READ_LIMIT) {
+            List<Long> chunk = ids.subList(i, Math.min(i + READ_LIMIT, ids.size()));
+            String in = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("select id, aggregate_type from outbox_event where id in (" + in + ")", rs -> {
+                skipped.remove(rs.getLong(1));
+                nextLate.merge(AggregateType.valueOf(rs.getString(2)), 1L, Long::sum);
+            }, chunk.toArray());
+        }
+        long expiredBefore = System.currentTimeMillis() - gapRecheckMillis;
+        skipped.values().removeIf(skippedAt -> skippedAt < expiredBefore);
+        late = nextLate;
+    }
+
+    private void initialize() {
+        if (versions.isEmpty()) {
+            refresh();
+        }
+    }
+}
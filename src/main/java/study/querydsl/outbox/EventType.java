@@ -0,0 +1,5 @@
+package study.querydsl.outbox;
+
+public enum EventType {
+    INSERT, UPDATE, DELETE
+}
@@ -0,0 +1,44 @@
+package study.querydsl.outbox;
+
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Member/Team 의 insert/update/delete 를 outbox 에 기록한다.
+ * flush 시점(실제 SQL 실행 직후)에 호출되며, 스프링이 생성해 주기 때문에 빈 주입이 가능하다.
+ */
+public class OutboxEntityListener {
+
+    private final OutboxRecorder outboxRecorder;
+
+    public OutboxEntityListener(OutboxRecorder outboxRecorder) {
+        this.outboxRecorder = outboxRecorder;
+    }
+
+    @PostPersist
+    public void postPersist(Object entity) {
+        record(entity, EventType.INSERT);
+    }
+
+    @PostUpdate
+    public void postUpdate(Object entity) {
+        record(entity, EventType.UPDATE);
+    }
+
+    @PostRemove
+    public void postRemove(Object entity) {
+        record(entity, EventType.DELETE);
+    }
+
+    private void record(Object entity, EventType eventType) {
+        if (entity instanceof Member) {
+            outboxRecorder.record(AggregateType.MEMBER, ((Member) entity).getId(), eventType);
+        } else if (entity instanceof Team) {
+            outboxRecorder.record(AggregateType.TEAM, ((Team) entity).getId(), eventType);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package study.querydsl.outbox;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * outbox_event 에 변경 이력을 남긴다.
+ * JdbcTemplate 은 JpaTransactionManager 가 잡아둔 커넥션을 그대로 사용하므로 엔티티 변경과 같은 트랜잭션에서 커밋/롤백된다.
+ */
+@Component
+@RequiredArgsConstructor
+public class OutboxRecorder {
+
+    private static final String INSERT_SQL =
+            "insert into outbox_event (aggregate_type, aggregate_id, event_type, payload, created_at) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DataVersions dataVersions;
+
+    public void record(AggregateType aggregateType, Long aggregateId, EventType eventType) {
+        record(aggregateType, aggregateId, eventType, null);
+    }
+
+    public void record(AggregateType aggregateType, Long aggregateId, EventType eventType, String payload) {
+        jdbcTemplate.update(INSERT_SQL,
+                aggregateType.name(), aggregateId, eventType.name(), payload, Timestamp.valueOf(LocalDateTime.now()));
+        dataVersions.changed(aggregateType);
+    }
+
+    //대상 id 를 알고 있는 일괄 변경(벌크 update/delete, write-behind 등)은 id 마다 한번에 기록한다.
+    public void recordAll(AggregateType aggregateType, List<Long> aggregateIds, EventType eventType, String payload) {
+        if (aggregateIds.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, aggregateIds.stream()
+                .map(id -> new Object[]{aggregateType.name(), id, eventType.name(), payload, now})
+                .collect(Collectors.toList()));
+        dataVersions.changed(aggregateType);
+        eventPublisher.publishEvent(new BulkChangeRecorded(aggregateType, aggregateIds, eventType));
+    }
+}
@@ -0,0 +1,328 @@
+package study.querydsl.prefetch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.concurrency.ConcurrencyLimiters;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.DataVersions;
+import study.querydsl.repository.QueryDeadline;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 페이지를 차례로 넘기는 클라이언트의 다음 페이지를 미리 조회해 둔다(/v2, /v3 members)
+ * 같은 클라이언트가 같은 조건으로 N-1, N 페이지를 연달아 요청하면 N 을 응답한 뒤 N+1 을 백그라운드에서 조회한다.
+ * - 클라이언트는 X-Client-Id 헤더, 세션 id 순으로 구분한다. 둘 다 없으면 미리 조회하지 않는다
+ *   (원격 주소는 프록시/NAT 뒤의 여러 사용자가 같은 값이라 이어지는 페이지로 볼 수 없다).
+ * - 아직 조회 중인 페이지는 기본으로 기다리지 않는다(wait=0). 요청 스레드는 직접 조회하고 미리 조회한 결과는 버린다.
+ * - 미리 조회한 페이지는 클라이언트마다 몇 개만, ttl 동안만 들고 있는다.
+ * - member/team 데이터 버전(DataVersions)이 바뀌었으면 버린다(조회 시작 전 버전과 비교).
+ * - 백그라운드 조회는 전용 스레드풀에서 하고 대기열이 가득 차면 건너뛴다(동시 실행 한도는 쓰지 않는다).
+ */
+@Component
+public class MemberPagePrefetcher {
+
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final long waitMillis;
+    private final int maxPagesPerClient;
+    private final int maxClients;
+    private final ConcurrencyLimiters concurrencyLimiters;
+    private final DataVersions dataVersions;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+
+    //access-order: 가장 오래 요청이 없던 클라이언트부터 버린다
+    private final LinkedHashMap<String, ClientState> clients = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final MeterRegistry meterRegistry;
+    private final Counter hits;
+    private final Counter misses;
+    private final DistributionSummary wastedRows;
+
+    public MemberPagePrefetcher(@Value("${querydsl.prefetch.enabled:false}") boolean enabled,
+                                @Value("${querydsl.prefetch.threads:2}") int threads,
+                                @Value("${querydsl.prefetch.queue-capacity:20}") int queueCapacity,
+                                @Value("${querydsl.prefetch.ttl:5000}") long ttlMillis,
+                                @Value("${querydsl.prefetch.wait:0}") long waitMillis,
+                                @Value("${querydsl.prefetch.pages-per-client:2}") int maxPagesPerClient,
+                                @Value("${querydsl.prefetch.max-clients:1000}") int maxClients,
+                                ConcurrencyLimiters concurrencyLimiters,
+                                DataVersions dataVersions,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttlMillis = ttlMillis;
+        this.waitMillis = waitMillis;
+        this.maxPagesPerClient = maxPagesPerClient;
+        this.maxClients = maxClients;
+        this.concurrencyLimiters = concurrencyLimiters;
+        this.dataVersions = dataVersions;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "page-prefetch-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.meterRegistry = meterRegistry;
+        this.hits = meterRegistry.counter("member.page.prefetch", "result", "hit");
+        this.misses = meterRegistry.counter("member.page.prefetch", "result", "miss");
+        this.wastedRows = meterRegistry.summary("member.page.prefetch.wasted.rows");
+        meterRegistry.gauge("member.page.prefetch.hit.ratio", this, MemberPagePrefetcher::hitRatio);
+        meterRegistry.gauge("member.page.prefetch.buffered", this, MemberPagePrefetcher::buffered);
+    }
+
+    /**
+     * pageable 페이지를 응답한다. 미리 조회해 둔 페이지가 있으면 DB 를 거치지 않는다.
+     * 없으면 name 엔드포인트의 동시 실행 한도 안에서 loader 로 조회한다.
+     * loader 는 백그라운드(읽기 전용 트랜잭션)에서도 호출되므로 요청에 묶인 값을 쓰면 안 된다.
+     */
+    public <T> Page<T> page(String name, HttpServletRequest request, MemberSearchCondition condition, String fields,
+                            Pageable pageable, Function<Pageable, Page<T>> loader) {
+        if (!enabled || pageable.isUnpaged()) {
+            return concurrencyLimiters.execute(name, () -> loader.apply(pageable));
+        }
+        String client = clientId(request);
+        if (client == null) {
+            return concurrencyLimiters.execute(name, () -> loader.apply(pageable));
+        }
+        Query query = new Query(name, condition, fields, pageable.getPageSize(), pageable.getSort());
+        //조회 전에 버전을 읽는다. 조회 도중 커밋된 변경이 있으면 미리 조회한 다음 페이지는 버려진다.
+        String version = dataVersions.tag(AggregateType.MEMBER, AggregateType.TEAM);
+
+        Prefetched prefetched;
+        boolean sequential;
+        synchronized (this) {
+            ClientState state = clientState(client);
+            expire(state, System.currentTimeMillis());
+            prefetched = state.buffer.remove(new PageKey(query, pageable.getPageNumber()));
+            sequential = query.equals(state.lastQuery) && pageable.getPageNumber() == state.lastPage + 1;
+            state.lastQuery = query;
+            state.lastPage = pageable.getPageNumber();
+        }
+
+        Page<T> page = prefetched != null ? take(prefetched, version) : null;
+        if (page != null) {
+            hits.increment();
+        } else {
+            if (sequential || prefetched != null) {
+                misses.increment();
+            }
+            page = concurrencyLimiters.execute(name, () -> loader.apply(pageable));
+        }
+        if ((sequential || prefetched != null) && page.hasNext()) {
+            prefetch(client, query, pageable.next(), version, loader);
+        }
+        return page;
+    }
+
+    //데이터가 바뀌었거나 ttl 이 지났거나 wait 안에 끝나지 않으면 null
+    @SuppressWarnings("unchecked")
+    private <T> Page<T> take(Prefetched prefetched, String version) {
+        if (!prefetched.version.equals(version)) {
+            wasted(prefetched, "stale");
+            return null;
+        }
+        if (waitMillis <= 0 && !prefetched.future.isDone()) {
+            wasted(prefetched, "late");
+            return null;
+        }
+        try {
+            return (Page<T>) prefetched.future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            wasted(prefetched, "late");
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            return null; //실패는 tasks{result=failed} 로 센다
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private <T> void prefetch(String client, Query query, Pageable next, String version,
+                              Function<Pageable, Page<T>> loader) {
+        PageKey key = new PageKey(query, next.getPageNumber());
+        CompletableFuture<Page<?>> future = new CompletableFuture<>();
+        Prefetched prefetched = new Prefetched(version, System.currentTimeMillis() + ttlMillis, future);
+        synchronized (this) {
+            ClientState state = clients.get(client);
+            if (state == null || state.buffer.containsKey(key)) {
+                return;
+            }
+            state.buffer.put(key, prefetched);
+            if (state.buffer.size() > maxPagesPerClient) {
+                Iterator<Prefetched> eldest = state.buffer.values().iterator();
+                wasted(eldest.next(), "evicted");
+                eldest.remove();
+            }
+        }
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) { //대기 중에 버려졌으면 조회하지 않는다
+                    return;
+                }
+                QueryDeadline.set(ttlMillis);
+                try {
+                    future.complete(transactionTemplate.execute(status -> loader.apply(next)));
+                } catch (RuntimeException e) {
+                    meterRegistry.counter("member.page.prefetch.tasks", "result", "failed").increment();
+                    future.completeExceptionally(e);
+                } finally {
+                    QueryDeadline.clear();
+                }
+            });
+            meterRegistry.counter("member.page.prefetch.tasks", "result", "submitted").increment();
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("member.page.prefetch.tasks", "result", "rejected").increment();
+            synchronized (this) {
+                ClientState state = clients.get(client);
+                if (state != null) {
+                    state.buffer.remove(key, prefetched);
+                }
+            }
+            future.cancel(false);
+        }
+    }
+
+    //요청이 끊긴 클라이언트의 페이지도 ttl 이 지나면 버린다
+    @Scheduled(fixedDelayString = "${querydsl.prefetch.ttl:5000}")
+    public synchronized void sweep() {
+        long now = System.currentTimeMillis();
+        Iterator<ClientState> it = clients.values().iterator();
+        while (it.hasNext()) {
+            ClientState state = it.next();
+            expire(state, now);
+            if (state.buffer.isEmpty() && state.lastSeen + ttlMillis <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    private ClientState clientState(String client) {
+        ClientState state = clients.computeIfAbsent(client, c -> new ClientState());
+        state.lastSeen = System.currentTimeMillis();
+        if (clients.size() > maxClients) {
+            Iterator<ClientState> eldest = clients.values().iterator();
+            eldest.next().buffer.values().forEach(p -> wasted(p, "evicted"));
+            eldest.remove();
+        }
+        return state;
+    }
+
+    private void expire(ClientState state, long now) {
+        Iterator<Prefetched> it = state.buffer.values().iterator();
+        while (it.hasNext()) {
+            Prefetched prefetched = it.next();
+            if (prefetched.expiresAt <= now) {
+                wasted(prefetched, "expired");
+                it.remove();
+            }
+        }
+    }
+
+    //쓰지 못한 조회: 이미 끝났으면 조회한 행 수도 남기고, 아직이면 실행하지 않도록 취소한다
+    private void wasted(Prefetched prefetched, String cause) {
+        meterRegistry.counter("member.page.prefetch.wasted", "cause", cause).increment();
+        Page<?> page = prefetched.future.getNow(null);
+        if (page != null) {
+            wastedRows.record(page.getNumberOfElements());
+        } else {
+            prefetched.future.cancel(false);
+        }
+    }
+
+    //구분할 수 없는 클라이언트면 null
+    static String clientId(HttpServletRequest request) {
+        String header = request.getHeader(CLIENT_ID_HEADER);
+        if (header != null && !header.isBlank()) {
+            return "header:" + header;
+        }
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            return "session:" + session.getId();
+        }
+        return null;
+    }
+
+    double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    synchronized int buffered() {
+        return clients.values().stream().mapToInt(state -> state.buffer.size()).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    //같은 엔드포인트, 조건, 응답 속성, 페이지 크기, 정렬
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Query {
+        final String name;
+        final MemberSearchCondition condition;
+        final String fields;
+        final int size;
+        final Sort sort;
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class PageKey {
+        final Query query;
+        final int page;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Prefetched {
+        final String version;
+        final long expiresAt;
+        final CompletableFuture<Page<?>> future;
+    }
+
+    private static final class ClientState {
+        Query lastQuery;
+        int lastPage;
+        long lastSeen;
+        //삽입 순서: 가득 차면 가장 먼저 조회한 페이지부터 버린다
+        final Map<PageKey, Prefetched> buffer = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,26 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+import javax.persistence.EntityManager;
+
+/**
+ * select/selectFrom/from 으로 만드는 모든 쿼리에 QueryDeadline 의 남은 시간을 timeout 힌트로 건다.
+ * 힌트는 쿼리를 실행할 때(count 쿼리는 count 를 실행할 때) 계산한다(MemoizingJPAQuery).
+ * TransactionQueryMemo 가 켜진 트랜잭션에서는 같은 쿼리 결과를 다시 조회하지 않는다.
+ */
+public class DeadlineJPAQueryFactory extends JPAQueryFactory {
+
+    private final EntityManager entityManager;
+
+    public DeadlineJPAQueryFactory(EntityManager entityManager) {
+        super(entityManager);
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public JPAQuery<?> query() {
+        return new MemoizingJPAQuery<Void>(entityManager);
+    }
+}
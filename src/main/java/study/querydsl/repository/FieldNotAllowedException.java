@@ -0,0 +1,15 @@
+package study.querydsl.repository;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * fields= 에 조회할 수 없는 속성을 요청
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class FieldNotAllowedException extends RuntimeException {
+
+    public FieldNotAllowedException(String property) {
+        super("Field '" + property + "' is not allowed");
+    }
+}
@@ -4,6 +4,7 @@ import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
 import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
@@ -15,10 +16,15 @@ import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.QTeam;
 import study.querydsl.entity.Team;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.EventType;
+import study.querydsl.outbox.OutboxRecorder;
 
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 
 import static org.springframework.util.StringUtils.hasText;
 import static org.springframework.util.StringUtils.isEmpty;
@@ -33,11 +39,13 @@ public class MemberJpaRepository {
     //queryDSL을 사용하기 위한 주입
     //동시성 문제는 발생하지 않는다 -> entityManager에 의존하고 있기 때문에
     private final JPAQueryFactory queryFactory; 
+    private final OutboxRecorder outboxRecorder;
     
-    public MemberJpaRepository(EntityManager em,JPAQueryFactory jpaQueryFactory) {
+    public MemberJpaRepository(EntityManager em,JPAQueryFactory jpaQueryFactory,OutboxRecorder outboxRecorder) {
         this.em = em;
-        this.queryFactory = new JPAQueryFactory(em); //스프링 빈으로 등록해도 된다.
+        this.queryFactory = new DeadlineJPAQueryFactory(em); //스프링 빈으로 등록해도 된다.
         //this.queryFactory = jpaQueryFactory;
+        this.outboxRecorder = outboxRecorder;
     }
 
     public void save(Member member){
@@ -50,19 +58,19 @@ public class MemberJpaRepository {
     }
 
     public List<Member> findAll(){
-        return em.createQuery("select m from Member m",Member.class)
+        return QueryDeadline.apply(em.createQuery("select m from Member m",Member.class))
                 .getResultList();
     }
 
     public List<Member> findAll_Querydsl(){
-        return queryFactory
-                .selectFrom(member)
+        return Querydsl4RepositorySupport.readOnly(queryFactory
+                .selectFrom(member))
                 .fetch();
     }
 
 
     public List<Member> findByMemberUsername(String username){
-        return em.createQuery("select m from Member m where m.username = :username",Member.class)
+        return QueryDeadline.apply(em.createQuery("select m from Member m where m.username = :username",Member.class))
                 .setParameter("username",username)
                 .getResultList();
     }
@@ -74,11 +82,40 @@ public class MemberJpaRepository {
                 .fetch();
     }
 
+    //벌크 연산은 엔티티 이벤트를 타지 않으므로 같은 조건의 대상 id 를 먼저 잠그고(select ... for update) outbox 에 id 마다 남긴다.
+    //조건은 payload 에 메타데이터로만 남고, 소비자는 id 별로 현재 값을 다시 읽어 증분 반영한다.
+    public long bulkUpdate(Predicate predicate, UnaryOperator<JPAUpdateClause> setClause){
+        List<Long> ids = lockIds(predicate);
+        long count = setClause.apply(queryFactory.update(member).where(predicate))
+                .execute();
+        outboxRecorder.recordAll(AggregateType.MEMBER, ids, EventType.UPDATE, String.valueOf(predicate));
+        return count;
+    }
+
+    public long bulkDelete(Predicate predicate){
+        List<Long> ids = lockIds(predicate);
+        long count = queryFactory
+                .delete(member)
+                .where(predicate)
+                .execute();
+        outboxRecorder.recordAll(AggregateType.MEMBER, ids, EventType.DELETE, String.valueOf(predicate));
+        return count;
+    }
+
+    //update/delete 와 같은 트랜잭션에서 대상 행을 잠가, 실행 전에 다른 트랜잭션이 바꾸지 못하게 한다.
+    private List<Long> lockIds(Predicate predicate){
+        return queryFactory
+                .select(member.id)
+                .from(member)
+                .where(predicate)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .fetch();
+    }
 
     public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition){
         BooleanBuilder builder = new BooleanBuilder();
         if(hasText(condition.getUsername())){
-            builder.and(member.username.eq(condition.getUsername()));
+            builder.and(usernameEq(condition));
         }
         if (hasText(condition.getTeamName())) {
             builder.and(team.name.eq(condition.getTeamName()));
@@ -117,7 +154,7 @@ public class MemberJpaRepository {
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -125,8 +162,8 @@ public class MemberJpaRepository {
                 .fetch();
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
+    private BooleanExpression usernameEq(MemberSearchCondition condition) {
+        return UsernamePredicates.eq(condition, member.username, member.usernameLower);
     }
 
     private BooleanExpression teamNameEq(String teamName) {
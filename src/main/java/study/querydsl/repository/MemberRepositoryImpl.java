@@ -5,32 +5,79 @@ import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.JPQLQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
-import org.springframework.data.support.PageableExecutionUtils;
+import study.querydsl.cache.MemberSearchCache;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberTeamView;
+import study.querydsl.repository.query.MemberTeamViewPredicates;
+import study.querydsl.sql.MemberSqlRepository;
+import study.querydsl.sql.shard.ShardedMemberRepository;
 
 import javax.persistence.EntityManager;
+import java.util.Collections;
 import java.util.List;
 
 import static org.springframework.util.StringUtils.hasText;
 import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberTeamView.memberTeamView;
 import static study.querydsl.entity.QTeam.team;
 
 //public class MemberRepositoryImpl extends QuerydslRepositorySupport implements MemberRepositoryCustom{
 public class MemberRepositoryImpl implements MemberRepositoryCustom{
 
+    //해당 offset 이상의 깊은 페이지부터 deferred join 으로 조회한다(fields= 조회도 같은 기준).
+    public static final long DEFERRED_JOIN_OFFSET = 1000;
+    //검색 캐시 항목 이름. fields= 조회는 같은 조건의 항목이 있으면 그 row 를 줄여 쓴다.
+    public static final String SEARCH_CACHE = "search";
+    public static final String SEARCH_PAGE_COMPLEX_CACHE = "searchPageComplex";
+
     private final JPAQueryFactory queryFactory;
+    //true 이면 조인 없이 member_team 조회 모델에서 읽는다.
+    private final boolean readModelEnabled;
+    //jpa 가 아니면 검색을 다른 구현에 맡긴다.
+    //sql: querydsl-sql 로 조회(엔티티/HQL 을 거치지 않음), sharded: 샤드 scatter-gather
+    private final MemberRepositoryCustom searchEngine;
+    //검색 결과 캐시. 샤드에 직접 쓰는 변경은 무효화할 수 없으므로 sharded 엔진에는 쓰지 않는다.
+    private final MemberSearchCache searchCache;
+    private final boolean cacheable;
 
-   public MemberRepositoryImpl(EntityManager em) {
-       this.queryFactory = new JPAQueryFactory(em);
+   public MemberRepositoryImpl(EntityManager em,
+                               @Value("${querydsl.read-model.enabled:false}") boolean readModelEnabled,
+                               @Value("${querydsl.search.engine:jpa}") String searchEngine,
+                               MemberSqlRepository memberSqlRepository,
+                               ObjectProvider<ShardedMemberRepository> shardedMemberRepository,
+                               MemberSearchCache searchCache) {
+       this.queryFactory = new DeadlineJPAQueryFactory(em); //요청 마감 시간을 query timeout 으로 건다
+       this.readModelEnabled = readModelEnabled;
+       this.searchEngine = selectSearchEngine(searchEngine, memberSqlRepository, shardedMemberRepository);
+       this.searchCache = searchCache;
+       this.cacheable = !(this.searchEngine instanceof ShardedMemberRepository);
    }
 
+    private static MemberRepositoryCustom selectSearchEngine(String name,
+                                                             MemberSqlRepository memberSqlRepository,
+                                                             ObjectProvider<ShardedMemberRepository> shardedMemberRepository) {
+        if ("sql".equalsIgnoreCase(name)) {
+            return memberSqlRepository;
+        }
+        if ("sharded".equalsIgnoreCase(name)) {
+            ShardedMemberRepository sharded = shardedMemberRepository.getIfAvailable();
+            if (sharded == null) {
+                throw new IllegalStateException("querydsl.search.engine=sharded requires querydsl.sharding.enabled=true");
+            }
+            return sharded;
+        }
+        return null;
+    }
+
     /*
        public MemberRepositoryImpl(EntityManager em){
            //많은 기능을 제공해 준다.
@@ -40,12 +87,35 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
       */
     @Override
     public List<MemberTeamDto> search(MemberSearchCondition condition){
+        if(!cacheable){
+            return searchFromDb(condition);
+        }
+        return searchCache.list(SEARCH_CACHE, condition, () -> searchFromDb(condition));
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
+        if(!cacheable){
+            return searchPageSimpleFromDb(condition, pageable);
+        }
+        return searchCache.page("searchPageSimple", condition, pageable, () -> searchPageSimpleFromDb(condition, pageable));
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        if(!cacheable){
+            return searchPageComplexFromDb(condition, pageable);
+        }
+        return searchCache.page(SEARCH_PAGE_COMPLEX_CACHE, condition, pageable, () -> searchPageComplexFromDb(condition, pageable));
+    }
+
+    private List<MemberTeamDto> searchFromDb(MemberSearchCondition condition){
         /*
         EntityManager entityManager = getEntityManager();
         return from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -59,6 +129,12 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 ))
                 .fetch();
           */
+            if(searchEngine != null){
+                return searchEngine.search(condition);
+            }
+            if(readModelEnabled){
+                return selectFromReadModel(condition).fetch();
+            }
             return queryFactory
                 //SelectionProjection 이 변경되어도 재사용이 가능하다.
                 .select(new QMemberTeamDto(
@@ -71,7 +147,7 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -80,9 +156,19 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
 
     }
 
-    @Override
-    public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition,
-                                                Pageable pageable) {
+    private Page<MemberTeamDto> searchPageSimpleFromDb(MemberSearchCondition condition,
+                                                       Pageable pageable) {
+        if(searchEngine != null){
+            return searchEngine.searchPageSimple(condition,pageable);
+        }
+        if(readModelEnabled){
+            QueryResults<MemberTeamDto> results = selectFromReadModel(condition)
+                    .orderBy(memberTeamView.memberId.asc())
+                    .offset(pageable.getOffset())
+                    .limit(pageable.getPageSize())
+                    .fetchResults();
+            return new PageImpl<>(results.getResults(),pageable,results.getTotal());
+        }
 
         QueryResults<MemberTeamDto> results = queryFactory
                 .select(new QMemberTeamDto(
@@ -95,11 +181,12 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
+                .orderBy(member.id.asc())
                 .offset(pageable.getOffset())
                 .limit(pageable.getPageSize())
                 .fetchResults();//Count 쿼리, 페이지쿼리 모두 날린다.
@@ -113,7 +200,7 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
         JPQLQuery<MemberTeamDto> jpaQuery = from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -133,8 +220,21 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
         return new PageImpl<>(content,pageable,total);
     }
      */
-    @Override
-    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+    private Page<MemberTeamDto> searchPageComplexFromDb(MemberSearchCondition condition, Pageable pageable) {
+        if(searchEngine != null){
+            return searchEngine.searchPageComplex(condition,pageable);
+        }
+        if(readModelEnabled){
+            List<MemberTeamDto> content = selectFromReadModel(condition)
+                    .orderBy(memberTeamView.memberId.asc())
+                    .offset(pageable.getOffset())
+                    .limit(pageable.getPageSize())
+                    .fetch();
+            JPAQuery<MemberTeamView> countQuery = queryFactory
+                    .selectFrom(memberTeamView)
+                    .where(MemberTeamViewPredicates.of(condition));
+            return QueryDeadline.page(content, pageable, countQuery::fetchCount);
+        }
         List<MemberTeamDto> content = getMembers(condition, pageable);
         //long total = getTotal(condition);
         JPAQuery<Member> countQuery = queryFactory
@@ -142,18 +242,22 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 );
 
-        return PageableExecutionUtils //getPage에서 페이지 조건에 따라 해당 람다식을 실행할지 말지를 판단해줌
-                .getPage(content, pageable, countQuery::fetchCount);
+        //getPage에서 페이지 조건에 따라 해당 람다식을 실행할지 말지를 판단해줌
+        return QueryDeadline.page(content, pageable, countQuery::fetchCount);
         //return new PageImpl<>(content,pageable,total);
     }
 
+    //offset 페이징은 정렬이 없으면 페이지 사이에 행이 겹치거나 빠질 수 있으므로 항상 id 순으로 자른다.
     private List<MemberTeamDto> getMembers(MemberSearchCondition condition, Pageable pageable) {
+        if(pageable.getOffset() >= DEFERRED_JOIN_OFFSET){
+            return getMembersByDeferredJoin(condition, pageable);
+        }
         List<MemberTeamDto> results = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
@@ -165,17 +269,70 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
+                .orderBy(member.id.asc())
                 .offset(pageable.getOffset())
                 .limit(pageable.getPageSize())
                 .fetch();
         return results;
     }
 
+    //깊은 페이지는 id만 먼저 페이징하고(팀명 조건이 있을때만 조인) 해당 id들만 조인해서 DTO로 조회한다.
+    private List<MemberTeamDto> getMembersByDeferredJoin(MemberSearchCondition condition, Pageable pageable) {
+        JPAQuery<Long> idQuery = queryFactory
+                .select(member.id)
+                .from(member);
+        if(hasText(condition.getTeamName())){
+            idQuery.leftJoin(member.team, team);
+        }
+        List<Long> ids = idQuery
+                .where(
+                        usernameEq(condition),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                )
+                .orderBy(member.id.asc())
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .fetch();
+        if(ids.isEmpty()){
+            return Collections.emptyList();
+        }
+
+        List<MemberTeamDto> rows = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.id.in(ids))
+                .fetch();
+        return Querydsl4RepositorySupport.orderByIds(ids, rows, MemberTeamDto::getMemberId);
+    }
+
+    //조회 모델은 이미 팀명이 펼쳐져 있어 조인이 필요 없다.
+    private JPAQuery<MemberTeamDto> selectFromReadModel(MemberSearchCondition condition) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        memberTeamView.memberId,
+                        memberTeamView.username,
+                        memberTeamView.age,
+                        memberTeamView.teamId,
+                        memberTeamView.teamName
+                ))
+                .from(memberTeamView)
+                .where(MemberTeamViewPredicates.of(condition));
+    }
+
     private long getTotal(MemberSearchCondition condition) {
         //Count 쿼리와 데이터를 조회하는 쿼리와 다를 경우 따로 실행한다.
         long total = queryFactory
@@ -183,7 +340,7 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -191,8 +348,8 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
         return total;
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
+    private BooleanExpression usernameEq(MemberSearchCondition condition) {
+        return UsernamePredicates.eq(condition, member.username, member.usernameLower);
     }
 
     private BooleanExpression teamNameEq(String teamName) {
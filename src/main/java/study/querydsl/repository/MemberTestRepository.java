@@ -4,7 +4,6 @@ import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQuery;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.entity.Member;
@@ -22,28 +21,41 @@ public class MemberTestRepository extends Querydsl4RepositorySupport{
         super(Member.class);
     }
 
+    //age, username 은 인덱스가 있어 정렬을 허용한다.
+    private static final SortPolicy SORT_POLICY = SortPolicy.tiebreaker(member.id)
+            .allow("id", member.id)
+            .allow("age", member.age)
+            .allow("username", member.username)
+            .build();
+
+    @Override
+    protected SortPolicy getSortPolicy() {
+        return SORT_POLICY;
+    }
+
+    //조회만 하는 메소드는 읽기 전용으로 조회한다.
     public List<Member> basicSelect(){
-        return select(member)
+        return selectReadOnly(member)
                 .from(member)
                 .fetch();
     }
     public List<Member> basicSelectFrom(){
-        return selectFrom(member)
+        return selectFromReadOnly(member)
                 .fetch();
     }
 
     public Page<Member> searchPageByApplyPage(MemberSearchCondition condition,
                                               Pageable pageable){
-        JPAQuery<Member> query = selectFrom(member)
+        JPAQuery<Member> query = selectFromReadOnly(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 );
-        List<Member> content = getQuerydsl().applyPagination(pageable, query).fetch();
-        return PageableExecutionUtils.getPage(content,pageable,query::fetchCount);
+        List<Member> content = applyPageable(pageable, query).fetch();
+        return QueryDeadline.page(content, pageable, query::fetchCount);
     }
 
     //위 코드와 동일한 코드이다.
@@ -52,7 +64,7 @@ public class MemberTestRepository extends Querydsl4RepositorySupport{
                 .selectFrom(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -66,7 +78,7 @@ public class MemberTestRepository extends Querydsl4RepositorySupport{
                 .selectFrom(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -75,15 +87,39 @@ public class MemberTestRepository extends Querydsl4RepositorySupport{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
         );
     }
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
+
+    //deferred join: id만 먼저 페이징하고 해당 id의 회원만 다시 조회한다.
+    public Page<Member> searchPageByDeferredJoin(MemberSearchCondition condition, Pageable pageable){
+        //1단계는 팀명 조건이 있을때만 조인하고, 정렬은 applyPagination 이 id 를 마지막 키로 붙여준다.
+        return applyPagination(pageable, idQuery -> {
+            JPAQuery<Long> query = idQuery
+                    .select(member.id)
+                    .from(member);
+            if (hasText(condition.getTeamName())) {
+                query.leftJoin(member.team, team);
+            }
+            return query.where(
+                    usernameEq(condition),
+                    teamNameEq(condition.getTeamName()),
+                    ageGoe(condition.getAgeGoe()),
+                    ageLoe(condition.getAgeLoe())
+            );
+        }, (rowQuery, ids) -> rowQuery
+                .selectFrom(member)
+                .where(member.id.in(ids)),
+                Member::getId
+        );
+    }
+
+    private BooleanExpression usernameEq(MemberSearchCondition condition) {
+        return UsernamePredicates.eq(condition, member.username, member.usernameLower);
     }
 
     private BooleanExpression teamNameEq(String teamName) {
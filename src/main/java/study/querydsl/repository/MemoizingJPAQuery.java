@@ -0,0 +1,179 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.NonUniqueResultException;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.QueryModifiers;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.CollectionExpression;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.MapExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * TransactionQueryMemo 가 켜진 트랜잭션이면 fetch/fetchOne/fetchCount 결과를 기억해 두는 JPAQuery
+ * 키는 직렬화한 JPQL + 파라미터 + limit/offset 이고, timeout 힌트처럼 결과와 무관한 값은 넣지 않는다.
+ * 잠금 조회(lockMode)는 항상 DB 로 보낸다.
+ * 기억한 결과의 엔티티가 영속성 컨텍스트에 없으면(em.clear/detach 후) 준영속 엔티티를 돌려주지 않도록 다시 조회한다.
+ * DB 로 보내는 쿼리에는 실행 시점의 QueryDeadline 남은 시간을 timeout 힌트로 건다.
+ */
+class MemoizingJPAQuery<T> extends JPAQuery<T> {
+
+    MemoizingJPAQuery(EntityManager em) {
+        super(em);
+    }
+
+    @Override
+    public List<T> fetch() {
+        List<T> result = memoized("fetch", false, super::fetch);
+        //호출한 쪽이 목록을 고쳐도 기억해 둔 결과는 바뀌지 않도록 복사해서 돌려준다
+        return TransactionQueryMemo.current() != null ? new ArrayList<>(result) : result;
+    }
+
+    @Override
+    public T fetchOne() throws NonUniqueResultException {
+        return memoized("fetchOne", false, super::fetchOne);
+    }
+
+    @Override
+    public long fetchCount() {
+        return memoized("fetchCount", true, super::fetchCount);
+    }
+
+    //쿼리를 만든 시점이 아니라 실행하는 시점의 남은 시간으로 건다(content 조회 후의 count 쿼리 포함)
+    @Override
+    protected Query createQuery(QueryModifiers modifiers, boolean forCount) {
+        Query query = super.createQuery(modifiers, forCount);
+        Integer timeout = QueryDeadline.timeoutHintMillis();
+        if (timeout != null) {
+            query.setHint(QueryDeadline.TIMEOUT_HINT, timeout);
+        }
+        return query;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R memoized(String kind, boolean forCount, Supplier<R> query) {
+        TransactionQueryMemo memo = TransactionQueryMemo.current();
+        if (memo == null || lockMode != null) {
+            return query.get();
+        }
+        JPQLSerializer serializer = serialize(forCount);
+        List<Object> key = Arrays.asList(kind, serializer.toString(), serializer.getConstants(),
+                getMetadata().getModifiers());
+        TransactionQueryMemo.Entry entry = memo.get(key);
+        //아직 flush 안 된 변경이 있으면 원래 쿼리처럼 먼저 flush 한다(자동 flush). flush 리스너가 영향받는 결과를 지운다.
+        if (entry != null && autoFlushes() && entityManager.unwrap(Session.class).isDirty()) {
+            entityManager.flush();
+            entry = memo.get(key);
+        }
+        if (entry != null && !managed(entry.result)) {
+            memo.remove(key);
+            entry = null;
+        }
+        if (entry != null) {
+            return (R) memo.hit(entry);
+        }
+        R result = query.get();
+        memo.put(key, result, entityTypes(getMetadata()));
+        return result;
+    }
+
+    //결과(목록, Tuple, Object[] 포함)의 엔티티가 모두 현재 영속성 컨텍스트에 있는지. DTO/값 결과는 항상 true
+    private boolean managed(Object result) {
+        if (result instanceof Collection) {
+            for (Object element : (Collection<?>) result) {
+                if (!managed(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (result instanceof Tuple) {
+            return managed(Arrays.asList(((Tuple) result).toArray()));
+        }
+        if (result instanceof Object[]) {
+            return managed(Arrays.asList((Object[]) result));
+        }
+        if (result != null && Hibernate.getClass(result).isAnnotationPresent(Entity.class)) {
+            return entityManager.contains(result);
+        }
+        return true;
+    }
+
+    private boolean autoFlushes() {
+        return flushMode != FlushModeType.COMMIT && entityManager.getFlushMode() == FlushModeType.AUTO;
+    }
+
+    //쿼리가 참조하는 엔티티 타입(암시적 조인 경로, 서브쿼리 포함)
+    static Set<Class<?>> entityTypes(QueryMetadata metadata) {
+        Set<Class<?>> types = new HashSet<>();
+        collect(metadata, types);
+        return types;
+    }
+
+    private static void collect(QueryMetadata metadata, Set<Class<?>> types) {
+        collect(metadata.getProjection(), types);
+        for (JoinExpression join : metadata.getJoins()) {
+            collect(join.getTarget(), types);
+            collect(join.getCondition(), types);
+        }
+        collect(metadata.getWhere(), types);
+        collect(metadata.getHaving(), types);
+        metadata.getGroupBy().forEach(expr -> collect(expr, types));
+        for (OrderSpecifier<?> order : metadata.getOrderBy()) {
+            collect(order.getTarget(), types);
+        }
+    }
+
+    private static void collect(Expression<?> expr, Set<Class<?>> types) {
+        if (expr instanceof Path) {
+            for (Path<?> path = (Path<?>) expr; path != null; path = path.getMetadata().getParent()) {
+                addIfEntity(path.getType(), types);
+                if (path instanceof CollectionExpression) {
+                    addIfEntity(((CollectionExpression<?, ?>) path).getParameter(0), types);
+                } else if (path instanceof MapExpression) {
+                    addIfEntity(((MapExpression<?, ?>) path).getParameter(1), types);
+                }
+            }
+        } else if (expr instanceof Operation) {
+            ((Operation<?>) expr).getArgs().forEach(arg -> collect(arg, types));
+        } else if (expr instanceof FactoryExpression) {
+            ((FactoryExpression<?>) expr).getArgs().forEach(arg -> collect(arg, types));
+        } else if (expr instanceof TemplateExpression) {
+            for (Object arg : ((TemplateExpression<?>) expr).getArgs()) {
+                if (arg instanceof Expression) {
+                    collect((Expression<?>) arg, types);
+                }
+            }
+        } else if (expr instanceof SubQueryExpression) {
+            collect(((SubQueryExpression<?>) expr).getMetadata(), types);
+        }
+    }
+
+    private static void addIfEntity(Class<?> type, Set<Class<?>> types) {
+        if (type != null && type.isAnnotationPresent(Entity.class)) {
+            types.add(type);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package study.querydsl.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import javax.persistence.QueryTimeoutException;
+import javax.persistence.TypedQuery;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * 현재 요청의 조회 마감 시간
+ * 웹 요청마다 RequestDeadlineInterceptor 가 설정하고, 쿼리를 실행할 때 남은 시간을 JPA query timeout 힌트로 건다.
+ * 다른 스레드에서 조회한다면 current() / restore() 로 넘겨준다.
+ */
+public final class QueryDeadline {
+
+    public static final String TIMEOUT_HINT = "javax.persistence.query.timeout";
+
+    //System.nanoTime 기준 마감 시각
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private QueryDeadline() {
+    }
+
+    public static void set(long timeoutMillis) {
+        DEADLINE.set(System.nanoTime() + timeoutMillis * 1_000_000L);
+    }
+
+    public static Long current() {
+        return DEADLINE.get();
+    }
+
+    public static void restore(Long deadline) {
+        if (deadline == null) {
+            DEADLINE.remove();
+        } else {
+            DEADLINE.set(deadline);
+        }
+    }
+
+    public static void clear() {
+        DEADLINE.remove();
+    }
+
+    public static boolean isExpired() {
+        Long deadline = DEADLINE.get();
+        return deadline != null && deadline - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @return 마감이 없으면 null
+     * JDBC timeout 은 초 단위이고 Hibernate 는 힌트를 초로 반올림하므로(0이면 무제한) 1초 단위로 올림한다.
+     * 쿼리를 실행하기 직전에 호출한다. 마감이 이미 지났으면 DB 에 보내지 않고 QueryTimeoutException 을 던진다.
+     */
+    public static Integer timeoutHintMillis() {
+        Integer seconds = timeoutSeconds();
+        return seconds == null ? null : (int) Math.min(Integer.MAX_VALUE, seconds * 1000L);
+    }
+
+    //JDBC Statement.setQueryTimeout 에 바로 넘기는 값(올림, 최소 1초)
+    public static Integer timeoutSeconds() {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) {
+            return null;
+        }
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw new QueryTimeoutException("Request deadline has already passed");
+        }
+        long seconds = (remainingNanos + 999_999_999L) / 1_000_000_000L;
+        return (int) Math.min(Integer.MAX_VALUE, seconds);
+    }
+
+    public static <T> TypedQuery<T> apply(TypedQuery<T> query) {
+        Integer timeout = timeoutHintMillis();
+        return timeout == null ? query : query.setHint(TIMEOUT_HINT, timeout);
+    }
+
+    /**
+     * PageableExecutionUtils.getPage 와 같지만, count 가 필요한 시점에 마감이 이미 지났으면
+     * count 쿼리를 실행하지 않고 전체 건수를 모르는 페이지(UnknownTotalPage)를 돌려준다.
+     * (추정치를 전체 건수로 내보내지 않는다. 페이지가 가득 찼다면 다음 페이지가 있다고 본다)
+     */
+    public static <T> Page<T> page(List<T> content, Pageable pageable, LongSupplier count) {
+        boolean[] skipped = new boolean[1];
+        Page<T> page = PageableExecutionUtils.getPage(content, pageable, () -> {
+            if (!isExpired()) {
+                return count.getAsLong();
+            }
+            skipped[0] = true;
+            return 0;
+        });
+        return skipped[0] ? new UnknownTotalPage<>(content, pageable, content.size() == pageable.getPageSize()) : page;
+    }
+}
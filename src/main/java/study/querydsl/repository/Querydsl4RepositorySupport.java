@@ -2,9 +2,12 @@ package study.querydsl.repository;
 
 import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
 import com.querydsl.core.types.dsl.PathBuilder;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -13,13 +16,18 @@ import
         org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
 import org.springframework.data.jpa.repository.support.Querydsl;
 import org.springframework.data.querydsl.SimpleEntityPathResolver;
-import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Querydsl 4.x 버전에 맞춘 Querydsl 지원 라이브러리
@@ -30,10 +38,14 @@ org.springframework.data.jpa.repository.support.QuerydslRepositorySupport
  */
 @Repository
 public abstract class Querydsl4RepositorySupport {
+    //읽기 전용 조회에서 한번에 가져올 row 수
+    static final int READ_ONLY_FETCH_SIZE = 500;
     private final Class domainClass;
     private Querydsl querydsl;
     private EntityManager entityManager;
     private JPAQueryFactory queryFactory;
+    private SortPolicy defaultSortPolicy;
+    private MeterRegistry meterRegistry;
     public Querydsl4RepositorySupport(Class<?> domainClass) { //생성 시점에 넣어준다
         Assert.notNull(domainClass, "Domain class must not be null!");
         this.domainClass = domainClass;
@@ -46,16 +58,26 @@ public abstract class Querydsl4RepositorySupport {
                 JpaEntityInformationSupport.getEntityInformation(domainClass, entityManager);
         SimpleEntityPathResolver resolver = SimpleEntityPathResolver.INSTANCE;
         EntityPath path = resolver.createPath(entityInformation.getJavaType());
+        PathBuilder<?> builder = new PathBuilder<>(path.getType(), path.getMetadata());
         this.entityManager = entityManager;
-        this.querydsl = new Querydsl(entityManager, new
-                PathBuilder<>(path.getType(), path.getMetadata()));
-        this.queryFactory = new JPAQueryFactory(entityManager);
+        this.querydsl = new Querydsl(entityManager, builder);
+        this.queryFactory = new DeadlineJPAQueryFactory(entityManager); //timeout 힌트 적용
+        //정책을 따로 정하지 않은 리포지토리는 id 정렬만 허용한다.
+        String idName = entityInformation.getIdAttribute().getName();
+        ComparableExpressionBase<?> id = builder.getComparable(idName, Comparable.class);
+        this.defaultSortPolicy = SortPolicy.tiebreaker(id).allow(idName, id).build();
+    }
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
     }
     @PostConstruct
     public void validate() {
         Assert.notNull(entityManager, "EntityManager must not be null!");
         Assert.notNull(querydsl, "Querydsl must not be null!");
         Assert.notNull(queryFactory, "QueryFactory must not be null!");
+        Assert.notNull(getSortPolicy(), "SortPolicy must not be null!");
+        Assert.notNull(meterRegistry, "MeterRegistry must not be null!");
     }
     protected JPAQueryFactory getQueryFactory() {
         return queryFactory;
@@ -66,29 +88,90 @@ public abstract class Querydsl4RepositorySupport {
     protected EntityManager getEntityManager() {
         return entityManager;
     }
+    /**
+     * 클라이언트 Sort 중 허용할 정렬을 정한다. 인덱스가 있는 정렬이 있다면 재정의한다.
+     */
+    protected SortPolicy getSortPolicy() {
+        return defaultSortPolicy;
+    }
+    //Querydsl.applyPagination 대신 SortPolicy 를 거쳐 정렬을 적용한다.
+    protected <T> JPAQuery<T> applyPageable(Pageable pageable, JPAQuery<T> query) {
+        if (pageable.isPaged()) {
+            query.offset(pageable.getOffset());
+            query.limit(pageable.getPageSize());
+        }
+        return query.orderBy(getSortPolicy().toOrderSpecifiers(pageable.getSort(), this::recordRejectedSort));
+    }
+    private void recordRejectedSort(String reason) {
+        meterRegistry.counter("querydsl.sort.rejected",
+                "repository", ClassUtils.getUserClass(getClass()).getSimpleName(),
+                "reason", reason).increment();
+    }
     protected <T> JPAQuery<T> select(Expression<T> expr) {
         return getQueryFactory().select(expr);
     }
     protected <T> JPAQuery<T> selectFrom(EntityPath<T> from) {
         return getQueryFactory().selectFrom(from);
     }
+    /**
+     * 읽기 전용 조회. 결과 엔티티는 스냅샷을 만들지 않아 flush 시 dirty checking 대상에서 빠진다.
+     * 조회한 엔티티를 수정해도 반영되지 않으므로 변경할 엔티티는 select/selectFrom 으로 조회한다.
+     */
+    protected <T> JPAQuery<T> selectReadOnly(Expression<T> expr) {
+        return readOnly(select(expr));
+    }
+    protected <T> JPAQuery<T> selectFromReadOnly(EntityPath<T> from) {
+        return readOnly(selectFrom(from));
+    }
+    static <T> JPAQuery<T> readOnly(JPAQuery<T> query) {
+        return query
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setHint(QueryHints.HINT_FETCH_SIZE, READ_ONLY_FETCH_SIZE);
+    }
     protected <T> Page<T> applyPagination(Pageable pageable,
                                           Function<JPAQueryFactory, JPAQuery> contentQuery) {
         JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable,
+        List<T> content = applyPageable(pageable,
                 jpaQuery).fetch();
-        return PageableExecutionUtils.getPage(content, pageable,
-                jpaQuery::fetchCount);
+        return QueryDeadline.page(content, pageable, jpaQuery::fetchCount);
     }
     protected <T> Page<T> applyPagination(Pageable pageable,
                                           Function<JPAQueryFactory, JPAQuery> contentQuery, Function<JPAQueryFactory,
             JPAQuery> countQuery) {
         JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable,
+        List<T> content = applyPageable(pageable,
                 jpaContentQuery).fetch();
         JPAQuery countResult = countQuery.apply(getQueryFactory());
-        return PageableExecutionUtils.getPage(content, pageable,
-                countResult::fetchCount);
+        return QueryDeadline.page(content, pageable, countResult::fetchCount);
+    }
+    /**
+     * Deferred join(late row lookup) 페이징
+     * 1단계에서 id만 정렬/offset/limit 으로 뽑고, 2단계에서 해당 id들만 in 으로 조회한 뒤 1단계 순서로 되돌린다.
+     * 깊은 페이지에서 건너뛰는 row 들을 조인된 전체 컬럼으로 만들지 않아도 된다.
+     *
+     * @param idQuery  select(id).from(..).where(..) - count 쿼리로도 사용된다
+     * @param rowQuery 1단계에서 얻은 id 목록으로 실제 row 를 조회하는 쿼리
+     * @param idOf     row 에서 id 를 꺼내는 함수(순서 복원용)
+     */
+    protected <T> Page<T> applyPagination(Pageable pageable,
+                                          Function<JPAQueryFactory, JPAQuery<Long>> idQuery,
+                                          BiFunction<JPAQueryFactory, List<Long>, JPAQuery<T>> rowQuery,
+                                          Function<T, Long> idOf) {
+        JPAQuery<Long> jpaIdQuery = idQuery.apply(getQueryFactory());
+        List<Long> ids = applyPageable(pageable,
+                jpaIdQuery).fetch();
+        List<T> content = ids.isEmpty()
+                ? Collections.emptyList()
+                : orderByIds(ids, rowQuery.apply(getQueryFactory(), ids).fetch(), idOf);
+        return QueryDeadline.page(content, pageable, jpaIdQuery::fetchCount);
+    }
+    //in 절 조회는 순서를 보장하지 않기 때문에 1단계 id 순서대로 다시 정렬한다.
+    static <T> List<T> orderByIds(List<Long> ids, List<T> rows, Function<T, Long> idOf) {
+        Map<Long, T> rowsById = rows.stream()
+                .collect(Collectors.toMap(idOf, Function.identity(), (first, second) -> first));
+        return ids.stream()
+                .map(rowsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 }
-
@@ -0,0 +1,15 @@
+package study.querydsl.repository;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * SortPolicy 에서 허용하지 않은 정렬 요청
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class SortNotAllowedException extends RuntimeException {
+
+    public SortNotAllowedException(String property, String reason) {
+        super("Sort by '" + property + "' is not allowed: " + reason);
+    }
+}
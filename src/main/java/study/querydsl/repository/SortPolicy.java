@@ -0,0 +1,117 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 리포지토리별 정렬 허용 정책
+ * 클라이언트가 보낸 Sort 중 인덱스가 있는 속성만 허용하고, 마지막에 id를 붙여 항상 같은 순서를 보장한다.
+ * 허용되지 않은 정렬은 REJECT 면 예외, IGNORE 면 해당 정렬만 버린다.
+ */
+public class SortPolicy {
+
+    public enum Violation {REJECT, IGNORE}
+
+    private final ComparableExpressionBase<?> tiebreaker;
+    private final Map<String, ComparableExpressionBase<?>> allowed;
+    private final int maxOrders;
+    private final Violation violation;
+
+    private SortPolicy(Builder builder) {
+        this.tiebreaker = builder.tiebreaker;
+        this.allowed = Collections.unmodifiableMap(new LinkedHashMap<>(builder.allowed));
+        this.maxOrders = builder.maxOrders;
+        this.violation = builder.violation;
+    }
+
+    /**
+     * @param tiebreaker 정렬 마지막에 붙는 유일 키(보통 id)
+     */
+    public static Builder tiebreaker(ComparableExpressionBase<?> tiebreaker) {
+        return new Builder(tiebreaker);
+    }
+
+    /**
+     * @param onRejected 허용되지 않은 정렬마다 사유와 함께 호출된다(메트릭 기록용)
+     */
+    public OrderSpecifier<?>[] toOrderSpecifiers(Sort sort, Consumer<String> onRejected) {
+        List<OrderSpecifier<?>> orders = new ArrayList<>();
+        boolean tiebreakerSorted = false;
+        for (Sort.Order order : sort) {
+            ComparableExpressionBase<?> expression = allowed.get(order.getProperty());
+            String reason = expression == null ? "not_allowed"
+                    : orders.size() >= maxOrders ? "too_many_orders" : null;
+            if (reason != null) {
+                onRejected.accept(reason);
+                if (violation == Violation.REJECT) {
+                    throw new SortNotAllowedException(order.getProperty(), reason);
+                }
+                continue;
+            }
+            orders.add(toOrderSpecifier(order, expression));
+            tiebreakerSorted |= expression == tiebreaker;
+        }
+        if (!tiebreakerSorted) {
+            orders.add(tiebreaker.asc());
+        }
+        return orders.toArray(new OrderSpecifier[0]);
+    }
+
+    private OrderSpecifier<?> toOrderSpecifier(Sort.Order order, ComparableExpressionBase<?> expression) {
+        OrderSpecifier<?> orderSpecifier = order.isAscending() ? expression.asc() : expression.desc();
+        switch (order.getNullHandling()) {
+            case NULLS_FIRST:
+                return orderSpecifier.nullsFirst();
+            case NULLS_LAST:
+                return orderSpecifier.nullsLast();
+            default:
+                return orderSpecifier;
+        }
+    }
+
+    public static class Builder {
+        private final ComparableExpressionBase<?> tiebreaker;
+        private final Map<String, ComparableExpressionBase<?>> allowed = new LinkedHashMap<>();
+        private int maxOrders = 1;
+        private Violation violation = Violation.REJECT;
+
+        private Builder(ComparableExpressionBase<?> tiebreaker) {
+            Assert.notNull(tiebreaker, "Tiebreaker must not be null!");
+            this.tiebreaker = tiebreaker;
+        }
+
+        /**
+         * @param property   클라이언트가 보내는 정렬 속성명
+         * @param expression 인덱스가 있는 정렬 대상
+         */
+        public Builder allow(String property, ComparableExpressionBase<?> expression) {
+            allowed.put(property, expression);
+            return this;
+        }
+
+        //복합 인덱스가 없다면 정렬 키가 늘어날수록 filesort 가 발생한다.
+        public Builder maxOrders(int maxOrders) {
+            Assert.isTrue(maxOrders > 0, "maxOrders must be positive!");
+            this.maxOrders = maxOrders;
+            return this;
+        }
+
+        public Builder onViolation(Violation violation) {
+            this.violation = violation;
+            return this;
+        }
+
+        public SortPolicy build() {
+            return new SortPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package study.querydsl.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import study.querydsl.entity.Member;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 팀의 회원을 Team.members 컬렉션을 초기화하지 않고 조회한다.
+ * member.team_id 만 보기 때문에 team 조인이 없다.
+ */
+@Repository
+public class TeamMemberRepository extends Querydsl4RepositorySupport {
+    public TeamMemberRepository() {
+        super(Member.class);
+    }
+
+    private static final SortPolicy SORT_POLICY = SortPolicy.tiebreaker(member.id)
+            .allow("id", member.id)
+            .allow("age", member.age)
+            .allow("username", member.username)
+            .build();
+
+    @Override
+    protected SortPolicy getSortPolicy() {
+        return SORT_POLICY;
+    }
+
+    public Page<Member> findByTeam(Long teamId, Pageable pageable) {
+        return applyPagination(pageable, contentQuery -> contentQuery
+                .selectFrom(member)
+                .where(member.team.id.eq(teamId)), countQuery -> countQuery
+                .select(member.id)
+                .from(member)
+                .where(member.team.id.eq(teamId))
+        );
+    }
+
+    public long countByTeam(Long teamId) {
+        Long count = select(member.count())
+                .from(member)
+                .where(member.team.id.eq(teamId))
+                .fetchOne();
+        return count == null ? 0 : count;
+    }
+}
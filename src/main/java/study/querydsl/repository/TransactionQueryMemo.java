@@ -0,0 +1,111 @@
+package study.querydsl.repository;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 한 트랜잭션 안에서 같은 쿼리(JPQL + 파라미터)를 다시 실행하지 않도록 결과를 기억한다.
+ * enable() 을 호출한 트랜잭션에서만 동작하고(opt-in), 트랜잭션이 끝나면 버린다.
+ * 쿼리가 참조하는 엔티티 타입이 flush 되거나 벌크로 바뀌면 그 타입을 참조하는 결과만 지운다.
+ * DeadlineJPAQueryFactory 로 만든 쿼리의 fetch/fetchOne/fetchCount 에 적용된다.
+ */
+public final class TransactionQueryMemo {
+
+    private static final Object RESOURCE_KEY = TransactionQueryMemo.class;
+
+    private final Map<List<Object>, Entry> results = new HashMap<>();
+    private int hits;
+    private int misses;
+
+    private TransactionQueryMemo() {
+    }
+
+    //현재 트랜잭션에서 메모이제이션을 켠다. 이미 켜져 있으면 그대로 쓴다.
+    public static TransactionQueryMemo enable() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("TransactionQueryMemo 는 트랜잭션 안에서만 켤 수 있습니다");
+        }
+        TransactionQueryMemo memo = current();
+        if (memo != null) {
+            return memo;
+        }
+        TransactionQueryMemo created = new TransactionQueryMemo();
+        TransactionSynchronizationManager.bindResource(RESOURCE_KEY, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(RESOURCE_KEY);
+            }
+        });
+        return created;
+    }
+
+    //켜지 않은 트랜잭션(또는 트랜잭션 밖)이면 null
+    public static TransactionQueryMemo current() {
+        return (TransactionQueryMemo) TransactionSynchronizationManager.getResource(RESOURCE_KEY);
+    }
+
+    Entry get(List<Object> key) {
+        return results.get(key);
+    }
+
+    Object hit(Entry entry) {
+        hits++;
+        return entry.result;
+    }
+
+    void put(List<Object> key, Object result, Set<Class<?>> entityTypes) {
+        misses++;
+        results.put(key, new Entry(result, entityTypes));
+    }
+
+    void remove(List<Object> key) {
+        results.remove(key);
+    }
+
+    //상속 관계도 같은 테이블을 볼 수 있으므로 양쪽 방향 모두 비교한다
+    void evict(Class<?> entityType) {
+        Iterator<Entry> it = results.values().iterator();
+        while (it.hasNext()) {
+            for (Class<?> type : it.next().entityTypes) {
+                if (type.isAssignableFrom(entityType) || entityType.isAssignableFrom(type)) {
+                    it.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return results.isEmpty();
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    static final class Entry {
+        final Object result;
+        final Set<Class<?>> entityTypes;
+
+        private Entry(Object result, Set<Class<?>> entityTypes) {
+            this.result = result;
+            this.entityTypes = entityTypes;
+        }
+    }
+}
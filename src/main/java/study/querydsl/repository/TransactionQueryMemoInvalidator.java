@@ -0,0 +1,87 @@
+package study.querydsl.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.outbox.BulkChangeRecorded;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * flush 로 실행된 insert/update/delete 와 벌크 변경(BulkChangeRecorded)의 엔티티 타입으로
+ * 현재 트랜잭션의 TransactionQueryMemo 에서 그 타입을 참조하는 결과를 지운다.
+ * outbox 에 남지 않는 벌크 JPQL/네이티브 변경은 알 수 없으므로 메모이제이션을 켠 트랜잭션에서는 쓰지 않는다.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransactionQueryMemoInvalidator
+        implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        evict(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        evict(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        evict(event.getEntity());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    @EventListener
+    public void onBulkChange(BulkChangeRecorded event) {
+        TransactionQueryMemo memo = TransactionQueryMemo.current();
+        if (memo != null) {
+            switch (event.getAggregateType()) {
+                case MEMBER:
+                    memo.evict(Member.class);
+                    break;
+                case TEAM:
+                    memo.evict(Team.class);
+                    break;
+            }
+        }
+    }
+
+    private static void evict(Object entity) {
+        TransactionQueryMemo memo = TransactionQueryMemo.current();
+        if (memo != null && !memo.isEmpty()) {
+            memo.evict(Hibernate.getClass(entity));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package study.querydsl.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 전체 건수를 모르는 페이지(마감이 지나 count 쿼리를 건너뛴 경우)
+ * getTotalElements() / getTotalPages() 는 -1 이고, 다음 페이지 여부는 페이지가 가득 찼는지로만 판단한다.
+ * JSON 응답에는 "totalKnown": false 가 함께 나간다.
+ */
+public class UnknownTotalPage<T> extends PageImpl<T> {
+
+    public static final long UNKNOWN = -1;
+
+    private final boolean hasNext;
+
+    public UnknownTotalPage(List<T> content, Pageable pageable, boolean hasNext) {
+        super(content, pageable, pageable.getOffset() + content.size());
+        this.hasNext = hasNext;
+    }
+
+    public static boolean isUnknown(Page<?> page) {
+        return page instanceof UnknownTotalPage;
+    }
+
+    public boolean isTotalKnown() {
+        return false;
+    }
+
+    @Override
+    public long getTotalElements() {
+        return UNKNOWN;
+    }
+
+    @Override
+    public int getTotalPages() {
+        return (int) UNKNOWN;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    public boolean isLast() {
+        return !hasNext;
+    }
+
+    @Override
+    public <U> Page<U> map(Function<? super T, ? extends U> converter) {
+        return new UnknownTotalPage<>(getConvertedContent(converter), getPageable(), hasNext);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Page %s of unknown", getNumber() + 1);
+    }
+}
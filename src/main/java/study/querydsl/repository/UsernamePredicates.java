@@ -0,0 +1,29 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.StringExpression;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * MemberSearchCondition 의 username 조건. member, member_team(JPA), member(querydsl-sql) 검색이 같이 쓴다.
+ * lower(username) 비교는 인덱스를 못 타므로 대소문자 무시 검색은 DB 가 계산해 두는 username_lower 컬럼과 비교한다.
+ */
+public final class UsernamePredicates {
+
+    private UsernamePredicates() {
+    }
+
+    public static BooleanExpression eq(MemberSearchCondition condition,
+                                       StringExpression username, StringExpression usernameLower) {
+        String value = condition.getUsername();
+        if (!hasText(value)) {
+            return null;
+        }
+        return condition.isUsernameIgnoreCase()
+                ? usernameLower.eq(Member.normalizeUsername(value))
+                : username.eq(value);
+    }
+}
@@ -0,0 +1,219 @@
+package study.querydsl.repository.fetch;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.QueryDeadline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * Team + members, Member + team 조회 시 fetch 전략을 고른다.
+ * 페이징은 항상 부모 엔티티(id)에만 걸고, 컬렉션을 fetch join 한 쿼리에 offset/limit 을 주지 않는다.
+ * (컬렉션 fetch join + 페이징은 Hibernate 가 전체를 읽어 메모리에서 자른다)
+ */
+@Repository
+@Transactional(readOnly = true)
+public class AssociationLoader {
+
+    static final String TEAM_MEMBERS = "Team.members";
+    static final String MEMBER_TEAM = "Member.team";
+    //in 절 하나에 넣을 최대 id 수
+    static final int IN_CHUNK = 1000;
+    //fetch join 결과 row 수가 이 이하로 예상될 때만 컬렉션을 fetch join 한다
+    static final long FETCH_JOIN_MAX_ROWS = 1000;
+    //같은 팀이 이보다 많이 반복되고 페이지가 크면 팀을 따로 읽는다
+    static final double MANY_TO_ONE_MAX_FANOUT = 10;
+    static final int MANY_TO_ONE_MIN_PAGE_SIZE = 100;
+
+    private final JPAQueryFactory queryFactory;
+    private final CardinalityStatistics statistics;
+    private final MeterRegistry meterRegistry;
+
+    public AssociationLoader(JPAQueryFactory queryFactory, CardinalityStatistics statistics, MeterRegistry meterRegistry) {
+        this.queryFactory = queryFactory;
+        this.statistics = statistics;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 조건에 맞는 팀을 id 순으로 페이징하고 각 팀의 회원을 함께 읽는다.
+     * @param condition team 기준 조건(null 가능)
+     */
+    public Page<TeamMembers> findTeamsWithMembers(Predicate condition, Pageable pageable) {
+        JPAQuery<Long> idQuery = teamIds(condition);
+        if (pageable.isPaged()) {
+            idQuery.offset(pageable.getOffset()).limit(pageable.getPageSize());
+        }
+        List<Long> ids = idQuery.fetch();
+        //마지막 페이지까지 한번에 읽었으면 팀 조건을 서브쿼리로 재사용할 수 있다
+        boolean coversAll = pageable.isUnpaged()
+                || (pageable.getOffset() == 0 && ids.size() < pageable.getPageSize());
+
+        List<TeamMembers> content = Collections.emptyList();
+        if (!ids.isEmpty()) {
+            FetchStrategy strategy = chooseForTeamMembers(ids.size(), coversAll);
+            count(TEAM_MEMBERS, strategy);
+            content = strategy == FetchStrategy.FETCH_JOIN ? teamMembersByFetchJoin(ids)
+                    : strategy == FetchStrategy.SUBSELECT ? teamMembersBySubselect(ids, condition)
+                    : teamMembersByBatchIn(ids);
+            statistics.record(TEAM_MEMBERS, content.size(),
+                    content.stream().mapToLong(t -> t.getMembers().size()).sum());
+        }
+        return QueryDeadline.page(content, pageable, teamIds(condition)::fetchCount);
+    }
+
+    /**
+     * 조건에 맞는 회원을 id 순으로 페이징하고 팀을 함께 읽는다.
+     * many-to-one 은 fetch join 해도 row 수가 늘지 않아 페이징이 깨지지 않는다.
+     * @param condition member, team 기준 조건(null 가능)
+     */
+    public Page<Member> findMembersWithTeam(Predicate condition, Pageable pageable) {
+        FetchStrategy strategy = chooseForMemberTeam(pageable);
+        count(MEMBER_TEAM, strategy);
+
+        JPAQuery<Member> query = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team);
+        if (strategy == FetchStrategy.FETCH_JOIN) {
+            query.fetchJoin();
+        }
+        query.where(condition).orderBy(member.id.asc());
+        if (pageable.isPaged()) {
+            query.offset(pageable.getOffset()).limit(pageable.getPageSize());
+        }
+        List<Member> content = query.fetch();
+
+        //팀 프록시를 id 로 모아 한번에 초기화한다(영속성 컨텍스트에 올라가면 프록시가 추가 쿼리 없이 채워진다)
+        List<Long> teamIds = content.stream()
+                .filter(m -> m.getTeam() != null)
+                .map(m -> m.getTeam().getId())
+                .distinct()
+                .collect(Collectors.toList());
+        if (strategy == FetchStrategy.BATCH_IN) {
+            for (List<Long> chunk : chunks(teamIds)) {
+                queryFactory.selectFrom(team).where(team.id.in(chunk)).fetch();
+            }
+        }
+        statistics.record(MEMBER_TEAM, teamIds.size(), content.stream().filter(m -> m.getTeam() != null).count());
+
+        return QueryDeadline.page(content, pageable, () -> queryFactory
+                .select(member.id)
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(condition)
+                .fetchCount());
+    }
+
+    FetchStrategy chooseForTeamMembers(int teams, boolean coversAll) {
+        //통계가 없으면 중복 row 를 예측할 수 없으므로 fetch join 하지 않는다
+        double fanout = statistics.fanout(TEAM_MEMBERS).orElse(Double.MAX_VALUE);
+        if (teams <= IN_CHUNK && teams * fanout <= FETCH_JOIN_MAX_ROWS) {
+            return FetchStrategy.FETCH_JOIN;
+        }
+        //in 목록이 여러 개로 나뉠 만큼 크면 조건을 서브쿼리로 다시 쓰는 편이 낫다
+        if (coversAll && teams > IN_CHUNK) {
+            return FetchStrategy.SUBSELECT;
+        }
+        return FetchStrategy.BATCH_IN;
+    }
+
+    FetchStrategy chooseForMemberTeam(Pageable pageable) {
+        double fanout = statistics.fanout(MEMBER_TEAM).orElse(1);
+        boolean largePage = pageable.isUnpaged() || pageable.getPageSize() >= MANY_TO_ONE_MIN_PAGE_SIZE;
+        return largePage && fanout > MANY_TO_ONE_MAX_FANOUT ? FetchStrategy.BATCH_IN : FetchStrategy.FETCH_JOIN;
+    }
+
+    private JPAQuery<Long> teamIds(Predicate condition) {
+        return queryFactory
+                .select(team.id)
+                .from(team)
+                .where(condition)
+                .orderBy(team.id.asc());
+    }
+
+    //id 로 범위가 정해진 팀에만 fetch join 하므로 offset/limit 이 필요 없다
+    private List<TeamMembers> teamMembersByFetchJoin(List<Long> ids) {
+        List<Team> teams = queryFactory
+                .selectFrom(team)
+                .distinct()
+                .leftJoin(team.members, member).fetchJoin()
+                .where(team.id.in(ids))
+                .fetch();
+        return inIdOrder(ids, teams, t -> new TeamMembers(t, t.getMembers()));
+    }
+
+    private List<TeamMembers> teamMembersByBatchIn(List<Long> ids) {
+        List<Team> teams = new ArrayList<>();
+        List<Member> members = new ArrayList<>();
+        for (List<Long> chunk : chunks(ids)) {
+            teams.addAll(queryFactory.selectFrom(team).where(team.id.in(chunk)).fetch());
+            members.addAll(queryFactory.selectFrom(member).where(member.team.id.in(chunk)).fetch());
+        }
+        return group(ids, teams, members);
+    }
+
+    private List<TeamMembers> teamMembersBySubselect(List<Long> ids, Predicate condition) {
+        List<Team> teams = queryFactory
+                .selectFrom(team)
+                .where(condition)
+                .fetch();
+        List<Member> members = queryFactory
+                .selectFrom(member)
+                .where(member.team.id.in(JPAExpressions
+                        .select(team.id)
+                        .from(team)
+                        .where(condition)))
+                .fetch();
+        return group(ids, teams, members);
+    }
+
+    private List<TeamMembers> group(List<Long> ids, List<Team> teams, List<Member> members) {
+        Map<Long, List<Member>> membersByTeam = members.stream()
+                .collect(Collectors.groupingBy(m -> m.getTeam().getId()));
+        return inIdOrder(ids, teams,
+                t -> new TeamMembers(t, membersByTeam.getOrDefault(t.getId(), Collections.emptyList())));
+    }
+
+    private List<TeamMembers> inIdOrder(List<Long> ids, List<Team> teams, Function<Team, TeamMembers> mapper) {
+        Map<Long, Team> teamsById = teams.stream()
+                .collect(Collectors.toMap(Team::getId, Function.identity(), (first, second) -> first));
+        return new LinkedHashSet<>(ids).stream()
+                .map(teamsById::get)
+                .filter(Objects::nonNull)
+                .map(mapper)
+                .collect(Collectors.toList());
+    }
+
+    private static List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += IN_CHUNK) {
+            chunks.add(ids.subList(i, Math.min(i + IN_CHUNK, ids.size())));
+        }
+        return chunks;
+    }
+
+    private void count(String association, FetchStrategy strategy) {
+        meterRegistry.counter("querydsl.fetch.strategy",
+                "association", association,
+                "strategy", strategy.name()).increment();
+    }
+}
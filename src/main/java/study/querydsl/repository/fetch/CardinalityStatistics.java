@@ -0,0 +1,32 @@
+package study.querydsl.repository.fetch;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 연관관계별 fan-out(부모 1건당 딸려오는 row 수) 통계
+ * 조회할 때마다 실제 값을 지수 이동 평균으로 반영한다.
+ */
+@Component
+public class CardinalityStatistics {
+
+    private static final double ALPHA = 0.2;
+
+    private final Map<String, Double> fanouts = new ConcurrentHashMap<>();
+
+    public void record(String association, long owners, long loaded) {
+        if (owners == 0) {
+            return;
+        }
+        double sample = (double) loaded / owners;
+        fanouts.merge(association, sample, (average, value) -> average + ALPHA * (value - average));
+    }
+
+    public OptionalDouble fanout(String association) {
+        Double fanout = fanouts.get(association);
+        return fanout == null ? OptionalDouble.empty() : OptionalDouble.of(fanout);
+    }
+}
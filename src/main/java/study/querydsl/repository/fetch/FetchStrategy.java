@@ -0,0 +1,7 @@
+package study.querydsl.repository.fetch;
+
+public enum FetchStrategy {
+    FETCH_JOIN, //한 쿼리로 연관 엔티티까지 조회(부모 row 가 자식 수만큼 중복된다)
+    BATCH_IN,   //부모 id 목록으로 in 쿼리를 한번 더(IN_CHUNK 단위)
+    SUBSELECT   //부모 조회 조건을 서브쿼리로 다시 사용(부모 전체를 읽은 경우만)
+}
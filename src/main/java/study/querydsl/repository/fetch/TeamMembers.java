@@ -0,0 +1,22 @@
+package study.querydsl.repository.fetch;
+
+import lombok.Getter;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import java.util.List;
+
+/**
+ * 팀과 그 팀의 회원 목록
+ * BATCH_IN/SUBSELECT 로 읽은 회원은 Team.members 컬렉션을 초기화하지 않으므로 members 로 꺼내 쓴다.
+ */
+@Getter
+public class TeamMembers {
+    private final Team team;
+    private final List<Member> members;
+
+    public TeamMembers(Team team, List<Member> members) {
+        this.team = team;
+        this.members = members;
+    }
+}
@@ -0,0 +1,101 @@
+package study.querydsl.repository.query;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import study.querydsl.concurrency.DatabaseBulkhead;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 여러 MemberSearchCondition 을 최소한의 조회로 실행한다(화면 위젯마다 보내던 /v1/members 를 한번에).
+ * - 같은 조건은 한번만 실행한다.
+ * - 조건들을 or 로 묶어 한 statement 로 조회한다. row 가 어느 조건에 맞는지는 DB 가 판단한다(searchAny).
+ * - 조건이 없는 검색(전체)이 하나라도 있으면 그 한번의 조회로 모든 조건을 나눈다.
+ * - 묶음이 여러 개(MAX_MERGED 초과)면 DatabaseBulkhead 에서 병렬로 실행한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberBatchSearch {
+
+    //한 statement 에 or 로 묶는 최대 조건 수(where 절이 너무 길어지면 실행 계획이 나빠진다)
+    static final int MAX_MERGED = 32;
+
+    private final MemberQueryRepository memberQueryRepository;
+    private final DatabaseBulkhead databaseBulkhead;
+
+    //conditions 순서대로 결과를 돌려준다
+    public List<List<MemberTeamDto>> search(List<MemberSearchCondition> conditions) {
+        Map<MemberSearchCondition, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < conditions.size(); i++) {
+            positions.computeIfAbsent(conditions.get(i), key -> new ArrayList<>()).add(i);
+        }
+        List<List<MemberSearchCondition>> statements = plan(new ArrayList<>(positions.keySet()));
+        List<List<List<MemberTeamDto>>> rows = execute(statements);
+
+        Map<MemberSearchCondition, List<MemberTeamDto>> byCondition = new HashMap<>();
+        for (int i = 0; i < statements.size(); i++) {
+            List<MemberSearchCondition> merged = statements.get(i);
+            for (int j = 0; j < merged.size(); j++) {
+                byCondition.put(merged.get(j), rows.get(i).get(j));
+            }
+        }
+
+        List<List<MemberTeamDto>> result = new ArrayList<>(Collections.nCopies(conditions.size(), null));
+        positions.forEach((condition, indexes) -> indexes.forEach(i -> result.set(i, byCondition.get(condition))));
+        return result;
+    }
+
+    //statement 마다 or 로 묶을 조건들
+    static List<List<MemberSearchCondition>> plan(List<MemberSearchCondition> conditions) {
+        if (conditions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (conditions.stream().anyMatch(MemberBatchSearch::unfiltered)) {
+            return Collections.singletonList(conditions);
+        }
+        List<List<MemberSearchCondition>> statements = new ArrayList<>();
+        for (int from = 0; from < conditions.size(); from += MAX_MERGED) {
+            statements.add(conditions.subList(from, Math.min(from + MAX_MERGED, conditions.size())));
+        }
+        return statements;
+    }
+
+    private static boolean unfiltered(MemberSearchCondition condition) {
+        return !hasText(condition.getUsername()) && !hasText(condition.getTeamName())
+                && condition.getAgeGoe() == null && condition.getAgeLoe() == null;
+    }
+
+    private List<List<List<MemberTeamDto>>> execute(List<List<MemberSearchCondition>> statements) {
+        if (statements.size() <= 1) {
+            return statements.stream()
+                    .map(memberQueryRepository::searchAny)
+                    .collect(Collectors.toList());
+        }
+        //bulkhead 가 요청의 QueryDeadline 을 이어받고, 타임아웃되면 statement 를 취소한다
+        List<CompletableFuture<List<List<MemberTeamDto>>>> futures = statements.stream()
+                .map(merged -> databaseBulkhead.submit(() -> memberQueryRepository.searchAny(merged)))
+                .collect(Collectors.toList());
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+}
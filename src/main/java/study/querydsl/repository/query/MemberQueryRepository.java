@@ -1,18 +1,40 @@
 package study.querydsl.repository.query;
 
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.CaseBuilder;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
+import study.querydsl.cache.MemberSearchCache;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.repository.DeadlineJPAQueryFactory;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberRepositoryImpl;
+import study.querydsl.repository.QueryDeadline;
+import study.querydsl.repository.UsernamePredicates;
 
 import javax.persistence.EntityManager;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.springframework.util.StringUtils.hasText;
 import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberTeamView.memberTeamView;
 import static study.querydsl.entity.QTeam.team;
 
 @Repository
@@ -20,12 +42,43 @@ public class MemberQueryRepository {
     //화면에 특화된 기능
     //조회가 너무 복잡하면 Custom에 넣는게 아니라 이렇게 분리해서 작성하여도 된다.
     private final JPAQueryFactory queryFactory;
+    //true 이면 조인 없이 member_team 조회 모델에서 읽는다.
+    private final boolean readModelEnabled;
+    private final MemberSearchCache searchCache;
+    //fields= 조회도 fields 가 없는 조회와 같은 검색 엔진(querydsl.search.engine), 캐시 항목을 쓴다.
+    private final String searchEngine;
+    private final MemberRepository memberRepository;
 
 
-    public MemberQueryRepository(EntityManager em) {
-        this.queryFactory = new JPAQueryFactory(em);
+    public MemberQueryRepository(EntityManager em,
+                                 @Value("${querydsl.read-model.enabled:false}") boolean readModelEnabled,
+                                 MemberSearchCache searchCache,
+                                 @Value("${querydsl.search.engine:jpa}") String searchEngine,
+                                 MemberRepository memberRepository) {
+        this.queryFactory = new DeadlineJPAQueryFactory(em);
+        this.readModelEnabled = readModelEnabled;
+        this.searchCache = searchCache;
+        this.searchEngine = searchEngine;
+        this.memberRepository = memberRepository;
     }
     public List<MemberTeamDto> search(MemberSearchCondition condition){
+        return searchCache.list("query.search", condition, () -> searchFromDb(condition));
+    }
+
+    private List<MemberTeamDto> searchFromDb(MemberSearchCondition condition){
+        if(readModelEnabled){
+            return queryFactory
+                    .select(new QMemberTeamDto(
+                            memberTeamView.memberId,
+                            memberTeamView.username,
+                            memberTeamView.age,
+                            memberTeamView.teamId,
+                            memberTeamView.teamName
+                    ))
+                    .from(memberTeamView)
+                    .where(MemberTeamViewPredicates.of(condition))
+                    .fetch();
+        }
         return queryFactory
                 //SelectionProjection 이 변경되어도 재사용이 가능하다.
                 .select(new QMemberTeamDto(
@@ -38,7 +91,7 @@ public class MemberQueryRepository {
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameEq(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -46,8 +99,172 @@ public class MemberQueryRepository {
                 .fetch();
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
+    /**
+     * 조건들 중 하나라도 맞는 회원을 한 번의 조회로 가져와 조건별로 나눈다: where (조건1) or (조건2) ...
+     * 어느 조건에 맞는지는 DB 가 판단한다. 조건마다 case when (조건i) then 1 else 0 end 를 함께 select 한다.
+     * @return conditions 순서대로의 결과
+     */
+    public List<List<MemberTeamDto>> searchAny(List<MemberSearchCondition> conditions){
+        List<Predicate> predicates = new ArrayList<>(conditions.size());
+        BooleanBuilder anyOf = new BooleanBuilder();
+        boolean unfiltered = false;
+        for (MemberSearchCondition condition : conditions) {
+            Predicate predicate = readModelEnabled
+                    ? ExpressionUtils.allOf(MemberTeamViewPredicates.of(condition))
+                    : ExpressionUtils.allOf(
+                            usernameEq(condition),
+                            teamNameEq(condition.getTeamName()),
+                            ageGoe(condition.getAgeGoe()),
+                            ageLoe(condition.getAgeLoe()));
+            predicates.add(predicate);
+            if (predicate == null) { //조건이 없는 검색이 있으면 전체가 대상이다
+                unfiltered = true;
+            } else {
+                anyOf.or(predicate);
+            }
+        }
+
+        List<Expression<?>> select = new ArrayList<>(5 + conditions.size());
+        if(readModelEnabled){
+            Collections.addAll(select, memberTeamView.memberId, memberTeamView.username, memberTeamView.age,
+                    memberTeamView.teamId, memberTeamView.teamName);
+        }else{
+            Collections.addAll(select, member.id, member.username, member.age, team.id, team.name);
+        }
+        //조건이 하나뿐이거나 조건이 없는 검색이면 모든 row 가 맞으므로 컬럼을 만들지 않는다
+        int[] matchColumns = new int[conditions.size()];
+        for (int i = 0; i < conditions.size(); i++) {
+            Predicate predicate = predicates.get(i);
+            if (predicate == null || conditions.size() == 1) {
+                matchColumns[i] = -1;
+                continue;
+            }
+            matchColumns[i] = select.size();
+            select.add(new CaseBuilder().when(predicate).then(Expressions.ONE).otherwise(Expressions.ZERO));
+        }
+
+        JPAQuery<Tuple> query = queryFactory.select(select.toArray(new Expression<?>[0]));
+        if(readModelEnabled){
+            query.from(memberTeamView);
+        }else{
+            query.from(member).leftJoin(member.team, team);
+        }
+        List<Tuple> rows = query.where(unfiltered ? null : anyOf).fetch();
+
+        List<List<MemberTeamDto>> result = new ArrayList<>(conditions.size());
+        for (int i = 0; i < conditions.size(); i++) {
+            result.add(new ArrayList<>());
+        }
+        for (Tuple row : rows) {
+            MemberTeamDto dto = new MemberTeamDto(
+                    row.get(0, Long.class),
+                    row.get(1, String.class),
+                    row.get(2, Integer.class),
+                    row.get(3, Long.class),
+                    row.get(4, String.class));
+            for (int i = 0; i < conditions.size(); i++) {
+                if (matchColumns[i] < 0 || row.get(matchColumns[i], Number.class).intValue() == 1) {
+                    result.get(i).add(dto);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * fields= 로 고른 속성만 응답한다.
+     * - search.engine 이 jpa 가 아니면 MemberRepository 검색 결과(엔진)를 고른 속성으로 줄인다.
+     * - 검색 캐시에 같은 조건의 전체 row 가 있으면 그것을 줄여 쓴다(캐시는 채우지 않는다).
+     * - 그 외에는 고른 속성만 select 한다. teamName 을 고르지 않았고 팀명 조건도 없으면 team 조인을 하지 않는다.
+     */
+    public List<Map<String, Object>> searchFields(MemberSearchCondition condition, MemberTeamFields fields){
+        List<MemberTeamDto> rows = otherEngine()
+                ? memberRepository.search(condition)
+                : searchCache.cachedList(MemberRepositoryImpl.SEARCH_CACHE, condition);
+        if(rows != null){
+            return rows.stream().map(fields::select).collect(Collectors.toList());
+        }
+        return selectFields(condition, fields).fetch();
+    }
+
+    //searchPageComplex 와 같이 id 순으로 자르고, 깊은 페이지는 deferred join, count 는 필요할 때만 실행한다.
+    public Page<Map<String, Object>> searchFieldsPage(MemberSearchCondition condition, MemberTeamFields fields,
+                                                      Pageable pageable){
+        Page<MemberTeamDto> rows = otherEngine()
+                ? memberRepository.searchPageComplex(condition, pageable)
+                : searchCache.cachedPage(MemberRepositoryImpl.SEARCH_PAGE_COMPLEX_CACHE, condition, pageable);
+        if(rows != null){
+            return rows.map(fields::select);
+        }
+        List<Map<String, Object>> content = fetchFieldsPage(condition, fields, pageable);
+        JPAQuery<Long> countQuery = readModelEnabled
+                ? queryFactory.select(memberTeamView.memberId).from(memberTeamView).where(MemberTeamViewPredicates.of(condition))
+                : where(queryFactory.select(member.id).from(member), condition, false);
+        return QueryDeadline.page(content, pageable, countQuery::fetchCount);
+    }
+
+    //sql, sharded 엔진은 projection 을 고를 수 없으므로 전체 row 를 받아 줄인다
+    private boolean otherEngine(){
+        return !"jpa".equalsIgnoreCase(searchEngine);
+    }
+
+    private List<Map<String, Object>> fetchFieldsPage(MemberSearchCondition condition, MemberTeamFields fields,
+                                                      Pageable pageable){
+        if(readModelEnabled){
+            return selectFields(condition, fields)
+                    .orderBy(memberTeamView.memberId.asc())
+                    .offset(pageable.getOffset())
+                    .limit(pageable.getPageSize())
+                    .fetch();
+        }
+        if(pageable.getOffset() < MemberRepositoryImpl.DEFERRED_JOIN_OFFSET){
+            return selectFields(condition, fields)
+                    .orderBy(member.id.asc())
+                    .offset(pageable.getOffset())
+                    .limit(pageable.getPageSize())
+                    .fetch();
+        }
+        //깊은 페이지는 id만 먼저 페이징하고(팀명 조건이 있을때만 조인) 해당 id들의 고른 속성만 조회한다.
+        List<Long> ids = where(queryFactory.select(member.id).from(member), condition, false)
+                .orderBy(member.id.asc())
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .fetch();
+        if(ids.isEmpty()){
+            return Collections.emptyList();
+        }
+        JPAQuery<Map<String, Object>> rows = queryFactory.select(fields.projection()).from(member);
+        if(fields.needsTeamJoin()){
+            rows.leftJoin(member.team, team);
+        }
+        //ids 가 id 순이므로 같은 순서로 정렬하면 된다(memberId 를 고르지 않았을 수도 있다)
+        return rows.where(member.id.in(ids)).orderBy(member.id.asc()).fetch();
+    }
+
+    JPAQuery<Map<String, Object>> selectFields(MemberSearchCondition condition, MemberTeamFields fields){
+        if(readModelEnabled){
+            return queryFactory
+                    .select(fields.viewProjection())
+                    .from(memberTeamView)
+                    .where(MemberTeamViewPredicates.of(condition));
+        }
+        return where(queryFactory.select(fields.projection()).from(member), condition, fields.needsTeamJoin());
+    }
+
+    private <T> JPAQuery<T> where(JPAQuery<T> query, MemberSearchCondition condition, boolean teamJoin){
+        if(teamJoin || hasText(condition.getTeamName())){
+            query.leftJoin(member.team, team);
+        }
+        return query.where(
+                usernameEq(condition),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe())
+        );
+    }
+
+    private BooleanExpression usernameEq(MemberSearchCondition condition) {
+        return UsernamePredicates.eq(condition, member.username, member.usernameLower);
     }
 
     private BooleanExpression teamNameEq(String teamName) {
@@ -0,0 +1,66 @@
+package study.querydsl.repository.query;
+
+import com.querydsl.core.types.Expression;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.function.Function;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberTeamView.memberTeamView;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * fields= 로 고를 수 있는 MemberTeamDto 속성
+ * teamId 는 member.team_id(FK)로 읽을 수 있어 team 조인이 필요한 것은 teamName 뿐이다.
+ */
+public enum MemberTeamField {
+    MEMBER_ID("memberId", member.id, memberTeamView.memberId, MemberTeamDto::getMemberId),
+    USERNAME("username", member.username, memberTeamView.username, MemberTeamDto::getUsername),
+    AGE("age", member.age, memberTeamView.age, MemberTeamDto::getAge),
+    TEAM_ID("teamId", member.team.id, memberTeamView.teamId, MemberTeamDto::getTeamId),
+    TEAM_NAME("teamName", team.name, memberTeamView.teamName, MemberTeamDto::getTeamName);
+
+    private final String property;
+    private final Expression<?> path;
+    //member_team 조회 모델을 쓸 때의 컬럼
+    private final Expression<?> viewPath;
+    //이미 조회한 MemberTeamDto(검색 엔진, 캐시)에서 읽을 때
+    private final Function<MemberTeamDto, Object> getter;
+
+    MemberTeamField(String property, Expression<?> path, Expression<?> viewPath,
+                    Function<MemberTeamDto, Object> getter) {
+        this.property = property;
+        this.path = path;
+        this.viewPath = viewPath;
+        this.getter = getter;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    Expression<?> getPath() {
+        return path;
+    }
+
+    Expression<?> getViewPath() {
+        return viewPath;
+    }
+
+    Object get(MemberTeamDto dto) {
+        return getter.apply(dto);
+    }
+
+    boolean needsTeamJoin() {
+        return this == TEAM_NAME;
+    }
+
+    public static MemberTeamField of(String property) {
+        for (MemberTeamField field : values()) {
+            if (field.property.equals(property)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,130 @@
+package study.querydsl.repository.query;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.FactoryExpressionBase;
+import com.querydsl.core.types.Visitor;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.FieldNotAllowedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 클라이언트가 고른 속성만 select 하는 projection(sparse fieldset)
+ * 같은 속성 집합이면 순서/중복과 상관없이 같은 인스턴스를 쓴다(속성이 5개라 최대 31개).
+ * 결과는 고른 속성만 담은 Map 이라 응답에도 그 속성만 나간다.
+ */
+public final class MemberTeamFields {
+
+    private static final Map<Set<MemberTeamField>, MemberTeamFields> CACHE = new ConcurrentHashMap<>();
+
+    private final Set<MemberTeamField> fields;
+    private final FactoryExpression<Map<String, Object>> projection;
+    private final FactoryExpression<Map<String, Object>> viewProjection;
+    private final boolean teamJoin;
+
+    private MemberTeamFields(Set<MemberTeamField> fields) {
+        this.fields = Collections.unmodifiableSet(fields);
+        this.projection = new FieldMapExpression(fields, false);
+        this.viewProjection = new FieldMapExpression(fields, true);
+        this.teamJoin = fields.stream().anyMatch(MemberTeamField::needsTeamJoin);
+    }
+
+    /**
+     * "username,teamName" 처럼 쉼표로 구분한 속성 이름
+     * 모르는 속성이 있으면 FieldNotAllowedException(400)
+     */
+    public static MemberTeamFields parse(String fields) {
+        Set<MemberTeamField> parsed = EnumSet.noneOf(MemberTeamField.class);
+        for (String property : fields.split(",")) {
+            if (!hasText(property)) {
+                continue;
+            }
+            MemberTeamField field = MemberTeamField.of(property.trim());
+            if (field == null) {
+                throw new FieldNotAllowedException(property.trim());
+            }
+            parsed.add(field);
+        }
+        if (parsed.isEmpty()) {
+            throw new FieldNotAllowedException(fields);
+        }
+        return CACHE.computeIfAbsent(parsed, MemberTeamFields::new);
+    }
+
+    public Set<MemberTeamField> getFields() {
+        return fields;
+    }
+
+    FactoryExpression<Map<String, Object>> projection() {
+        return projection;
+    }
+
+    FactoryExpression<Map<String, Object>> viewProjection() {
+        return viewProjection;
+    }
+
+    //검색 엔진이나 캐시에서 받은 전체 row 를 고른 속성만 담은 Map 으로 줄인다(projection 과 같은 모양)
+    Map<String, Object> select(MemberTeamDto dto) {
+        Map<String, Object> row = new LinkedHashMap<>(fields.size() * 2);
+        for (MemberTeamField field : fields) {
+            row.put(field.getProperty(), field.get(dto));
+        }
+        return row;
+    }
+
+    //teamName 을 고르지 않았으면 team 조인이 필요 없다(팀명 검색 조건은 별도)
+    boolean needsTeamJoin() {
+        return teamJoin;
+    }
+
+    //row 를 고른 속성 순서(MemberTeamField 선언 순서)의 Map 으로 만든다
+    private static final class FieldMapExpression extends FactoryExpressionBase<Map<String, Object>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] properties;
+        private final List<Expression<?>> args;
+
+        @SuppressWarnings("unchecked")
+        FieldMapExpression(Set<MemberTeamField> fields, boolean view) {
+            super((Class<? extends Map<String, Object>>) (Class<?>) Map.class);
+            this.properties = new String[fields.size()];
+            List<Expression<?>> args = new ArrayList<>(fields.size());
+            int i = 0;
+            for (MemberTeamField field : fields) {
+                properties[i++] = field.getProperty();
+                args.add(view ? field.getViewPath() : field.getPath());
+            }
+            this.args = Collections.unmodifiableList(args);
+        }
+
+        @Override
+        public List<Expression<?>> getArgs() {
+            return args;
+        }
+
+        @Override
+        public Map<String, Object> newInstance(Object... values) {
+            Map<String, Object> row = new LinkedHashMap<>(properties.length * 2);
+            for (int i = 0; i < properties.length; i++) {
+                row.put(properties[i], values[i]);
+            }
+            return row;
+        }
+
+        @Override
+        public <R, C> R accept(Visitor<R, C> v, C context) {
+            return v.visit(this, context);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package study.querydsl.repository.query;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.ChangeBatch;
+import study.querydsl.outbox.ChangeEvent;
+import study.querydsl.outbox.ChangeFeed;
+import study.querydsl.outbox.ChangeFeedConsumer;
+import study.querydsl.outbox.DataVersions;
+import study.querydsl.outbox.EventType;
+
+import java.util.List;
+
+/**
+ * 변경 피드(outbox_event)를 받아 member_team 조회 모델을 최신 상태로 맞춘다.
+ * 이벤트 내용이 아니라 원본 테이블의 현재 값을 다시 읽어 반영하므로 같은 이벤트를 여러번 처리해도 결과가 같다.
+ * 벌크 update/delete 도 대상 id 마다 이벤트가 있으므로 전체를 다시 적재하지 않고 바뀐 행만 맞춘다.
+ * 팀 삭제는 그 팀 회원의 team_id/team_name 을 비운다.
+ */
+@Component
+@ConditionalOnProperty(name = "querydsl.read-model.enabled", havingValue = "true")
+public class MemberTeamProjector implements ChangeFeedConsumer {
+
+    static final String CONSUMER = "member_team";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChangeFeed changeFeed;
+    private final DataVersions dataVersions;
+
+    public MemberTeamProjector(JdbcTemplate jdbcTemplate, ChangeFeed changeFeed, DataVersions dataVersions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.changeFeed = changeFeed;
+        this.dataVersions = dataVersions;
+        //조회 모델은 커밋보다 늦게 반영되므로 반영한 위치(offset)도 ETag 에 넣는다
+        dataVersions.track(CONSUMER);
+    }
+
+    @Override
+    public String name() {
+        return CONSUMER;
+    }
+
+    //ChangeFeed 주기와 별개로 바로 반영할 때(테스트 등)
+    public int drain() {
+        return changeFeed.poll(this);
+    }
+
+    @Override
+    public void accept(ChangeBatch batch) {
+        //같은 배치 안에서 여러번 바뀐 row는 한번만 다시 읽으면 된다.
+        for (List<ChangeEvent> events : batch.byAggregate().values()) {
+            apply(events.get(events.size() - 1));
+        }
+        //offset 이 커밋되면 바로 버전을 다시 읽어, 반영 전 ETag 로 304 를 받지 않게 한다
+        if (!batch.isEmpty()) {
+            dataVersions.changed(AggregateType.MEMBER);
+        }
+    }
+
+    private void apply(ChangeEvent event) {
+        Long aggregateId = event.getAggregateId();
+        if (event.getAggregateType() == AggregateType.MEMBER) {
+            //삭제된 회원이면 insert 대상이 없으므로 delete 만 남는다.
+            jdbcTemplate.update("delete from member_team where member_id = ?", aggregateId);
+            jdbcTemplate.update("insert into member_team (member_id, username, username_lower, age, team_id, team_name)" +
+                    " select m.member_id, m.username, m.username_lower, m.age, t.id, t.name" +
+                    " from member m left join team t on m.team_id = t.id" +
+                    " where m.member_id = ?", aggregateId);
+        } else if (event.getEventType() == EventType.DELETE) {
+            //삭제된 팀의 회원은 팀이 없는 회원으로 남는다.
+            jdbcTemplate.update("update member_team set team_id = null, team_name = null where team_id = ?", aggregateId);
+        } else {
+            //팀명 변경은 해당 팀 회원 전체에 반영한다.
+            jdbcTemplate.update("update member_team set team_name = (select t.name from team t where t.id = ?)" +
+                    " where team_id = ?", aggregateId, aggregateId);
+        }
+    }
+}
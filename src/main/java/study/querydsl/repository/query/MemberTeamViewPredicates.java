@@ -0,0 +1,44 @@
+package study.querydsl.repository.query;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.UsernamePredicates;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMemberTeamView.memberTeamView;
+
+/**
+ * member_team 조회 모델에 대한 검색 조건
+ * 조인이 없으므로 팀명도 같은 테이블 컬럼으로 비교한다.
+ */
+public final class MemberTeamViewPredicates {
+
+    private MemberTeamViewPredicates() {
+    }
+
+    public static Predicate[] of(MemberSearchCondition condition) {
+        return new Predicate[]{
+                usernameEq(condition),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe())
+        };
+    }
+
+    private static BooleanExpression usernameEq(MemberSearchCondition condition) {
+        return UsernamePredicates.eq(condition, memberTeamView.username, memberTeamView.usernameLower);
+    }
+
+    private static BooleanExpression teamNameEq(String teamName) {
+        return hasText(teamName) ? memberTeamView.teamName.eq(teamName) : null;
+    }
+
+    private static BooleanExpression ageGoe(Integer ageGoe) {
+        return ageGoe != null ? memberTeamView.age.goe(ageGoe) : null;
+    }
+
+    private static BooleanExpression ageLoe(Integer ageLoe) {
+        return ageLoe != null ? memberTeamView.age.loe(ageLoe) : null;
+    }
+}
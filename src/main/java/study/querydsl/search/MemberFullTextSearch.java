@@ -0,0 +1,66 @@
+package study.querydsl.search;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 역색인에서 점수 순 id 를 얻고, 한번의 in 쿼리로 DTO 를 채운다.
+ */
+@Service
+@Transactional(readOnly = true)
+@ConditionalOnProperty(name = "querydsl.search-index.enabled", havingValue = "true")
+public class MemberFullTextSearch {
+
+    static final int MAX_LIMIT = 100;
+
+    private final MemberSearchIndex index;
+    private final JPAQueryFactory queryFactory;
+
+    public MemberFullTextSearch(MemberSearchIndex index, JPAQueryFactory queryFactory) {
+        this.index = index;
+        this.queryFactory = queryFactory;
+    }
+
+    public List<Long> searchIds(String text, int limit) {
+        return index.search(text, Math.min(Math.max(limit, 1), MAX_LIMIT));
+    }
+
+    public List<MemberTeamDto> search(String text, int limit) {
+        List<Long> ids = searchIds(text, limit);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, MemberTeamDto> rows = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.id.in(ids))
+                .fetch()
+                .stream()
+                .collect(Collectors.toMap(MemberTeamDto::getMemberId, Function.identity()));
+        //색인 순서(점수)대로, 색인 반영 전에 삭제된 회원은 뺀다
+        return ids.stream()
+                .map(rows::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,202 @@
+package study.querydsl.search;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * MemberTeamDto 문서를 담는 디스크 기반 역색인(Lucene)
+ * username, teamName 을 토큰 단위로 색인하고, 검색은 정확히 일치 > 접두어 > 오타 허용(fuzzy) 순으로 점수를 준다.
+ * 문서에는 memberId 만 저장하고 나머지는 DB 에서 다시 읽는다.
+ */
+@Component
+@ConditionalOnProperty(name = "querydsl.search-index.enabled", havingValue = "true")
+public class MemberSearchIndex implements AutoCloseable {
+
+    static final String ID = "id";
+    static final String TEAM_ID = "teamId";
+    static final String USERNAME = "username";
+    static final String TEAM_NAME = "teamName";
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    public MemberSearchIndex(@Value("${querydsl.search-index.path}") String path) {
+        try {
+            this.directory = FSDirectory.open(Paths.get(path));
+            this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+            this.searcherManager = new SearcherManager(writer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open member search index: " + path, e);
+        }
+    }
+
+    //같은 회원 문서가 있으면 교체한다. IndexWriter 는 여러 스레드에서 동시에 호출해도 된다.
+    public void index(Collection<MemberTeamDto> rows) {
+        try {
+            for (MemberTeamDto row : rows) {
+                writer.updateDocument(new Term(ID, String.valueOf(row.getMemberId())), toDocument(row));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void delete(Collection<Long> memberIds) {
+        try {
+            for (Long memberId : memberIds) {
+                writer.deleteDocuments(new Term(ID, String.valueOf(memberId)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void deleteAll() {
+        try {
+            writer.deleteAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //디스크에 반영하고 새 검색 결과에 보이게 한다
+    public void commit() {
+        try {
+            writer.commit();
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return 점수 순 memberId (최대 limit 개)
+     */
+    public List<Long> search(String text, int limit) {
+        Query query = toQuery(text);
+        List<Long> ids = new ArrayList<>();
+        if (query == null) {
+            return ids;
+        }
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                for (ScoreDoc scoreDoc : searcher.search(query, limit).scoreDocs) {
+                    ids.add(Long.valueOf(searcher.doc(scoreDoc.doc).get(ID)));
+                }
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ids;
+    }
+
+    public int size() {
+        return writer.getDocStats().numDocs;
+    }
+
+    private static Document toDocument(MemberTeamDto row) {
+        Document document = new Document();
+        document.add(new StringField(ID, String.valueOf(row.getMemberId()), Field.Store.YES));
+        if (row.getTeamId() != null) {
+            document.add(new StringField(TEAM_ID, String.valueOf(row.getTeamId()), Field.Store.NO));
+        }
+        if (row.getUsername() != null) {
+            document.add(new TextField(USERNAME, row.getUsername(), Field.Store.NO));
+        }
+        if (row.getTeamName() != null) {
+            document.add(new TextField(TEAM_NAME, row.getTeamName(), Field.Store.NO));
+        }
+        return document;
+    }
+
+    //토큰마다 username/teamName 중 하나에는 맞아야 한다
+    private Query toQuery(String text) {
+        List<String> tokens = tokens(text);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        for (String token : tokens) {
+            query.add(new BooleanQuery.Builder()
+                    .add(new BoostQuery(new TermQuery(new Term(USERNAME, token)), 4f), BooleanClause.Occur.SHOULD)
+                    .add(new BoostQuery(new PrefixQuery(new Term(USERNAME, token)), 2f), BooleanClause.Occur.SHOULD)
+                    .add(new FuzzyQuery(new Term(USERNAME, token), maxEdits(token)), BooleanClause.Occur.SHOULD)
+                    .add(new BoostQuery(new TermQuery(new Term(TEAM_NAME, token)), 2f), BooleanClause.Occur.SHOULD)
+                    .add(new BoostQuery(new FuzzyQuery(new Term(TEAM_NAME, token), maxEdits(token)), 0.5f), BooleanClause.Occur.SHOULD)
+                    .build(), BooleanClause.Occur.MUST);
+        }
+        return query.build();
+    }
+
+    //짧은 단어는 오타 허용 범위를 줄인다
+    private static int maxEdits(String token) {
+        return token.length() <= 2 ? 0 : token.length() <= 5 ? 1 : 2;
+    }
+
+    private List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        try (TokenStream stream = analyzer.tokenStream(USERNAME, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return tokens;
+    }
+
+    @Override
+    public void close() {
+        try {
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package study.querydsl.search;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.ChangeBatch;
+import study.querydsl.outbox.ChangeEvent;
+import study.querydsl.outbox.ChangeFeedConsumer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 변경 피드를 받아 MemberSearchIndex 를 갱신하고, 필요하면 전체를 병렬로 다시 만든다.
+ * 이벤트가 아니라 DB 의 현재 값으로 문서를 만들기 때문에 같은 이벤트를 여러번 받아도 결과가 같다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "querydsl.search-index.enabled", havingValue = "true")
+public class MemberSearchIndexer implements ChangeFeedConsumer {
+
+    static final String CONSUMER = "member_search_index";
+    private static final int CHUNK = 1000;
+
+    private final MemberSearchIndex index;
+    private final JPAQueryFactory queryFactory;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int rebuildThreads;
+    //rebuild 와 변경 반영이 색인을 동시에 고치지 않게 한다
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean rebuilding;
+
+    public MemberSearchIndexer(MemberSearchIndex index,
+                               JPAQueryFactory queryFactory,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${querydsl.search-index.rebuild-threads:4}") int rebuildThreads) {
+        this.index = index;
+        this.queryFactory = queryFactory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.rebuildThreads = rebuildThreads;
+    }
+
+    @Override
+    public String name() {
+        return CONSUMER;
+    }
+
+    @Override
+    public boolean paused() {
+        return rebuilding;
+    }
+
+    //색인을 디스크에 반영한 뒤 offset 이 커밋된다. offset 커밋이 실패하면 같은 배치를 다시 색인한다.
+    @Override
+    public void accept(ChangeBatch batch) {
+        //paused 확인 직후 rebuild 가 시작됐으면 끝날 때까지 기다린다
+        lock.lock();
+        try {
+            apply(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void apply(ChangeBatch batch) {
+        Set<Long> memberIds = new LinkedHashSet<>();
+        Set<Long> teamIds = new LinkedHashSet<>();
+        for (ChangeEvent event : batch.getEvents()) {
+            (event.getAggregateType() == AggregateType.MEMBER ? memberIds : teamIds).add(event.getAggregateId());
+        }
+        List<Long> ids = new ArrayList<>(memberIds);
+        for (int i = 0; i < ids.size(); i += CHUNK) {
+            List<Long> chunk = ids.subList(i, Math.min(i + CHUNK, ids.size()));
+            List<MemberTeamDto> rows = fetch(member.id.in(chunk), CHUNK);
+            index.index(rows);
+            //DB 에 없는 회원은 삭제된 것이다
+            Set<Long> found = rows.stream().map(MemberTeamDto::getMemberId).collect(Collectors.toCollection(HashSet::new));
+            index.delete(chunk.stream().filter(id -> !found.contains(id)).collect(Collectors.toList()));
+        }
+        //팀명이 바뀌면 그 팀 회원 문서를 모두 다시 만든다
+        for (Long teamId : teamIds) {
+            reindex(member.team.id.eq(teamId), Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        index.commit();
+    }
+
+    /**
+     * 색인을 비우고 member 전체를 id 구간으로 나눠 병렬로 다시 색인한다.
+     * 그동안 변경 피드는 이 소비자를 멈춰(paused) 두므로 반쯤 만든 색인이 commit 되지 않고, offset 도 움직이지 않는다.
+     * 끝나면 멈췄던 offset 부터 다시 받는다. 이미 반영된 변경도 다시 오지만 DB 의 현재 값으로 만들므로 결과는 같고,
+     * 재구축 중에 커밋된 트랜잭션(채번은 더 먼저 했더라도)도 놓치지 않는다.
+     * @return 색인한 회원 수
+     */
+    public int rebuild() {
+        rebuilding = true;
+        lock.lock();
+        try {
+            index.deleteAll();
+            int indexed = reindexAll();
+            index.commit();
+            log.info("member search index rebuilt: {} members", indexed);
+            return indexed;
+        } finally {
+            lock.unlock();
+            rebuilding = false;
+        }
+    }
+
+    //member 전체를 id 구간으로 나눠 rebuild-threads 개 스레드로 색인한다(commit 은 호출하는 쪽에서)
+    private int reindexAll() {
+        Long minId = jdbcTemplate.queryForObject("select min(member_id) from member", Long.class);
+        Long maxId = jdbcTemplate.queryForObject("select max(member_id) from member", Long.class);
+        if (minId == null) {
+            return 0;
+        }
+        int indexed = 0;
+        long span = (maxId - minId) / rebuildThreads + 1;
+        ExecutorService executor = Executors.newFixedThreadPool(rebuildThreads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < rebuildThreads; i++) {
+                long from = minId + span * i;
+                long to = Math.min(maxId, from + span - 1);
+                if (from > maxId) {
+                    break;
+                }
+                futures.add(executor.submit(() -> readOnlyTransaction.execute(status -> reindex(null, from, to))));
+            }
+            for (Future<Integer> future : futures) {
+                indexed += future.get();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Member search index rebuild failed", e);
+        } finally {
+            executor.shutdown();
+        }
+        return indexed;
+    }
+
+    //[from, to] 구간을 id 순으로 CHUNK 개씩 읽어 색인한다(keyset)
+    private int reindex(Predicate condition, long from, long to) {
+        int count = 0;
+        Predicate range = member.id.goe(from).and(member.id.loe(to)).and(condition);
+        while (true) {
+            List<MemberTeamDto> rows = fetch(range, CHUNK);
+            if (rows.isEmpty()) {
+                return count;
+            }
+            index.index(rows);
+            count += rows.size();
+            range = member.id.gt(rows.get(rows.size() - 1).getMemberId()).and(member.id.loe(to)).and(condition);
+        }
+    }
+
+    private List<MemberTeamDto> fetch(Predicate condition, int limit) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(condition)
+                .orderBy(member.id.asc())
+                .limit(limit)
+                .fetch();
+    }
+}
@@ -0,0 +1,83 @@
+package study.querydsl.sql;
+
+import com.querydsl.core.QueryResults;
+import com.querydsl.sql.SQLQuery;
+import com.querydsl.sql.SQLQueryFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.repository.MemberRepositoryCustom;
+import study.querydsl.repository.QueryDeadline;
+
+import java.util.List;
+
+import static study.querydsl.sql.SMember.member;
+import static study.querydsl.sql.STeam.team;
+
+/**
+ * MemberRepositoryCustom 의 querydsl-sql 구현
+ * HQL 변환, 영속성 컨텍스트를 거치지 않고 DataSource 에서 바로 DTO 를 만든다.
+ * SpringConnectionProvider 는 트랜잭션 안에서만 커넥션을 주기 때문에 readOnly 트랜잭션을 건다.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class MemberSqlRepository implements MemberRepositoryCustom {
+
+    private final SQLQueryFactory queryFactory;
+
+    public MemberSqlRepository(SQLQueryFactory queryFactory) {
+        this.queryFactory = queryFactory;
+    }
+
+    @Override
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return selectMemberTeam(condition).fetch();
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
+        QueryResults<MemberTeamDto> results = selectMemberTeam(condition)
+                .orderBy(member.memberId.asc()) //MemberRepositoryImpl 과 같이 id 순으로 자른다
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .fetchResults();
+        return new PageImpl<>(results.getResults(), pageable, results.getTotal());
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        List<MemberTeamDto> content = selectMemberTeam(condition)
+                .orderBy(member.memberId.asc())
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .fetch();
+        //팀명 조건이 없으면 count 에는 조인이 필요 없다.
+        SQLQuery<Long> countQuery = queryFactory
+                .select(member.memberId.count())
+                .from(member);
+        if (SMemberPredicates.needsTeamJoin(condition)) {
+            countQuery.leftJoin(team).on(member.teamId.eq(team.id));
+        }
+        countQuery.where(SMemberPredicates.of(condition));
+        return QueryDeadline.page(content, pageable, countQuery::fetchOne);
+    }
+
+    private SQLQuery<MemberTeamDto> selectMemberTeam(MemberSearchCondition condition) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.memberId,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name
+                ))
+                .from(member)
+                .leftJoin(team).on(member.teamId.eq(team.id))
+                .where(SMemberPredicates.of(condition));
+    }
+}
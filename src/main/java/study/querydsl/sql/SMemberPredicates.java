@@ -0,0 +1,49 @@
+package study.querydsl.sql;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.UsernamePredicates;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.sql.SMember.member;
+import static study.querydsl.sql.STeam.team;
+
+/**
+ * member(m), team(t) 테이블에 대한 querydsl-sql 검색 조건
+ * 팀명 조건은 team 조인이 있어야 한다.
+ */
+public final class SMemberPredicates {
+
+    private SMemberPredicates() {
+    }
+
+    public static Predicate[] of(MemberSearchCondition condition) {
+        return new Predicate[]{
+                usernameEq(condition),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe())
+        };
+    }
+
+    public static boolean needsTeamJoin(MemberSearchCondition condition) {
+        return hasText(condition.getTeamName());
+    }
+
+    private static BooleanExpression usernameEq(MemberSearchCondition condition) {
+        return UsernamePredicates.eq(condition, member.username, member.usernameLower);
+    }
+
+    private static BooleanExpression teamNameEq(String teamName) {
+        return hasText(teamName) ? team.name.eq(teamName) : null;
+    }
+
+    private static BooleanExpression ageGoe(Integer ageGoe) {
+        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    }
+
+    private static BooleanExpression ageLoe(Integer ageLoe) {
+        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    }
+}
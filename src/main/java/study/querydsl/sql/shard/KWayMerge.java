@@ -0,0 +1,64 @@
+package study.querydsl.sql.shard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 정렬된 목록 k개를 하나의 정렬 순서로 합친다(heap, O(n log k)).
+ */
+final class KWayMerge {
+
+    private KWayMerge() {
+    }
+
+    /**
+     * @param sorted 각각 comparator 순서로 정렬된 목록
+     * @param skip   합친 결과에서 건너뛸 개수(offset)
+     * @param limit  최대 개수
+     */
+    static <T> List<T> merge(List<List<T>> sorted, Comparator<? super T> comparator, long skip, long limit) {
+        PriorityQueue<Cursor<T>> heap = new PriorityQueue<>(Math.max(1, sorted.size()),
+                (a, b) -> comparator.compare(a.head, b.head));
+        for (List<T> list : sorted) {
+            Iterator<T> iterator = list.iterator();
+            if (iterator.hasNext()) {
+                heap.add(new Cursor<>(iterator));
+            }
+        }
+        List<T> result = new ArrayList<>();
+        long skipped = 0;
+        while (!heap.isEmpty() && result.size() < limit) {
+            Cursor<T> cursor = heap.poll();
+            if (skipped < skip) {
+                skipped++;
+            } else {
+                result.add(cursor.head);
+            }
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return result;
+    }
+
+    private static final class Cursor<T> {
+        private final Iterator<T> iterator;
+        private T head;
+
+        Cursor(Iterator<T> iterator) {
+            this.iterator = iterator;
+            this.head = iterator.next();
+        }
+
+        boolean advance() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            head = iterator.next();
+            return true;
+        }
+    }
+}
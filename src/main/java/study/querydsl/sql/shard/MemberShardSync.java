@@ -0,0 +1,145 @@
+package study.querydsl.sql.shard;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.sql.SQLQueryFactory;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.ChangeBatch;
+import study.querydsl.outbox.ChangeEvent;
+import study.querydsl.outbox.ChangeFeed;
+import study.querydsl.outbox.ChangeFeedConsumer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static study.querydsl.sql.SMember.member;
+import static study.querydsl.sql.STeam.team;
+
+/**
+ * 변경 피드(outbox_event)를 받아 원본 DB 의 member/team 을 샤드로 나눠 옮긴다.
+ * 회원은 팀 id 로 정해진 샤드 한 곳에만, 팀은 모든 샤드에 쓴다.
+ * - 이벤트가 아니라 원본의 현재 값을 다시 읽어 쓰므로 같은 배치를 다시 받아도 결과가 같다.
+ * - 샤드 쓰기는 offset 트랜잭션에 묶이지 않는다. offset 커밋 전에 실패하면 같은 배치를 다시 반영한다.
+ * 남은 한계
+ * - 애플리케이션 쓰기는 여전히 원본 member 테이블 하나로 간다. 샤드는 검색(읽기)만 나눈다.
+ * - 샤드 간 트랜잭션이 없어 팀을 옮긴 회원이 잠깐 두 샤드에 보일 수 있고, 샤드는 변경 피드 지연만큼 늦다.
+ */
+public class MemberShardSync implements ChangeFeedConsumer {
+
+    static final String CONSUMER = "member_shard";
+    private static final int CHUNK = 1000;
+
+    private final ShardedMemberRepository shards;
+    private final SQLQueryFactory source;
+    private final ChangeFeed changeFeed;
+
+    public MemberShardSync(ShardedMemberRepository shards, SQLQueryFactory source, ChangeFeed changeFeed) {
+        this.shards = shards;
+        this.source = source;
+        this.changeFeed = changeFeed;
+    }
+
+    @Override
+    public String name() {
+        return CONSUMER;
+    }
+
+    //ChangeFeed 주기와 별개로 바로 반영할 때(테스트 등)
+    public int drain() {
+        return changeFeed.poll(this);
+    }
+
+    @Override
+    public void accept(ChangeBatch batch) {
+        Set<Long> memberIds = new LinkedHashSet<>();
+        Set<Long> teamIds = new LinkedHashSet<>();
+        for (ChangeEvent event : batch.getEvents()) {
+            (event.getAggregateType() == AggregateType.MEMBER ? memberIds : teamIds).add(event.getAggregateId());
+        }
+        //회원보다 팀을 먼저 맞춘다(팀명은 샤드 안에서 조인한다)
+        List<Long> ids = new ArrayList<>(teamIds);
+        for (int i = 0; i < ids.size(); i += CHUNK) {
+            syncTeams(ids.subList(i, Math.min(i + CHUNK, ids.size())));
+        }
+        ids = new ArrayList<>(memberIds);
+        for (int i = 0; i < ids.size(); i += CHUNK) {
+            syncMembers(ids.subList(i, Math.min(i + CHUNK, ids.size())));
+        }
+    }
+
+    /**
+     * 샤드를 원본 전체와 다시 맞춘다(샤드 수를 바꿨거나 피드를 놓쳤을 때).
+     * 샤드를 비우지 않고 제자리에서 덮어쓰므로 도는 동안에도 검색은 계속 결과를 돌려준다.
+     * 1. 원본 팀을 모든 샤드에 덮어쓰고 원본에 없는 팀을 지운다
+     * 2. 원본을 id 순으로 CHUNK 개씩 읽어 주인 샤드에 덮어쓴다(다른 샤드의 사본은 지워진다)
+     * 3. 샤드의 id 를 CHUNK 개씩 읽어 원본에 없는 회원을 지운다
+     */
+    public void resync() {
+        Set<Long> sourceTeamIds = new HashSet<>();
+        for (Tuple row : source.select(team.id, team.name).from(team).fetch()) {
+            shards.saveTeam(row.get(team.id), row.get(team.name));
+            sourceTeamIds.add(row.get(team.id));
+        }
+        shards.deleteTeams(shards.teamIds().stream().filter(id -> !sourceTeamIds.contains(id)).collect(Collectors.toList()));
+        Predicate range = null;
+        while (true) {
+            List<MemberTeamDto> rows = fetchMembers(range);
+            if (rows.isEmpty()) {
+                break;
+            }
+            shards.saveMembers(rows);
+            range = member.memberId.gt(rows.get(rows.size() - 1).getMemberId());
+        }
+        long after = Long.MIN_VALUE;
+        while (true) {
+            List<Long> ids = shards.memberIdsAfter(after, CHUNK);
+            if (ids.isEmpty()) {
+                return;
+            }
+            Set<Long> found = new HashSet<>(source.select(member.memberId).from(member).where(member.memberId.in(ids)).fetch());
+            shards.deleteMembers(ids.stream().filter(id -> !found.contains(id)).collect(Collectors.toList()));
+            after = ids.get(ids.size() - 1);
+        }
+    }
+
+    private void syncTeams(List<Long> teamIds) {
+        List<Tuple> rows = source.select(team.id, team.name).from(team).where(team.id.in(teamIds)).fetch();
+        for (Tuple row : rows) {
+            shards.saveTeam(row.get(team.id), row.get(team.name));
+        }
+        //원본에 없는 팀은 삭제된 것이다
+        Set<Long> found = rows.stream().map(row -> row.get(team.id)).collect(Collectors.toCollection(HashSet::new));
+        shards.deleteTeams(teamIds.stream().filter(id -> !found.contains(id)).collect(Collectors.toList()));
+    }
+
+    private void syncMembers(List<Long> memberIds) {
+        List<MemberTeamDto> rows = fetchMembers(member.memberId.in(memberIds));
+        shards.saveMembers(rows);
+        //원본에 없는 회원은 삭제된 것이다
+        Set<Long> found = rows.stream().map(MemberTeamDto::getMemberId).collect(Collectors.toCollection(HashSet::new));
+        shards.deleteMembers(memberIds.stream().filter(id -> !found.contains(id)).collect(Collectors.toList()));
+    }
+
+    //팀명은 샤드의 team 에서 조인하므로 읽지 않는다
+    private List<MemberTeamDto> fetchMembers(Predicate condition) {
+        return source
+                .select(new QMemberTeamDto(
+                        member.memberId,
+                        member.username,
+                        member.age,
+                        member.teamId,
+                        Expressions.nullExpression(String.class)))
+                .from(member)
+                .where(condition)
+                .orderBy(member.memberId.asc())
+                .limit(CHUNK)
+                .fetch();
+    }
+}
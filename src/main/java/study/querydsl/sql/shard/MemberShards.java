@@ -0,0 +1,128 @@
+package study.querydsl.sql.shard;
+
+import com.querydsl.sql.Configuration;
+import com.querydsl.sql.H2Templates;
+import com.querydsl.sql.SQLQueryFactory;
+import study.querydsl.repository.QueryDeadline;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * member 를 team_id 기준으로 나눠 담는 샤드 DataSource 목록
+ * team 은 모든 샤드에 복제하므로 팀명 조건도 샤드 안에서 조인한다.
+ * 각 샤드에 같은 쿼리를 병렬로 보내는 scatter 를 제공한다(요청 스레드의 QueryDeadline 을 이어받는다).
+ */
+public class MemberShards implements AutoCloseable {
+
+    private static final String[] SCHEMA = {
+            "create table if not exists team (id bigint primary key, name varchar(255))",
+            "create table if not exists member (member_id bigint primary key, username varchar(255)," +
+                    " username_lower varchar(255) as lower(username), age int not null, team_id bigint)",
+            "create index if not exists idx_member_team_id on member (team_id)",
+            "create index if not exists idx_member_username_lower on member (username_lower)"
+    };
+
+    private final List<DataSource> dataSources;
+    private final List<SQLQueryFactory> queryFactories;
+    private final ExecutorService executor;
+
+    public MemberShards(List<DataSource> dataSources) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.dataSources = new ArrayList<>(dataSources);
+        //트랜잭션 없이 쿼리마다 커넥션을 받아 바로 반납한다(release 리스너가 Configuration 에 붙으므로 샤드마다 따로 만든다)
+        this.queryFactories = dataSources.stream()
+                .map(dataSource -> new SQLQueryFactory(new Configuration(H2Templates.builder().build()), dataSource, true))
+                .collect(Collectors.toList());
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(dataSources.size(),
+                runnable -> new Thread(runnable, "member-shard-" + sequence.incrementAndGet()));
+    }
+
+    public int size() {
+        return queryFactories.size();
+    }
+
+    public int shardOf(Long teamId) {
+        //팀이 없는 회원은 0번 샤드
+        return teamId == null ? 0 : (int) Math.floorMod(teamId, (long) size());
+    }
+
+    public SQLQueryFactory shard(int index) {
+        return queryFactories.get(index);
+    }
+
+    public List<SQLQueryFactory> all() {
+        return queryFactories;
+    }
+
+    /**
+     * 모든 샤드에서 query 를 병렬로 실행하고 샤드 순서대로 결과를 돌려준다.
+     * 한 샤드라도 실패하면 그 예외를 그대로 던진다.
+     */
+    public <T> List<T> scatter(Function<SQLQueryFactory, T> query) {
+        Long deadline = QueryDeadline.current();
+        List<CompletableFuture<T>> futures = queryFactories.stream()
+                .map(queryFactory -> CompletableFuture.supplyAsync(() -> {
+                    QueryDeadline.restore(deadline);
+                    try {
+                        return query.apply(queryFactory);
+                    } finally {
+                        QueryDeadline.clear();
+                    }
+                }, executor))
+                .collect(Collectors.toList());
+        try {
+            return futures.stream()
+                    .map(CompletableFuture::join)
+                    .collect(Collectors.toList());
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    //로컬/테스트용: 샤드마다 member, team 테이블을 만든다
+    public void createSchema() {
+        for (DataSource dataSource : dataSources) {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                for (String ddl : SCHEMA) {
+                    statement.execute(ddl);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to create shard schema", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) dataSource).close();
+                } catch (Exception e) {
+                    //종료 중이므로 무시한다
+                }
+            }
+        }
+    }
+}
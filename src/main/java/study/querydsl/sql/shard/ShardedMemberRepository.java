@@ -0,0 +1,268 @@
+package study.querydsl.sql.shard;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import com.querydsl.sql.SQLQuery;
+import com.querydsl.sql.SQLQueryFactory;
+import com.querydsl.sql.StatementOptions;
+import com.querydsl.sql.dml.SQLMergeClause;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.repository.MemberRepositoryCustom;
+import study.querydsl.repository.QueryDeadline;
+import study.querydsl.repository.SortNotAllowedException;
+import study.querydsl.sql.SMemberPredicates;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static study.querydsl.sql.SMember.member;
+import static study.querydsl.sql.STeam.team;
+
+/**
+ * 샤드된 member 에 대한 MemberRepositoryCustom 구현(scatter-gather)
+ * - 같은 querydsl-sql 쿼리를 모든 샤드에 병렬로 보내고
+ * - 각 샤드에서 offset + size 만큼 정렬해 가져온 뒤 k-way merge 로 전체 순서의 페이지를 만든다.
+ * - count 는 샤드별 count 의 합
+ * 깊은 페이지일수록 샤드마다 offset + size 건을 읽으므로 offset 이 큰 조회에는 맞지 않는다.
+ */
+public class ShardedMemberRepository implements MemberRepositoryCustom {
+
+    private final MemberShards shards;
+
+    public ShardedMemberRepository(MemberShards shards) {
+        this.shards = shards;
+    }
+
+    //쓰기: 팀은 모든 샤드에, 회원은 팀 id 로 정해진 샤드에만 넣는다(샤드 간 트랜잭션은 없다)
+    //MemberShardSync 가 변경 피드로 호출하므로 같은 값을 다시 써도 결과가 같아야 한다(merge)
+    public void saveTeam(Long teamId, String name) {
+        for (SQLQueryFactory queryFactory : shards.all()) {
+            queryFactory.merge(team)
+                    .keys(team.id)
+                    .set(team.id, teamId)
+                    .set(team.name, name)
+                    .execute();
+        }
+    }
+
+    public void saveMember(Long memberId, String username, int age, Long teamId) {
+        saveMembers(Collections.singletonList(new MemberTeamDto(memberId, username, age, teamId, null)));
+    }
+
+    /**
+     * 회원을 팀 id 로 정해진 샤드에만 쓴다(merge, teamName 은 쓰지 않는다).
+     * 팀이 바뀌어 샤드가 바뀐 회원은 새 샤드에 먼저 쓴 뒤 다른 샤드에 남은 이전 사본을 지운다.
+     * 그래서 회원이 어느 샤드에도 없는 순간은 없고, 두 문장 사이에 잠깐 두 샤드에 보일 수 있다.
+     */
+    public void saveMembers(List<MemberTeamDto> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<MemberTeamDto>> byShard = rows.stream()
+                .collect(Collectors.groupingBy(row -> shards.shardOf(row.getTeamId())));
+        byShard.forEach((shard, shardRows) -> {
+            SQLMergeClause merge = shards.shard(shard).merge(member).keys(member.memberId);
+            for (MemberTeamDto row : shardRows) {
+                merge.set(member.memberId, row.getMemberId())
+                        .set(member.username, row.getUsername())
+                        .set(member.age, row.getAge())
+                        .set(member.teamId, row.getTeamId())
+                        .addBatch();
+            }
+            merge.execute();
+        });
+        for (int shard = 0; shard < shards.size(); shard++) {
+            List<Long> stale = new ArrayList<>();
+            for (MemberTeamDto row : rows) {
+                if (shards.shardOf(row.getTeamId()) != shard) {
+                    stale.add(row.getMemberId());
+                }
+            }
+            if (!stale.isEmpty()) {
+                shards.shard(shard).delete(member).where(member.memberId.in(stale)).execute();
+            }
+        }
+    }
+
+    public void deleteMembers(Collection<Long> memberIds) {
+        if (memberIds.isEmpty()) {
+            return;
+        }
+        for (SQLQueryFactory queryFactory : shards.all()) {
+            queryFactory.delete(member).where(member.memberId.in(memberIds)).execute();
+        }
+    }
+
+    public void deleteTeams(Collection<Long> teamIds) {
+        if (teamIds.isEmpty()) {
+            return;
+        }
+        for (SQLQueryFactory queryFactory : shards.all()) {
+            queryFactory.delete(team).where(team.id.in(teamIds)).execute();
+        }
+    }
+
+    /**
+     * 모든 샤드의 회원 id 중 after 보다 큰 것을 작은 순으로 limit 개(keyset).
+     * 원본과 맞춰 보며 지워진 회원을 찾을 때 쓴다.
+     */
+    public List<Long> memberIdsAfter(long after, int limit) {
+        List<List<Long>> perShard = shards.scatter(queryFactory -> queryFactory
+                .select(member.memberId)
+                .from(member)
+                .where(member.memberId.gt(after))
+                .orderBy(member.memberId.asc())
+                .limit(limit)
+                .fetch());
+        return KWayMerge.merge(perShard, Comparator.<Long>naturalOrder(), 0, limit);
+    }
+
+    public List<Long> teamIds() {
+        return shards.scatter(queryFactory -> queryFactory.select(team.id).from(team).fetch()).stream()
+                .flatMap(List::stream)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    //로컬/테스트용: 모든 샤드를 비운다. 운영 중 다시 맞출 때는 MemberShardSync.resync 를 쓴다
+    public void deleteAll() {
+        for (SQLQueryFactory queryFactory : shards.all()) {
+            queryFactory.delete(member).execute();
+            queryFactory.delete(team).execute();
+        }
+    }
+
+    @Override
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        Ordering ordering = Ordering.of(Sort.unsorted());
+        List<List<MemberTeamDto>> perShard = shards.scatter(queryFactory ->
+                selectMemberTeam(queryFactory, condition, ordering).fetch());
+        return KWayMerge.merge(perShard, ordering.comparator, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(search(condition));
+        }
+        List<MemberTeamDto> content = fetchPage(condition, pageable);
+        return new PageImpl<>(content, pageable, count(condition));
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(search(condition));
+        }
+        List<MemberTeamDto> content = fetchPage(condition, pageable);
+        return QueryDeadline.page(content, pageable, () -> count(condition));
+    }
+
+    private List<MemberTeamDto> fetchPage(MemberSearchCondition condition, Pageable pageable) {
+        Ordering ordering = Ordering.of(pageable.getSort());
+        //어느 샤드에서 페이지가 나올지 모르므로 샤드마다 앞에서부터 offset + size 건
+        long window = pageable.getOffset() + pageable.getPageSize();
+        List<List<MemberTeamDto>> perShard = shards.scatter(queryFactory ->
+                selectMemberTeam(queryFactory, condition, ordering).limit(window).fetch());
+        return KWayMerge.merge(perShard, ordering.comparator, pageable.getOffset(), pageable.getPageSize());
+    }
+
+    private long count(MemberSearchCondition condition) {
+        return shards.scatter(queryFactory -> {
+            SQLQuery<Long> countQuery = withDeadline(queryFactory
+                    .select(member.memberId.count())
+                    .from(member));
+            if (SMemberPredicates.needsTeamJoin(condition)) {
+                countQuery.leftJoin(team).on(member.teamId.eq(team.id));
+            }
+            Long count = countQuery.where(SMemberPredicates.of(condition)).fetchOne();
+            return count == null ? 0L : count;
+        }).stream().mapToLong(Long::longValue).sum();
+    }
+
+    private SQLQuery<MemberTeamDto> selectMemberTeam(SQLQueryFactory queryFactory,
+                                                     MemberSearchCondition condition,
+                                                     Ordering ordering) {
+        return withDeadline(queryFactory
+                .select(new QMemberTeamDto(
+                        member.memberId,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name
+                ))
+                .from(member)
+                .leftJoin(team).on(member.teamId.eq(team.id))
+                .where(SMemberPredicates.of(condition))
+                .orderBy(ordering.orders.toArray(new OrderSpecifier[0])));
+    }
+
+    //남은 요청 시간을 JDBC query timeout(초, 올림)으로 건다. 1초 미만이 남아도 0(무제한)이 되지 않는다
+    private static <T> SQLQuery<T> withDeadline(SQLQuery<T> query) {
+        Integer timeoutSeconds = QueryDeadline.timeoutSeconds();
+        if (timeoutSeconds != null) {
+            query.setStatementOptions(StatementOptions.builder()
+                    .setQueryTimeout(timeoutSeconds)
+                    .build());
+        }
+        return query;
+    }
+
+    /**
+     * SQL order by 와 같은 순서의 Comparator. 샤드 결과를 합칠 때 사용한다.
+     * member_id 를 마지막 정렬 키로 붙여 순서를 하나로 고정한다.
+     */
+    private static final class Ordering {
+        private final List<OrderSpecifier<?>> orders = new ArrayList<>();
+        private Comparator<MemberTeamDto> comparator;
+
+        static Ordering of(Sort sort) {
+            Ordering ordering = new Ordering();
+            boolean hasId = false;
+            for (Sort.Order order : sort) {
+                switch (order.getProperty()) {
+                    case "id":
+                        ordering.add(member.memberId, MemberTeamDto::getMemberId, order.isAscending());
+                        hasId = true;
+                        break;
+                    case "age":
+                        ordering.add(member.age, MemberTeamDto::getAge, order.isAscending());
+                        break;
+                    case "username":
+                        ordering.add(member.username, MemberTeamDto::getUsername, order.isAscending());
+                        break;
+                    default:
+                        throw new SortNotAllowedException(order.getProperty(), "not sortable across shards");
+                }
+            }
+            if (!hasId) {
+                ordering.add(member.memberId, MemberTeamDto::getMemberId, true);
+            }
+            return ordering;
+        }
+
+        //H2 는 null 을 가장 작은 값으로 정렬한다
+        private <U extends Comparable<? super U>> void add(ComparableExpressionBase<U> expr,
+                                                            Function<MemberTeamDto, U> key,
+                                                            boolean ascending) {
+            orders.add(ascending ? expr.asc() : expr.desc());
+            Comparator<MemberTeamDto> next = Comparator.comparing(key, Comparator.nullsFirst(Comparator.<U>naturalOrder()));
+            if (!ascending) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package study.querydsl.sql.shard;
+
+import com.querydsl.sql.SQLQueryFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import study.querydsl.outbox.ChangeFeed;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * querydsl.sharding.enabled=true 일 때 샤드 DataSource 들과, 원본 DB 의 회원을 샤드로 나눠 옮기는 변경 피드 소비자를 만든다.
+ * 샤드 DataSource 는 빈으로 등록하지 않아 기본 DataSource(JPA) 설정에 영향을 주지 않는다.
+ */
+@Configuration
+@ConditionalOnProperty(name = "querydsl.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean(destroyMethod = "close")
+    MemberShards memberShards(@Value("${querydsl.sharding.urls}") List<String> urls,
+                              @Value("${querydsl.sharding.username:sa}") String username,
+                              @Value("${querydsl.sharding.password:}") String password,
+                              @Value("${querydsl.sharding.init-schema:false}") boolean initSchema) {
+        List<DataSource> dataSources = urls.stream()
+                .map(url -> DataSourceBuilder.create()
+                        .url(url)
+                        .username(username)
+                        .password(password)
+                        .build())
+                .collect(Collectors.toList());
+        MemberShards shards = new MemberShards(dataSources);
+        if (initSchema) {
+            shards.createSchema();
+        }
+        return shards;
+    }
+
+    @Bean
+    ShardedMemberRepository shardedMemberRepository(MemberShards memberShards) {
+        return new ShardedMemberRepository(memberShards);
+    }
+
+    //애플리케이션은 원본 DB 에만 쓰고, 샤드는 변경 피드로 회원마다 주인 샤드에 따라 쓴다
+    @Bean
+    MemberShardSync memberShardSync(ShardedMemberRepository shardedMemberRepository,
+                                    SQLQueryFactory sqlQueryFactory,
+                                    ChangeFeed changeFeed) {
+        return new MemberShardSync(shardedMemberRepository, sqlQueryFactory, changeFeed);
+    }
+}
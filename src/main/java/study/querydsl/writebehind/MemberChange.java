@@ -0,0 +1,55 @@
+package study.querydsl.writebehind;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 아직 DB에 반영되지 않은 회원 변경분
+ * null 인 필드는 변경하지 않는다는 의미이다.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class MemberChange {
+    private final Long memberId;
+    private final Integer age;
+    private final Long teamId;
+    //반영에 실패한 횟수
+    private final int failures;
+
+    public static MemberChange age(Long memberId, int age) {
+        return new MemberChange(memberId, age, null, 0);
+    }
+
+    public static MemberChange team(Long memberId, Long teamId) {
+        return new MemberChange(memberId, null, teamId, 0);
+    }
+
+    public MemberChange failed() {
+        return new MemberChange(memberId, age, teamId, failures + 1);
+    }
+
+    //나이만, 팀만 바꾸는 변경분(함께 바꾸다 실패하면 나눠서 다시 반영한다)
+    public MemberChange ageOnly() {
+        return new MemberChange(memberId, age, null, failures);
+    }
+
+    public MemberChange teamOnly() {
+        return new MemberChange(memberId, null, teamId, failures);
+    }
+
+    /*
+     * 같은 회원에 대한 이전 변경분 위에 나중 변경분을 덮어쓴다.
+     * 나중 변경분이 이전 값을 하나라도 덮어쓰면 실패 원인이 사라졌을 수 있으므로 실패 횟수를 나중 변경분 것으로 되돌린다.
+     * 덮어쓰지 않은 값의 실패는 이어지지만, 반영할 때 나이/팀을 나눠서 다시 시도하므로 새 값까지 버려지지는 않는다.
+     */
+    public MemberChange mergeWith(MemberChange later) {
+        boolean superseded = (age != null && later.age != null) || (teamId != null && later.teamId != null);
+        return new MemberChange(memberId,
+                later.age != null ? later.age : age,
+                later.teamId != null ? later.teamId : teamId,
+                superseded ? later.failures : Math.max(failures, later.failures));
+    }
+}
@@ -0,0 +1,261 @@
+package study.querydsl.writebehind;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.EventType;
+import study.querydsl.outbox.OutboxRecorder;
+
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 회원 나이/팀 변경을 모아서 JDBC batch 로 반영하는 write-behind 버퍼
+ *
+ * - 같은 회원의 변경은 하나로 합쳐져(마지막 값 우선) UPDATE 한번으로 반영된다.
+ * - batch-size 만큼 쌓이거나 flush-interval 이 지나면 반영한다.
+ * - 반영은 단일 스레드에서만 일어나므로 먼저 들어온 변경이 나중 변경을 덮어쓰는 일은 없다.
+ * - batch 가 실패하면 한 건씩(나이/팀을 함께 바꾸는 변경은 나눠서) 다시 반영해 실패한 변경만 골라낸다.
+ *   실패한 변경분은 이후 변경보다 앞에 다시 넣고, max-attempts 번 실패하면 write_behind_dead_letter 테이블에 남기고
+ *   버퍼에서 뺀다(member.write-behind.dead-letter). 종료 시에는 남은 변경을 모두 반영한다.
+ * - 아직 반영하지 않은 회원 수가 capacity 에 이르면 새 회원의 변경은 받지 않는다(false, 호출자가 나중에 다시 시도).
+ *   이미 쌓인 회원의 변경은 합쳐지므로 받고, 실패해서 다시 넣는 변경도 이미 받은 것이라 capacity 를 넘을 수 있다.
+ * - 영속성 컨텍스트를 거치지 않으므로 이미 조회된 Member 엔티티에는 반영되지 않는다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "querydsl.write-behind.enabled", havingValue = "true")
+public class MemberWriteBehindBuffer {
+
+    //팀 해제(null)는 지원하지 않는다 - null 은 "변경 없음" 이다.
+    private static final String UPDATE_SQL =
+            "update member set age = coalesce(?, age), team_id = coalesce(?, team_id) where member_id = ?";
+    private static final String DEAD_LETTER_SQL = "insert into write_behind_dead_letter" +
+            " (member_id, age, team_id, failures, error, created_at) values (?, ?, ?, ?, ?, ?)";
+    private static final int ERROR_LENGTH = 2000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxRecorder outboxRecorder;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final int capacity;
+    private final Counter deadLetters;
+    private final Counter rejected;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    private LinkedHashMap<Long, MemberChange> pending = new LinkedHashMap<>();
+
+    public MemberWriteBehindBuffer(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   OutboxRecorder outboxRecorder,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${querydsl.write-behind.batch-size:500}") int batchSize,
+                                   @Value("${querydsl.write-behind.flush-interval:200}") long flushInterval,
+                                   @Value("${querydsl.write-behind.max-attempts:3}") int maxAttempts,
+                                   @Value("${querydsl.write-behind.capacity:10000}") int capacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.outboxRecorder = outboxRecorder;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.capacity = capacity;
+        this.deadLetters = meterRegistry.counter("member.write-behind.dead-letter");
+        this.rejected = meterRegistry.counter("member.write-behind.rejected");
+        meterRegistry.gauge("member.write-behind.pending", this, MemberWriteBehindBuffer::pendingCount);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return 버퍼가 가득 차서 받지 않았으면 false
+     */
+    public boolean changeAge(Long memberId, int age) {
+        return enqueue(MemberChange.age(memberId, age));
+    }
+
+    public boolean changeTeam(Long memberId, Long teamId) {
+        return enqueue(MemberChange.team(memberId, teamId));
+    }
+
+    public int pendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * 지금까지 쌓인 변경을 반영할 때까지 기다린다(테스트용 동기 flush).
+     */
+    public void flush() {
+        try {
+            flusher.submit(this::flushPending).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while flushing write-behind buffer", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Write-behind flush failed", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        flusher.execute(this::flushQuietly);
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private boolean enqueue(MemberChange change) {
+        boolean full;
+        synchronized (lock) {
+            if (pending.size() >= capacity && !pending.containsKey(change.getMemberId())) {
+                rejected.increment();
+                return false;
+            }
+            pending.merge(change.getMemberId(), change, MemberChange::mergeWith);
+            full = pending.size() >= batchSize;
+        }
+        if (full) {
+            flusher.execute(this::flushQuietly);
+        }
+        return true;
+    }
+
+    //주기 실행 작업은 예외가 나면 이후 실행이 멈추기 때문에 로그만 남긴다.
+    private void flushQuietly() {
+        try {
+            flushPending();
+        } catch (RuntimeException e) {
+            log.warn("Write-behind flush failed, changes will be retried", e);
+        }
+    }
+
+    private void flushPending() {
+        List<MemberChange> changes;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            changes = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, changes, batchSize, MemberWriteBehindBuffer::bind);
+                //엔티티 이벤트를 거치지 않으므로 outbox 에 직접 남긴다.
+                outboxRecorder.recordAll(AggregateType.MEMBER,
+                        changes.stream().map(MemberChange::getMemberId).collect(Collectors.toList()),
+                        EventType.UPDATE, "write-behind");
+            });
+        } catch (RuntimeException e) {
+            log.warn("Write-behind batch of {} changes failed, retrying one by one", changes.size(), e);
+            flushOneByOne(changes);
+        }
+    }
+
+    //batch 전체가 롤백되었으므로 한 건씩 반영해 실패한 변경만 다시 넣는다.
+    private void flushOneByOne(List<MemberChange> changes) {
+        List<MemberChange> failed = new ArrayList<>();
+        for (MemberChange change : changes) {
+            RuntimeException error = apply(change);
+            if (error == null) {
+                continue;
+            }
+            //나이와 팀을 함께 바꾸는 변경이면 나눠서 다시 반영해 실패한 쪽만 남긴다(잘못된 팀 때문에 새 나이까지 버리지 않는다)
+            if (change.getAge() != null && change.getTeamId() != null) {
+                RuntimeException ageError = apply(change.ageOnly());
+                RuntimeException teamError = apply(change.teamOnly());
+                if (ageError == null && teamError == null) {
+                    continue;
+                }
+                if (ageError == null) {
+                    change = change.teamOnly();
+                    error = teamError;
+                } else if (teamError == null) {
+                    change = change.ageOnly();
+                    error = ageError;
+                }
+            }
+            MemberChange retry = change.failed();
+            if (retry.getFailures() >= maxAttempts) {
+                deadLetter(retry, error);
+            } else {
+                failed.add(retry);
+            }
+        }
+        if (!failed.isEmpty()) {
+            requeue(failed);
+        }
+    }
+
+    //반영하고 실패하면 그 예외를 돌려준다
+    private RuntimeException apply(MemberChange change) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update(UPDATE_SQL, ps -> bind(ps, change));
+                outboxRecorder.record(AggregateType.MEMBER, change.getMemberId(), EventType.UPDATE, "write-behind");
+            });
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    //버퍼에서는 빼지만 테이블에 남겨 재시작 후에도 확인하고 다시 반영할 수 있게 한다
+    private void deadLetter(MemberChange change, RuntimeException error) {
+        deadLetters.increment();
+        log.error("Write-behind change dropped after {} failures: {}", change.getFailures(), change, error);
+        String message = String.valueOf(error.getMessage());
+        try {
+            jdbcTemplate.update(DEAD_LETTER_SQL, change.getMemberId(), change.getAge(), change.getTeamId(),
+                    change.getFailures(), message.length() > ERROR_LENGTH ? message.substring(0, ERROR_LENGTH) : message,
+                    Timestamp.valueOf(LocalDateTime.now()));
+        } catch (RuntimeException e) {
+            log.error("Failed to store write-behind dead letter {}", change, e);
+        }
+    }
+
+    private static void bind(PreparedStatement ps, MemberChange change) throws SQLException {
+        ps.setObject(1, change.getAge(), Types.INTEGER);
+        ps.setObject(2, change.getTeamId(), Types.BIGINT);
+        ps.setLong(3, change.getMemberId());
+    }
+
+    //실패한 변경분이 그 사이에 들어온 변경보다 먼저 반영되도록 앞에 둔다.
+    private void requeue(List<MemberChange> failed) {
+        synchronized (lock) {
+            LinkedHashMap<Long, MemberChange> merged = new LinkedHashMap<>();
+            for (MemberChange change : failed) {
+                merged.put(change.getMemberId(), change);
+            }
+            for (Map.Entry<Long, MemberChange> entry : pending.entrySet()) {
+                merged.merge(entry.getKey(), entry.getValue(), MemberChange::mergeWith);
+            }
+            pending = merged;
+        }
+    }
+}
@@ -19,8 +19,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.Commit;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.MemberDtoProjection;
 import study.querydsl.dto.QMemberDto;
 import study.querydsl.dto.UserDto;
+import study.querydsl.dto.UserDtoProjection;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.QTeam;
@@ -559,6 +561,33 @@ public class QueryDslBasicTest {
         }
     }
 
+    @Test
+    public void findDtoByBeanProjection(){
+        QMember memberSub = new QMember("memberSub");
+        //@BeanProjection 으로 생성된 팩토리: setter 로 넣지만 리플렉션이 없고, alias 없이 속성 이름의 builder 메서드로 매칭된다.
+        List<MemberDto> memberDtos = queryFactory
+                .select(MemberDtoProjection.builder()
+                        .age(member.age) //순서가 달라도 이름으로 묶인다
+                        .username(member.username)
+                        .build())
+                .from(member)
+                .fetch();
+        List<UserDto> userDtos = queryFactory
+                .select(UserDtoProjection.builder()
+                        .name(member.username)
+                        .age(JPAExpressions
+                                .select(memberSub.age.max())
+                                .from(memberSub))
+                        .build())
+                .from(member)
+                .fetch();
+
+        assertThat(memberDtos).extracting("username").contains("member1", "member2", "member3", "member4");
+        assertThat(memberDtos).extracting("age").contains(10, 20, 30, 40);
+        assertThat(userDtos).extracting("name").contains("member1", "member2", "member3", "member4");
+        assertThat(userDtos).extracting("age").allMatch(age -> (Integer) age >= 40);
+    }
+
     @Test
     public void findDtoByQueryProjection(){
         List<MemberDto> result = queryFactory
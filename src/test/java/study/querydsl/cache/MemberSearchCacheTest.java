@@ -0,0 +1,181 @@
+package study.querydsl.cache;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.query.MemberQueryRepository;
+import study.querydsl.repository.query.MemberTeamFields;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//무효화는 커밋 후에 일어나므로 테스트 트랜잭션(롤백) 없이 직접 커밋한다
+@SpringBootTest(properties = "querydsl.search-cache.enabled=true")
+class MemberSearchCacheTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberSearchCache cache;
+
+    @Autowired
+    MemberQueryRepository memberQueryRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void before(){
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("cacheTeamA");
+            Team teamB = new Team("cacheTeamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            em.persist(new Member("cacheA1", 10, teamA));
+            em.persist(new Member("cacheB1", 20, teamB));
+            em.persist(new Member("cacheB2", 30, teamB));
+        });
+        cache.clear();
+    }
+
+    @AfterEach
+    public void after(){
+        transactionTemplate.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.username.startsWith("cache")).execute();
+            queryFactory.delete(team).where(team.name.startsWith("cache")).execute();
+        });
+        cache.clear();
+    }
+
+    @Test
+    public void hitAndPreciseInvalidation(){
+        MemberSearchCondition teamA = teamName("cacheTeamA");
+        MemberSearchCondition teamB = teamName("cacheTeamB");
+        MemberSearchCondition usernameA1 = new MemberSearchCondition();
+        usernameA1.setUsername("CACHEA1");
+        usernameA1.setUsernameIgnoreCase(true);
+        MemberSearchCondition oldAge = new MemberSearchCondition();
+        oldAge.setAgeGoe(100);
+        oldAge.setAgeLoe(110);
+
+        memberRepository.search(teamA);
+        memberRepository.search(teamB);
+        memberRepository.search(usernameA1);
+        memberRepository.search(oldAge);
+        //빈 문자열은 조건 없음과 같은 키로 정규화된다
+        MemberSearchCondition sameAsTeamA = teamName("cacheTeamA");
+        sameAsTeamA.setUsername(" ");
+        assertThat(memberRepository.search(sameAsTeamA)).extracting("username").containsExactly("cacheA1");
+        assertThat(cache.size()).isEqualTo(4);
+        assertThat(cache.hitRatio()).isGreaterThan(0);
+
+        //B 팀 회원의 나이가 바뀌면 teamName=cacheTeamB 만 지운다
+        transactionTemplate.executeWithoutResult(status -> findMember("cacheB1").setAge(21));
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(memberRepository.search(teamB)).extracting("age").containsExactlyInAnyOrder(21, 30);
+
+        //A 팀 회원이 B 팀으로 옮기면 변경 전(teamA, username) / 후(teamB) 조건이 모두 지워지고 나이 조건은 남는다
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamBEntity = queryFactory.selectFrom(team).where(team.name.eq("cacheTeamB")).fetchOne();
+            findMember("cacheA1").setTeam(teamBEntity);
+        });
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(memberRepository.search(teamA)).isEmpty();
+
+        //롤백된 변경은 지우지 않는다
+        int before = cache.size();
+        transactionTemplate.executeWithoutResult(status -> {
+            findMember("cacheB2").setAge(105);
+            status.setRollbackOnly();
+        });
+        assertThat(cache.size()).isEqualTo(before);
+    }
+
+    @Test
+    public void bulkUpdateInvalidatesMatchingNewState(){
+        MemberSearchCondition oldAge = new MemberSearchCondition();
+        oldAge.setAgeGoe(100);
+        oldAge.setAgeLoe(110);
+        MemberSearchCondition teamA = teamName("cacheTeamA");
+
+        memberRepository.search(oldAge);
+        memberRepository.search(teamA);
+        memberRepository.searchPageComplex(teamA, PageRequest.of(0, 10));
+        assertThat(cache.size()).isEqualTo(3);
+
+        //벌크 update 는 변경 전 값을 모르므로 페이지 항목과 변경 후 값에 맞는 항목을 지운다
+        transactionTemplate.executeWithoutResult(status -> queryFactory.update(member)
+                .set(member.age, 105)
+                .where(member.username.eq("cacheB2"))
+                .execute());
+        assertThat(cache.size()).isEqualTo(1);
+        List<MemberTeamDto> result = memberRepository.search(oldAge);
+        assertThat(result).extracting("username").contains("cacheB2");
+    }
+
+    @Test
+    public void cachedResultsAreCopies(){
+        MemberSearchCondition teamA = teamName("cacheTeamA");
+        memberRepository.search(teamA).get(0).setUsername("changedByCaller");
+
+        //넣을 때도 꺼낼 때도 복사하므로 다른 호출자의 변경이 캐시에 남지 않는다
+        List<MemberTeamDto> first = memberRepository.search(teamA);
+        assertThat(first).extracting("username").containsExactly("cacheA1");
+        first.get(0).setAge(999);
+        assertThat(memberRepository.search(teamA)).extracting("age").containsExactly(10);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void fieldsReuseCachedRowsButDoNotFillTheCache(){
+        MemberSearchCondition teamB = teamName("cacheTeamB");
+        MemberTeamFields username = MemberTeamFields.parse("username");
+
+        //캐시에 없으면 고른 속성만 조회하고 캐시는 채우지 않는다
+        assertThat(memberQueryRepository.searchFields(teamB, username))
+                .extracting(row -> row.get("username")).containsExactlyInAnyOrder("cacheB1", "cacheB2");
+        assertThat(cache.size()).isZero();
+
+        //같은 조건의 전체 row 가 캐시에 있으면 그것을 줄여 쓴다
+        memberRepository.search(teamB);
+        double hits = meterRegistry.counter("member.search.cache", "result", "hit").count();
+        assertThat(memberQueryRepository.searchFields(teamB, username))
+                .extracting(row -> row.get("username")).containsExactlyInAnyOrder("cacheB1", "cacheB2");
+        assertThat(meterRegistry.counter("member.search.cache", "result", "hit").count()).isEqualTo(hits + 1);
+    }
+
+    private Member findMember(String username) {
+        return queryFactory.selectFrom(member).where(member.username.eq(username)).fetchOne();
+    }
+
+    private static MemberSearchCondition teamName(String teamName) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName(teamName);
+        return condition;
+    }
+}
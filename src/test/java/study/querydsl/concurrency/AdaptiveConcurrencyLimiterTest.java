@@ -0,0 +1,65 @@
+package study.querydsl.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void rejectOverLimit(){
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 100);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse(); //기다리지 않고 바로 거절
+
+        limiter.releaseWithoutSample();
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void increaseWhileLatencyIsFlat(){
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+
+        for(int i=0;i<5;++i){
+            fillAndRelease(limiter, 10 * MS);
+        }
+        assertThat(limiter.getLimit()).isGreaterThan(10);
+    }
+
+    @Test
+    public void decreaseWhenLatencyGrows(){
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 1, 100);
+        fillAndRelease(limiter, 10 * MS); //minRtt 기준
+
+        int before = limiter.getLimit();
+        for(int i=0;i<5;++i){
+            fillAndRelease(limiter, 100 * MS); //대기열이 쌓여 응답시간이 10배가 됨
+        }
+        assertThat(limiter.getLimit()).isLessThan(before);
+    }
+
+    @Test
+    public void doNotIncreaseWhenUnderused(){
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+
+        for(int i=0;i<100;++i){
+            limiter.tryAcquire();
+            limiter.release(10 * MS);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    //한도까지 채운 뒤 하나를 완료시킨다.
+    private void fillAndRelease(AdaptiveConcurrencyLimiter limiter, long rttNanos) {
+        while(limiter.tryAcquire()){
+        }
+        limiter.release(rttNanos);
+        while(limiter.getInFlight() > 0){
+            limiter.releaseWithoutSample();
+        }
+    }
+}
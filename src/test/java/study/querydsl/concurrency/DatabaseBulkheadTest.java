@@ -0,0 +1,97 @@
+package study.querydsl.concurrency;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//스레드 1개, 대기열 1개로 포화 상태를 만든다
+@SpringBootTest(properties = {
+        "querydsl.db-executor.threads=1",
+        "querydsl.db-executor.queue-capacity=1",
+        "querydsl.db-executor.timeout=1000"
+})
+class DatabaseBulkheadTest {
+
+    //H2 가 행마다 취소 여부를 확인하면서 오래 도는 조회
+    static final String SLOW_QUERY =
+            "select count(*) from system_range(1, 100000) a, system_range(1, 100000) b where a.x + b.x = 3";
+
+    @Autowired
+    DatabaseBulkhead databaseBulkhead;
+
+    @Autowired
+    EntityManager em;
+
+    @Test
+    public void saturatedBulkheadRejectsAndExpiresQueuedWork() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        databaseBulkhead.submit(() -> {
+            started.countDown();
+            await(release);
+            return 1;
+        });
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        CompletableFuture<Integer> queued = databaseBulkhead.submit(() -> {
+            queuedRan.set(true);
+            return 2;
+        });
+        //대기열까지 차면 기다리지 않고 바로 거절한다
+        CompletableFuture<Integer> rejected = databaseBulkhead.submit(() -> 3);
+        assertThat(rejected).isCompletedExceptionally();
+        assertThatThrownBy(rejected::join).hasCauseInstanceOf(DatabaseBusyException.class);
+
+        //대기열에서 timeout 이 지난 작업은 실행하지 않는다
+        assertThatThrownBy(() -> queued.get(3, TimeUnit.SECONDS)).hasCauseInstanceOf(TimeoutException.class);
+        release.countDown();
+        assertThat(databaseBulkhead.submit(() -> 4).get(1, TimeUnit.SECONDS)).isEqualTo(4);
+        assertThat(queuedRan).isFalse();
+    }
+
+    @Test
+    public void cancelStopsRunningStatement() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        CompletableFuture<Object> future = databaseBulkhead.submit(() -> {
+            started.countDown();
+            try {
+                return em.createNativeQuery(SLOW_QUERY).getSingleResult();
+            } catch (RuntimeException e) {
+                failure.set(e);
+                throw e;
+            } finally {
+                finished.countDown();
+            }
+        });
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200); //statement 가 실행되기를 기다린다
+
+        future.cancel(true);
+
+        //기다리는 쪽이 없어지면 DB 에서도 statement 가 중단된다
+        assertThat(finished.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(failure.get()).isNotNull();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
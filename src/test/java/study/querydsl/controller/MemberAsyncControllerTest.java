@@ -0,0 +1,110 @@
+package study.querydsl.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//bulkhead 를 스레드 1개, 대기열 1개로 두고 조회가 끝나는 시점을 테스트에서 정한다
+@SpringBootTest(properties = {
+        "querydsl.db-executor.threads=1",
+        "querydsl.db-executor.queue-capacity=1"
+})
+@AutoConfigureMockMvc
+class MemberAsyncControllerTest {
+
+    //H2 가 행마다 취소 여부를 확인하면서 오래 도는 조회
+    static final String SLOW_QUERY =
+            "select count(*) from system_range(1, 100000) a, system_range(1, 100000) b where a.x + b.x = 3";
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    EntityManager em;
+
+    @MockBean
+    MemberJpaRepository memberJpaRepository;
+
+    @Test
+    public void saturatedBulkheadIsServiceUnavailable() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        given(memberJpaRepository.search(any())).willAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.emptyList();
+        });
+
+        MvcResult running = mockMvc.perform(get("/async/v1/members"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        MvcResult queued = mockMvc.perform(get("/async/v1/members"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //실행중 1개 + 대기 1개가 차 있으면 웹 스레드를 붙잡지 않고 바로 503
+        MvcResult rejected = mockMvc.perform(get("/async/v1/members")).andReturn();
+        mockMvc.perform(asyncDispatch(rejected)).andExpect(status().isServiceUnavailable());
+
+        release.countDown();
+        mockMvc.perform(asyncDispatch(running)).andExpect(status().isOk());
+        mockMvc.perform(asyncDispatch(queued)).andExpect(status().isOk());
+    }
+
+    @Test
+    public void clientDisconnectCancelsRunningQuery() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        given(memberJpaRepository.search(any())).willAnswer(invocation -> {
+            started.countDown();
+            try {
+                return em.createNativeQuery(SLOW_QUERY).getResultList();
+            } catch (RuntimeException e) {
+                failure.set(e);
+                throw e;
+            } finally {
+                finished.countDown();
+            }
+        });
+
+        MvcResult result = mockMvc.perform(get("/async/v1/members"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200); //statement 가 실행되기를 기다린다
+
+        //컨테이너가 연결 끊김을 알리는 것처럼 async 리스너에 onError 를 보낸다
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onError(new AsyncEvent(asyncContext, new IOException("Broken pipe")));
+        }
+
+        assertThat(finished.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(failure.get()).isNotNull();
+    }
+}
@@ -0,0 +1,144 @@
+package study.querydsl.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.export.MemberPageBinaryConverter;
+import study.querydsl.export.MemberPageColumnarJsonConverter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//버전은 커밋 후에 올라가므로 테스트 트랜잭션 없이 직접 커밋한다(다른 테스트가 롤백한 outbox id 를 기다리지 않는다)
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "querydsl.change-feed.gap-timeout=0"
+})
+@AutoConfigureMockMvc
+class MemberControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    Statistics statistics;
+
+    @BeforeEach
+    public void before(){
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team = new Team("etagTeam");
+            em.persist(team);
+            em.persist(new Member("etag1", 10, team));
+        });
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    public void after(){
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'etag%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'etag%'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void notModifiedWithoutQuery() throws Exception {
+        String etag = mockMvc.perform(get("/v3/members?teamName=etagTeam&size=10"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+
+        //파라미터 순서가 달라도 같은 ETag 이고, 304 는 저장소를 거치지 않는다
+        statistics.clear();
+        mockMvc.perform(get("/v3/members?size=10&teamName=etagTeam").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+        assertThat(statistics.getQueryExecutionCount()).isEqualTo(0);
+
+        //다른 조건은 다른 ETag
+        mockMvc.perform(get("/v3/members?teamName=other&size=10").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        //벌크 update 도 커밋 후 버전을 올린다
+        transactionTemplate.executeWithoutResult(status -> queryFactory.update(member)
+                .set(member.age, member.age.add(1))
+                .where(member.username.eq("etag1"))
+                .execute());
+        String changed = mockMvc.perform(get("/v3/members?teamName=etagTeam&size=10").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(changed).isNotEqualTo(etag);
+    }
+
+    //Accept 마다 그 인코딩의 변환기가 골라진다(기본 JSON 변환기에 가려지지 않는다)
+    @Test
+    public void acceptSelectsEncoding() throws Exception {
+        String url = "/v3/members?teamName=etagTeam&size=10";
+
+        JsonNode json = objectMapper.readTree(mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8));
+        assertThat(json.get("content").get(0).get("username").asText()).isEqualTo("etag1");
+        assertThat(json.has("columns")).isFalse();
+
+        JsonNode columns = objectMapper.readTree(mockMvc.perform(get(url).accept(MemberPageColumnarJsonConverter.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MemberPageColumnarJsonConverter.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8));
+        assertThat(columns.has("content")).isFalse();
+        assertThat(columns.get("columns").get("username").toString()).isEqualTo("[\"etag1\"]");
+        assertThat(columns.get("teamNames").toString()).isEqualTo("[\"etagTeam\"]");
+
+        byte[] rows = mockMvc.perform(get(url).accept(MemberPageBinaryConverter.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MemberPageBinaryConverter.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertThat(Arrays.copyOf(rows, 4)).isEqualTo("MTR2".getBytes(StandardCharsets.US_ASCII));
+
+        //fields= 페이지도 고른 속성만 열로 나간다
+        JsonNode sparse = objectMapper.readTree(mockMvc.perform(get(url + "&fields=username,age")
+                        .accept(MemberPageColumnarJsonConverter.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8));
+        assertThat(sparse.get("columns").fieldNames()).toIterable().containsExactly("username", "age");
+    }
+}
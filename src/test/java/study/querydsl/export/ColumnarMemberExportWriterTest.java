@@ -0,0 +1,126 @@
+package study.querydsl.export;
+
+import org.junit.jupiter.api.Test;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarMemberExportWriterTest {
+
+    @Test
+    public void roundTrip() throws Exception {
+        List<MemberTeamDto> rows = new ArrayList<>();
+        rows.add(new MemberTeamDto(10L, "member1", 10, 3L, "teamA"));
+        rows.add(new MemberTeamDto(5L, null, -1, null, null)); //id 가 줄어들어도(음수 차이) 된다
+        rows.add(new MemberTeamDto(11L, "회원", 30, 3L, "teamA"));
+
+        List<MemberTeamDto> decoded = new Reader(write(rows)).readAll();
+
+        assertThat(decoded).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(rows);
+    }
+
+    @Test
+    public void teamDictionarySpansRowGroups() throws Exception {
+        //row group(4096) 두 개에 걸쳐 쓰고, 팀 사전은 처음 나온 group 에만 들어간다
+        List<MemberTeamDto> rows = new ArrayList<>();
+        for (long id = 1; id <= 5000; id++) {
+            long teamId = id % 2 + 1;
+            rows.add(new MemberTeamDto(id, "member" + id, (int) (id % 100), teamId, "team" + teamId));
+        }
+
+        Reader reader = new Reader(write(rows));
+        List<MemberTeamDto> decoded = reader.readAll();
+
+        assertThat(decoded).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(rows);
+        assertThat(reader.groupSizes).containsExactly(4096, 904);
+        assertThat(reader.newTeamCounts).containsExactly(2, 0);
+    }
+
+    private static byte[] write(List<MemberTeamDto> rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarMemberExportWriter writer = new ColumnarMemberExportWriter(out);
+        for (MemberTeamDto row : rows) {
+            writer.write(row);
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    //클래스 주석의 포맷대로 읽는다
+    private static class Reader {
+        private final InputStream in;
+        private final Map<Long, String> teams = new HashMap<>();
+        private final List<Integer> groupSizes = new ArrayList<>();
+        private final List<Integer> newTeamCounts = new ArrayList<>();
+
+        Reader(byte[] bytes) {
+            this.in = new ByteArrayInputStream(bytes);
+        }
+
+        List<MemberTeamDto> readAll() throws IOException {
+            assertThat(in.readNBytes(4)).isEqualTo(ColumnarMemberExportWriter.MAGIC);
+            List<MemberTeamDto> rows = new ArrayList<>();
+            long previousId = 0;
+            int rowCount;
+            while ((rowCount = (int) readVarint()) != 0) {
+                groupSizes.add(rowCount);
+                int newTeams = (int) readVarint();
+                newTeamCounts.add(newTeams);
+                for (int i = 0; i < newTeams; i++) {
+                    teams.put(readVarint(), readString());
+                }
+                long[] ids = new long[rowCount];
+                for (int i = 0; i < rowCount; i++) {
+                    previousId += unzigzag(readVarint());
+                    ids[i] = previousId;
+                }
+                String[] usernames = new String[rowCount];
+                for (int i = 0; i < rowCount; i++) {
+                    usernames[i] = readString();
+                }
+                int[] ages = new int[rowCount];
+                for (int i = 0; i < rowCount; i++) {
+                    ages[i] = (int) unzigzag(readVarint());
+                }
+                for (int i = 0; i < rowCount; i++) {
+                    long teamId = readVarint();
+                    rows.add(teamId == 0
+                            ? new MemberTeamDto(ids[i], usernames[i], ages[i], null, null)
+                            : new MemberTeamDto(ids[i], usernames[i], ages[i], teamId, teams.get(teamId)));
+                }
+            }
+            assertThat(in.read()).isEqualTo(-1);
+            return rows;
+        }
+
+        private String readString() throws IOException {
+            long length = readVarint();
+            return length == 0 ? null : new String(in.readNBytes((int) length - 1), StandardCharsets.UTF_8);
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
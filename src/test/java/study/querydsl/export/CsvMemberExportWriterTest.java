@@ -0,0 +1,27 @@
+package study.querydsl.export;
+
+import org.junit.jupiter.api.Test;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvMemberExportWriterTest {
+
+    @Test
+    public void writeCsv() throws Exception{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvMemberExportWriter writer = new CsvMemberExportWriter(out);
+
+        writer.write(new MemberTeamDto(1L, "member1", 10, 3L, "teamA"));
+        writer.write(new MemberTeamDto(2L, "kim, \"young\"", 20, null, null));
+        writer.finish();
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "member_id,username,age,team_id,team_name\r\n" +
+                "1,member1,10,3,teamA\r\n" +
+                "2,\"kim, \"\"young\"\"\",20,,\r\n");
+    }
+}
@@ -0,0 +1,156 @@
+package study.querydsl.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.web.server.ResponseStatusException;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.UnknownTotalPage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberPageConverterTest {
+
+    static final List<MemberTeamDto> ROWS = Arrays.asList(
+            new MemberTeamDto(1L, "member1", 10, 3L, "teamA"),
+            new MemberTeamDto(2L, "member2", 20, 4L, "teamB"),
+            new MemberTeamDto(3L, "member3", 30, 3L, "teamA"),
+            new MemberTeamDto(4L, "member4", 40, null, null));
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void columnarJson() throws Exception{
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        new MemberPageColumnarJsonConverter(objectMapper.getFactory())
+                .write(new PageImpl<>(ROWS, PageRequest.of(0, 10), 4), MemberPageColumnarJsonConverter.MEDIA_TYPE, message);
+
+        JsonNode json = objectMapper.readTree(message.getBodyAsString(StandardCharsets.UTF_8));
+        assertThat(json.get("totalKnown").asBoolean()).isTrue();
+        assertThat(json.get("totalElements").asLong()).isEqualTo(4);
+        //팀명은 사전 index 로 쓴다
+        assertThat(json.get("teamNames").toString()).isEqualTo("[\"teamA\",\"teamB\"]");
+        assertThat(json.get("columns").get("teamName").toString()).isEqualTo("[0,1,0,null]");
+        assertThat(json.get("columns").get("username").toString())
+                .isEqualTo("[\"member1\",\"member2\",\"member3\",\"member4\"]");
+        assertThat(json.get("columns").get("age").toString()).isEqualTo("[10,20,30,40]");
+    }
+
+    @Test
+    public void columnarJsonSparseFields() throws Exception{
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("username", "member1");
+        row.put("teamId", 3L);
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        new MemberPageColumnarJsonConverter(objectMapper.getFactory())
+                .write(new PageImpl<>(Arrays.asList(row), PageRequest.of(0, 10), 1), MemberPageColumnarJsonConverter.MEDIA_TYPE, message);
+
+        JsonNode columns = objectMapper.readTree(message.getBodyAsString(StandardCharsets.UTF_8)).get("columns");
+        assertThat(columns.fieldNames()).toIterable().containsExactly("username", "teamId");
+    }
+
+    @Test
+    public void binaryRows() throws Exception{
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        new MemberPageBinaryConverter()
+                .write(new PageImpl<>(ROWS, PageRequest.of(0, 10), 4), MemberPageBinaryConverter.MEDIA_TYPE, message);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message.getBodyAsBytes()));
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        assertThat(magic).isEqualTo(MemberPageBinaryConverter.MAGIC);
+        assertThat(readVarint(in)).isEqualTo(0b11111); //모든 속성
+        assertThat(readVarint(in)).isEqualTo(0); //page
+        assertThat(readVarint(in)).isEqualTo(10); //size
+        assertThat(readVarint(in)).isEqualTo(4 + 1); //totalElements + 1
+        assertThat(readVarint(in)).isEqualTo(4); //rowCount
+
+        //첫 row 는 길이만큼 읽고, 나머지는 길이로 건너뛸 수 있다
+        long length = readVarint(in);
+        assertThat(readVarint(in)).isEqualTo(1); //memberId
+        assertThat(readString(in)).isEqualTo("member1");
+        assertThat(readVarint(in)).isEqualTo(20); //age 10 (zigzag)
+        assertThat(readVarint(in)).isEqualTo(3); //teamId
+        assertThat(readString(in)).isEqualTo("teamA");
+        assertThat(length).isEqualTo(1 + 8 + 1 + 1 + 6);
+        for (int i = 1; i < ROWS.size(); i++) {
+            in.skipBytes((int) readVarint(in));
+        }
+        assertThat(in.read()).isEqualTo(-1);
+    }
+
+    @Test
+    public void unknownTotal() throws Exception{
+        UnknownTotalPage<MemberTeamDto> page = new UnknownTotalPage<>(ROWS, PageRequest.of(1, 4), true);
+
+        MockHttpOutputMessage columns = new MockHttpOutputMessage();
+        new MemberPageColumnarJsonConverter(objectMapper.getFactory())
+                .write(page, MemberPageColumnarJsonConverter.MEDIA_TYPE, columns);
+        JsonNode json = objectMapper.readTree(columns.getBodyAsString(StandardCharsets.UTF_8));
+        assertThat(json.get("totalKnown").asBoolean()).isFalse();
+        assertThat(json.get("totalElements").asLong()).isEqualTo(-1);
+
+        MockHttpOutputMessage rows = new MockHttpOutputMessage();
+        new MemberPageBinaryConverter().write(page, MemberPageBinaryConverter.MEDIA_TYPE, rows);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(rows.getBodyAsBytes()));
+        in.skipBytes(MemberPageBinaryConverter.MAGIC.length);
+        readVarint(in); //fieldMask
+        readVarint(in); //page
+        readVarint(in); //size
+        assertThat(readVarint(in)).isEqualTo(0); //모름
+
+        //기본 JSON 에도 건수를 모른다는 표시가 나간다
+        JsonNode defaultJson = objectMapper.readTree(objectMapper.writeValueAsString(page));
+        assertThat(defaultJson.get("totalKnown").asBoolean()).isFalse();
+        assertThat(defaultJson.get("last").asBoolean()).isFalse();
+    }
+
+    @Test
+    public void nonMemberPageIsNotAcceptable() {
+        MemberPageConverterAdvice advice = new MemberPageConverterAdvice();
+
+        //회원 검색 페이지가 아니면 500(쓰기 실패) 대신 406
+        assertThatThrownBy(() -> advice.beforeBodyWrite(new PageImpl<>(Arrays.asList("teamA")), null,
+                MemberPageBinaryConverter.MEDIA_TYPE, MemberPageBinaryConverter.class, null, null))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting("status").isEqualTo(HttpStatus.NOT_ACCEPTABLE);
+        PageImpl<MemberTeamDto> members = new PageImpl<>(ROWS);
+        assertThat(advice.beforeBodyWrite(members, null, MemberPageColumnarJsonConverter.MEDIA_TYPE,
+                MemberPageColumnarJsonConverter.class, null, null)).isSameAs(members);
+    }
+
+    private static long readVarint(DataInputStream in) throws Exception{
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String readString(DataInputStream in) throws Exception{
+        int length = (int) readVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,58 @@
+package study.querydsl.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * /v2, /v3 응답 크기 비교: 기본 JSON(Page 직렬화) vs x-member-columns vs x-member-rows
+ * 크기는 입력으로 정해지므로 테스트로 검증한다. 시간과 할당량은 JMH(src/jmh, MemberPageEncodingBenchmark)로 잰다.
+ */
+class MemberPageEncodingSizeTest {
+
+    static final int PAGE_SIZE = 1000;
+    static final int TEAMS = 20;
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void compactEncodingsAreSmaller() throws Exception{
+        Page<MemberTeamDto> page = page();
+
+        int json = write(new MappingJackson2HttpMessageConverter(objectMapper), MediaType.APPLICATION_JSON, page);
+        int columns = write(new MemberPageColumnarJsonConverter(objectMapper.getFactory()),
+                MemberPageColumnarJsonConverter.MEDIA_TYPE, page);
+        int rows = write(new MemberPageBinaryConverter(), MemberPageBinaryConverter.MEDIA_TYPE, page);
+
+        //속성 이름을 한번만 쓰고(columns), 이름 없이 값만 쓰면(rows) 응답이 작아진다
+        assertThat(columns).isLessThan(json / 2);
+        assertThat(rows).isLessThan(columns);
+    }
+
+    private static Page<MemberTeamDto> page() {
+        List<MemberTeamDto> rows = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            rows.add(new MemberTeamDto((long) i + 1, "member" + i, i % 100, (long) (i % TEAMS) + 1, "team" + (i % TEAMS)));
+        }
+        return new PageImpl<>(rows, PageRequest.of(0, PAGE_SIZE), 1_000_000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int write(HttpMessageConverter<?> converter, MediaType mediaType, Object page) throws Exception{
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        ((HttpMessageConverter<Object>) converter).write(page, mediaType, message);
+        return message.getBodyAsBytes().length;
+    }
+}
@@ -0,0 +1,202 @@
+package study.querydsl.ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//writer 스레드가 별도 트랜잭션으로 저장하므로 테스트 트랜잭션 없이 확인하고 직접 지운다
+@SpringBootTest(properties = {"querydsl.ingest.queue-capacity=100", "querydsl.ingest.retry-backoff=0"})
+@AutoConfigureMockMvc
+@Import(MemberIngestTest.StatementCounterConfig.class)
+class MemberIngestTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void after(){
+        jdbcTemplate.update("delete from member where username like 'ingest%'");
+        jdbcTemplate.update("delete from member_ingest_dead_letter");
+    }
+
+    @Test
+    public void ndjsonIsWrittenInBatches() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            body.append("{\"username\":\"ingest").append(i).append("\",\"age\":").append(i).append("}\n");
+        }
+        CountingDataSource.executed.clear();
+
+        mockMvc.perform(post("/members/bulk").contentType(MediaType.APPLICATION_NDJSON).content(body.toString()))
+                .andExpect(status().isAccepted());
+        awaitIngested(100);
+
+        //writer 가 꺼낸 batch 하나는 id 조회 + member insert batch + outbox insert batch 세 번이다(회원 수와 무관)
+        List<String> executed = CountingDataSource.executed;
+        long batches = executed.stream().filter(sql -> sql.contains("hibernate_sequence")).count();
+        assertThat(batches).isBetween(1L, 10L);
+        assertThat(executed).hasSize((int) batches * 3);
+        assertThat(jdbcTemplate.queryForObject(
+                "select count(*) from outbox_event e join member m on m.member_id = e.aggregate_id"
+                        + " where m.username like 'ingest%' and e.event_type = 'INSERT'", Integer.class))
+                .isEqualTo(100);
+    }
+
+    @Test
+    public void failedMemberIsDeadLetteredNotDropped() throws Exception {
+        String tooLong = "ingestLong" + String.join("", Collections.nCopies(300, "x"));
+        String body = "{\"username\":\"ingestOk1\",\"age\":1}\n"
+                + "{\"username\":\"" + tooLong + "\",\"age\":2}\n"
+                + "{\"username\":\"ingestOk2\",\"age\":3}\n";
+
+        mockMvc.perform(post("/members/bulk").contentType(MediaType.APPLICATION_NDJSON).content(body))
+                .andExpect(status().isAccepted());
+        awaitIngested(2);
+
+        //batch 가 실패하면 한 건씩 저장하고, 저장할 수 없는 회원만 dead letter 로 남긴다
+        long deadline = System.currentTimeMillis() + 5000;
+        while (deadLetters() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(jdbcTemplate.queryForList("select username from member_ingest_dead_letter", String.class))
+                .containsExactly(tooLong);
+    }
+
+    @Test
+    public void malformedLineIsBadRequest() throws Exception {
+        String body = "{\"username\":\"ingestBad1\",\"age\":1}\n{\"username\":\"ingestBad2\",\"age\":\n";
+
+        mockMvc.perform(post("/members/bulk").contentType(MediaType.APPLICATION_NDJSON).content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason(containsString("line 2")));
+        //앞 줄도 넣지 않는다
+        Thread.sleep(300);
+        assertThat(ingested()).isEqualTo(0);
+    }
+
+    @Test
+    public void fullQueueIsTooManyRequests() throws Exception {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i <= 100; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"username\":\"ingestFull").append(i).append("\",\"age\":1}");
+        }
+        body.append("]");
+
+        //큐(100)에 배치 전체(101)가 들어갈 자리가 없으면 하나도 넣지 않는다
+        mockMvc.perform(post("/members/bulk").contentType(MediaType.APPLICATION_JSON).content(body.toString()))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        Thread.sleep(300);
+        assertThat(ingested()).isEqualTo(0);
+    }
+
+    private void awaitIngested(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ingested() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(ingested()).isEqualTo(expected);
+    }
+
+    private int deadLetters() {
+        return jdbcTemplate.queryForObject("select count(*) from member_ingest_dead_letter", Integer.class);
+    }
+
+    private int ingested() {
+        return jdbcTemplate.queryForObject("select count(*) from member where username like 'ingest%'", Integer.class);
+    }
+
+    @TestConfiguration
+    static class StatementCounterConfig {
+        @Bean
+        static BeanPostProcessor countingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource && !(bean instanceof CountingDataSource)
+                            ? new CountingDataSource((DataSource) bean) : bean;
+                }
+            };
+        }
+    }
+
+    //ingest writer 스레드가 DB 로 보낸 문장(execute*)을 SQL 로 남긴다. batch 는 executeBatch 한번이다.
+    static class CountingDataSource extends DelegatingDataSource {
+        static final List<String> executed = new CopyOnWriteArrayList<>();
+
+        CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return counting(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return counting(super.getConnection(username, password));
+        }
+
+        private static Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if (method.getName().startsWith("prepare")) {
+                            //prepareStatement -> PreparedStatement, prepareCall -> CallableStatement
+                            return counting(method.getReturnType(), result, (String) args[0]);
+                        }
+                        return result;
+                    });
+        }
+
+        private static Object counting(Class<?> statementType, Object statement, String sql) {
+            return Proxy.newProxyInstance(statementType.getClassLoader(), new Class<?>[]{statementType},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute")
+                                && Thread.currentThread().getName().startsWith("member-ingest-")) {
+                            executed.add(sql);
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
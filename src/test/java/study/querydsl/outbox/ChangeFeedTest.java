@@ -0,0 +1,169 @@
+package study.querydsl.outbox;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest(properties = {
+        "querydsl.change-feed.poll-interval=3600000", //테스트에서는 직접 poll 한다
+        "querydsl.change-feed.gap-timeout=0"
+})
+@Transactional
+class ChangeFeedTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ChangeFeed changeFeed;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    ObjectProvider<ChangeFeedConsumer> consumers;
+
+    @Test
+    public void bulkUpdateAndResume(){
+        CollectingConsumer consumer = new CollectingConsumer(2);
+        changeFeed.seek(consumer.name(), jdbcTemplate.queryForObject(
+                "select coalesce(max(id), 0) from outbox_event", Long.class));
+
+        Team team = new Team("feedTeam");
+        em.persist(team);
+        em.persist(new Member("feed1", 10, team));
+        em.persist(new Member("feed2", 20, team));
+        em.flush();
+        //벌크 update 도 대상 회원마다 기록된다(조건은 payload 에 메타데이터로 남는다).
+        queryFactory.update(member)
+                .set(member.age, member.age.add(1))
+                .where(member.username.startsWith("feed"))
+                .execute();
+
+        //배치 크기(2)씩 넘기고, 넘긴 곳부터 이어서 받는다.
+        assertThat(changeFeed.poll(consumer)).isEqualTo(2);
+        assertThat(changeFeed.poll(consumer)).isEqualTo(2);
+        assertThat(changeFeed.poll(consumer)).isEqualTo(1);
+        assertThat(changeFeed.poll(consumer)).isEqualTo(0);
+        assertThat(changeFeed.offset(consumer.name())).isEqualTo(consumer.events.get(4).getId());
+
+        assertThat(consumer.events).extracting("eventType").containsExactly(
+                EventType.INSERT, EventType.INSERT, EventType.INSERT, EventType.UPDATE, EventType.UPDATE);
+        assertThat(consumer.events.subList(3, 5)).extracting("aggregateId")
+                .containsExactlyInAnyOrderElementsOf(consumer.events.subList(1, 3).stream()
+                        .map(ChangeEvent::getAggregateId).collect(Collectors.toList()));
+        assertThat(consumer.events.get(3).getPayload()).contains("update Member").contains("username like");
+        //같은 회원의 INSERT, UPDATE 는 한 건으로 묶인다(team 1 + member 2)
+        assertThat(new ChangeBatch(consumer.events).byAggregate()).hasSize(3);
+    }
+
+    @Test
+    public void gapIsHeldBackUntilFilledOrExpired() throws InterruptedException {
+        //이 테스트에서만 gap-timeout 을 둔다
+        ChangeFeed feed = new ChangeFeed(jdbcTemplate, transactionManager, consumers, 300, 60000);
+        CollectingConsumer consumer = new CollectingConsumer(10);
+        long base = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from outbox_event", Long.class) + 1;
+        feed.seek(consumer.name(), base - 1);
+
+        //base+1 은 아직 커밋되지 않은 트랜잭션이 채번만 해 둔 상태라고 본다
+        insertEvent(base);
+        insertEvent(base + 2);
+        assertThat(feed.poll(consumer)).isEqualTo(1);
+        assertThat(feed.poll(consumer)).isEqualTo(0);
+
+        //늦게 커밋된 이벤트가 빈 자리를 채우면 그 뒤까지 순서대로 넘긴다
+        insertEvent(base + 1);
+        assertThat(feed.poll(consumer)).isEqualTo(2);
+        assertThat(consumer.events).extracting("id").containsExactly(base, base + 1, base + 2);
+
+        //채워지지 않는 자리는 gap-timeout 이 지나면 건너뛰고, 건너뛴 id 로 남긴다
+        insertEvent(base + 4);
+        assertThat(feed.poll(consumer)).isEqualTo(0);
+        Thread.sleep(400);
+        assertThat(feed.poll(consumer)).isEqualTo(1);
+        assertThat(feed.offset(consumer.name())).isEqualTo(base + 4);
+        assertThat(gaps(consumer.name())).containsExactly(base + 3);
+
+        //gap-timeout 보다 오래 걸린 트랜잭션이 커밋되면 다음 poll 에서 넘긴다(offset 은 그대로)
+        insertEvent(base + 3);
+        assertThat(feed.poll(consumer)).isEqualTo(1);
+        assertThat(consumer.events).extracting("id").endsWith(base + 4, base + 3);
+        assertThat(feed.offset(consumer.name())).isEqualTo(base + 4);
+        assertThat(gaps(consumer.name())).isEmpty();
+    }
+
+    @Test
+    public void skippedIdIsGivenUpAfterGapRecheck() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(jdbcTemplate, transactionManager, consumers, 0, 0);
+        CollectingConsumer consumer = new CollectingConsumer(10);
+        long base = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from outbox_event", Long.class) + 1;
+        feed.seek(consumer.name(), base - 1);
+
+        //롤백으로 끝내 채워지지 않는 자리
+        insertEvent(base + 1);
+        assertThat(feed.poll(consumer)).isEqualTo(1);
+        assertThat(gaps(consumer.name())).containsExactly(base);
+
+        Thread.sleep(10);
+        assertThat(feed.poll(consumer)).isEqualTo(0);
+        assertThat(gaps(consumer.name())).isEmpty();
+    }
+
+    private List<Long> gaps(String consumer) {
+        return jdbcTemplate.queryForList("select event_id from outbox_gap where consumer = ? order by event_id",
+                Long.class, consumer);
+    }
+
+    private void insertEvent(long id) {
+        jdbcTemplate.update("insert into outbox_event (id, aggregate_type, aggregate_id, event_type, payload, created_at)" +
+                        " values (?, 'MEMBER', ?, 'UPDATE', null, ?)",
+                id, id, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    static class CollectingConsumer implements ChangeFeedConsumer {
+        final List<ChangeEvent> events = new ArrayList<>();
+        final int batchSize;
+
+        CollectingConsumer(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public String name() {
+            return "change_feed_test";
+        }
+
+        @Override
+        public int batchSize() {
+            return batchSize;
+        }
+
+        @Override
+        public void accept(ChangeBatch batch) {
+            events.addAll(batch.getEvents());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package study.querydsl.outbox;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//커밋 후에 다시 읽으므로 테스트 트랜잭션 없이 직접 커밋한다
+@SpringBootTest(properties = {
+        "querydsl.change-feed.gap-timeout=0",
+        "querydsl.data-versions.refresh-interval=3600000" //테스트에서는 직접 refresh 한다
+})
+class DataVersionsTest {
+
+    @Autowired
+    DataVersions dataVersions;
+
+    @Autowired
+    OutboxRecorder outboxRecorder;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void otherInstanceSeesSameVersionAfterRefresh(){
+        //같은 DB 를 보는 다른 인스턴스
+        DataVersions other = new DataVersions(jdbcTemplate, transactionManager, 0, 60_000);
+        dataVersions.refresh();
+        String before = dataVersions.tag(AggregateType.MEMBER, AggregateType.TEAM);
+        assertThat(other.tag(AggregateType.MEMBER, AggregateType.TEAM)).isEqualTo(before);
+
+        //이 인스턴스는 커밋 직후 바로, 다른 인스턴스는 다음 refresh 에 같은 버전이 된다
+        transactionTemplate.executeWithoutResult(status ->
+                outboxRecorder.record(AggregateType.MEMBER, 1L, EventType.UPDATE));
+        String after = dataVersions.tag(AggregateType.MEMBER, AggregateType.TEAM);
+        assertThat(after).isNotEqualTo(before);
+        assertThat(other.tag(AggregateType.MEMBER, AggregateType.TEAM)).isEqualTo(before);
+        other.refresh();
+        assertThat(other.tag(AggregateType.MEMBER, AggregateType.TEAM)).isEqualTo(after);
+
+        //롤백된 쓰기는 버전을 바꾸지 않는다
+        transactionTemplate.executeWithoutResult(status -> {
+            outboxRecorder.record(AggregateType.TEAM, 1L, EventType.UPDATE);
+            status.setRollbackOnly();
+        });
+        assertThat(dataVersions.tag(AggregateType.MEMBER, AggregateType.TEAM)).isEqualTo(after);
+    }
+
+    @Test
+    public void gapHoldsVersionUntilSettled(){
+        //gap-timeout 을 길게 둔 인스턴스
+        DataVersions waiting = new DataVersions(jdbcTemplate, transactionManager, 60_000, 60_000);
+        long memberVersion = waiting.version(AggregateType.MEMBER);
+        long next = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from outbox_event", Long.class) + 1;
+
+        //next 는 아직 커밋되지 않은 트랜잭션이 채번만 해 둔 상태라고 본다
+        insertEvent(next + 1);
+        waiting.refresh();
+        assertThat(waiting.version(AggregateType.MEMBER)).isEqualTo(memberVersion);
+
+        //빈 자리가 채워지면 그 뒤까지 반영한다
+        insertEvent(next);
+        waiting.refresh();
+        assertThat(waiting.version(AggregateType.MEMBER)).isEqualTo(next + 1);
+    }
+
+    @Test
+    public void lateCommitAfterGapTimeoutChangesTag(){
+        DataVersions skipping = new DataVersions(jdbcTemplate, transactionManager, 0, 60_000);
+        skipping.refresh();
+        long next = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from outbox_event", Long.class) + 1;
+
+        //gap-timeout 이 지나 next 를 건너뛴다
+        insertEvent(next + 1);
+        skipping.refresh();
+        String skipped = skipping.tag(AggregateType.MEMBER, AggregateType.TEAM);
+
+        //건너뛴 id 가 늦게 커밋되면 태그가 바뀐다
+        insertEvent(next);
+        skipping.refresh();
+        assertThat(skipping.tag(AggregateType.MEMBER, AggregateType.TEAM)).isNotEqualTo(skipped);
+    }
+
+    private void insertEvent(long id) {
+        jdbcTemplate.update("insert into outbox_event (id, aggregate_type, aggregate_id, event_type, payload, created_at)" +
+                " values (?, 'MEMBER', 1, 'UPDATE', null, current_timestamp)", id);
+    }
+}
@@ -0,0 +1,176 @@
+package study.querydsl.prefetch;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import study.querydsl.concurrency.ConcurrencyLimiters;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.outbox.AggregateType;
+import study.querydsl.outbox.DataVersions;
+import study.querydsl.outbox.EventType;
+import study.querydsl.outbox.OutboxRecorder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "querydsl.prefetch.enabled=true",
+        "querydsl.prefetch.wait=1000", //버퍼에서 꺼내는지 보려는 것이므로 조회 중인 다음 페이지를 기다린다
+        "querydsl.change-feed.gap-timeout=0"
+})
+class MemberPagePrefetcherTest {
+
+    @Autowired
+    MemberPagePrefetcher prefetcher;
+
+    @Autowired
+    OutboxRecorder outboxRecorder;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    ConcurrencyLimiters concurrencyLimiters;
+
+    @Autowired
+    DataVersions dataVersions;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    //페이지마다 size 개의 번호를 돌려주고, 조회한 페이지 번호를 남긴다(전체 100건)
+    private final List<Integer> loaded = Collections.synchronizedList(new ArrayList<>());
+    private final Function<Pageable, Page<Integer>> loader = pageable -> {
+        loaded.add(pageable.getPageNumber());
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < pageable.getPageSize(); i++) {
+            rows.add((int) pageable.getOffset() + i);
+        }
+        return new PageImpl<>(rows, pageable, 100);
+    };
+
+    @Test
+    public void sequentialPagesAreServedFromBuffer() throws InterruptedException {
+        MockHttpServletRequest request = client("sequential");
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        double hits = count("member.page.prefetch", "result", "hit");
+        double stale = count("member.page.prefetch.wasted", "cause", "stale");
+
+        page(request, condition, 0);
+        page(request, condition, 1); //0 -> 1 이므로 2 를 미리 조회한다
+        Page<Integer> page2 = page(request, condition, 2);
+        assertThat(page2.getContent()).startsWith(20, 21);
+        assertThat(loaded.stream().filter(p -> p == 2)).hasSize(1);
+        assertThat(count("member.page.prefetch", "result", "hit")).isEqualTo(hits + 1);
+
+        //2 를 응답하면서 3 을 미리 조회했지만, 그 사이 회원이 바뀌었으면 버리고 다시 조회한다
+        awaitLoaded(3);
+        outboxRecorder.record(AggregateType.MEMBER, 1L, EventType.UPDATE);
+        Page<Integer> page3 = page(request, condition, 3);
+        assertThat(page3.getContent()).startsWith(30, 31);
+        assertThat(loaded.stream().filter(p -> p == 3)).hasSize(2);
+        assertThat(count("member.page.prefetch.wasted", "cause", "stale")).isEqualTo(stale + 1);
+    }
+
+    @Test
+    public void randomAccessIsNotPrefetched(){
+        MockHttpServletRequest request = client("random");
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        page(request, condition, 0);
+        page(request, condition, 5);
+        //다른 조건으로 바뀌면 이어지는 페이지가 아니다
+        MemberSearchCondition other = new MemberSearchCondition();
+        other.setAgeGoe(10);
+        page(request, other, 6);
+        //다른 클라이언트의 요청도 이어지는 페이지가 아니다
+        page(client("other"), condition, 6);
+
+        assertThat(loaded).containsExactly(0, 5, 6, 6);
+    }
+
+    @Test
+    public void unidentifiedClientIsNotPrefetched(){
+        //X-Client-Id 도 세션도 없으면 원격 주소가 같아도 같은 클라이언트로 보지 않는다
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        int buffered = prefetcher.buffered();
+
+        page(request, condition, 0);
+        page(request, condition, 1);
+        page(request, condition, 2);
+
+        assertThat(loaded).containsExactly(0, 1, 2);
+        assertThat(prefetcher.buffered()).isEqualTo(buffered);
+    }
+
+    //기본값(wait=0)이면 아직 조회 중인 다음 페이지를 기다리지 않고 바로 직접 조회한다
+    @Test
+    public void pendingPrefetchIsNotAwaitedByDefault() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MemberPagePrefetcher noWait = new MemberPagePrefetcher(true, 1, 10, 5000, 0, 2, 10,
+                concurrencyLimiters, dataVersions, transactionManager, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<Pageable, Page<Integer>> slowNextPage = pageable -> {
+            if (Thread.currentThread().getName().startsWith("page-prefetch-")) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return loader.apply(pageable);
+        };
+        MockHttpServletRequest request = client("noWait");
+        MemberSearchCondition condition = new MemberSearchCondition();
+        try {
+            noWait.page("test/members", request, condition, null, PageRequest.of(0, 10), slowNextPage);
+            noWait.page("test/members", request, condition, null, PageRequest.of(1, 10), slowNextPage);
+
+            long start = System.nanoTime();
+            Page<Integer> page2 = noWait.page("test/members", request, condition, null, PageRequest.of(2, 10), slowNextPage);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+            assertThat(page2.getContent()).startsWith(20, 21);
+            assertThat(registry.counter("member.page.prefetch.wasted", "cause", "late").count()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            noWait.shutdown();
+        }
+    }
+
+    private Page<Integer> page(MockHttpServletRequest request, MemberSearchCondition condition, int page) {
+        return prefetcher.page("test/members", request, condition, null, PageRequest.of(page, 10), loader);
+    }
+
+    private void awaitLoaded(int page) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!loaded.contains(page) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private double count(String name, String tag, String value) {
+        return meterRegistry.counter(name, tag, value).count();
+    }
+
+    private static MockHttpServletRequest client(String clientId) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-Client-Id", clientId);
+        return request;
+    }
+}
@@ -1,5 +1,6 @@
 package study.querydsl.repository;
 
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -9,13 +10,16 @@ import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
 import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
+import javax.persistence.QueryTimeoutException;
 
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.*;
 @SpringBootTest
 @Transactional
@@ -41,6 +45,25 @@ class MemberJpaRepositoryTest {
         List<Member> result2 = memberJpaRepository.findByMemberUsername("member1");
         assertThat(result2).containsExactly(member);
     }
+    @Test
+    public void deadlineIsAppliedWhenQueryRuns(){
+        try {
+            QueryDeadline.set(60_000);
+            JPAQuery<Member> query = new DeadlineJPAQueryFactory(em).selectFrom(QMember.member);
+
+            //만든 시점이 아니라 실행 시점에 남은 시간으로 건다
+            QueryDeadline.set(2500);
+            assertThat(query.createQuery().getHints()).containsEntry(QueryDeadline.TIMEOUT_HINT, 3000);
+
+            //마감이 지났으면 count 쿼리도 DB 로 보내지 않는다
+            QueryDeadline.set(-1);
+            assertThatThrownBy(query::fetch).isInstanceOf(QueryTimeoutException.class);
+            assertThatThrownBy(query::fetchCount).isInstanceOf(QueryTimeoutException.class);
+        } finally {
+            QueryDeadline.clear();
+        }
+    }
+
     @Test
     public void basicQueryDslTest(){
         Member member = new Member("member1",10);
@@ -1,10 +1,12 @@
 package study.querydsl.repository;
 
+import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
@@ -16,6 +18,7 @@ import javax.persistence.EntityManager;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
 @SpringBootTest
 @Transactional
 public class MemberRepositoryTest {
@@ -26,6 +29,12 @@ public class MemberRepositoryTest {
     @Autowired
     MemberRepository memberRepository;
 
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
     @Test
     public void basicTest(){
         Member member = new Member("member1",10);
@@ -96,6 +105,29 @@ public class MemberRepositoryTest {
 
     }
 
+    @Test
+    public void offsetAndDeferredJoinPagesAreOrderedById(){
+        Team team = new Team("pagingTeam");
+        em.persist(team);
+        for (int i = 0; i < 1004; i++) {
+            em.persist(new Member("paging" + i, i % 50, team));
+        }
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("pagingTeam");
+        List<Long> ids = jdbcTemplate.queryForList(
+                "select m.member_id from member m join team t on m.team_id = t.id where t.name = 'pagingTeam' order by m.member_id",
+                Long.class);
+
+        //998 은 일반 offset 페이징, 1000 부터는 id 를 먼저 자르는 지연 조인이다. 경계를 넘어도 id 순으로 이어져야 한다.
+        Page<MemberTeamDto> before = memberRepository.searchPageComplex(condition, PageRequest.of(499, 2));
+        Page<MemberTeamDto> after = memberRepository.searchPageComplex(condition, PageRequest.of(500, 2));
+        assertThat(before.getContent()).extracting("memberId").containsExactlyElementsOf(ids.subList(998, 1000));
+        assertThat(after.getContent()).extracting("memberId").containsExactlyElementsOf(ids.subList(1000, 1002));
+    }
+
     @Test
     public void querydslPredicateExecutorTest(){
         Team teamA = new Team("teamA");
@@ -124,4 +156,35 @@ public class MemberRepositoryTest {
             System.out.println(findMember);
         }
     }
+
+    @Test
+    public void searchIgnoreCaseTest(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("Member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("MEMBER1");
+        assertThat(memberRepository.search(condition)).isEmpty();
+
+        condition.setUsernameIgnoreCase(true);
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("Member1");
+
+        //username_lower 는 DB 가 계산하므로 벌크 update, JDBC insert 로 바꾼 username 도 바로 찾을 수 있다.
+        em.flush();
+        queryFactory.update(member).set(member.username, "MemberRenamed").where(member.username.eq("member2")).execute();
+        jdbcTemplate.update("insert into member (member_id, username, age) values (next value for hibernate_sequence, ?, ?)",
+                "JdbcMember", 30);
+        em.clear();
+        condition.setUsername("memberrenamed");
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("MemberRenamed");
+        condition.setUsername("JDBCMEMBER");
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("JdbcMember");
+
+        //정규화 컬럼 비교는 인덱스를 사용해야 한다.
+        String plan = jdbcTemplate.queryForObject(
+                "explain select member_id from member where username_lower = ?", String.class, "member1");
+        assertThat(plan).containsIgnoringCase("idx_member_username_lower");
+    }
 }
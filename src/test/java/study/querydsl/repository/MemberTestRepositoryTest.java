@@ -0,0 +1,148 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class MemberTestRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberTestRepository memberTestRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void before(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10,teamA));
+        em.persist(new Member("member2", 20,teamA));
+        em.persist(new Member("member3", 30,teamB));
+        em.persist(new Member("member4", 40,teamB));
+    }
+
+    @Test
+    public void searchPageByDeferredJoin(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+        PageRequest pageRequest = PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "age"));
+
+        Page<Member> result = memberTestRepository.searchPageByDeferredJoin(condition, pageRequest);
+
+        //in 절로 다시 조회해도 1단계 정렬 순서가 유지되어야 한다.
+        assertThat(result.getContent()).extracting("username").containsExactly("member2", "member1");
+        assertThat(result.getTotalElements()).isEqualTo(4);
+    }
+
+    @Test
+    public void searchPageByDeferredJoinWithoutSort(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        //정렬을 지정하지 않아도 id 순으로 잘라야 페이지 사이에 빠지거나 겹치는 행이 없다.
+        Page<Member> first = memberTestRepository.searchPageByDeferredJoin(condition, PageRequest.of(0, 2));
+        Page<Member> second = memberTestRepository.searchPageByDeferredJoin(condition, PageRequest.of(1, 2));
+        assertThat(first.getContent()).extracting("username").containsExactly("member1", "member2");
+        assertThat(second.getContent()).extracting("username").containsExactly("member3", "member4");
+
+        condition.setTeamName("teamB");
+        assertThat(memberTestRepository.searchPageByDeferredJoin(condition, PageRequest.of(0, 2)).getContent())
+                .extracting("username").containsExactly("member3", "member4");
+    }
+
+    @Test
+    public void sortPolicy(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        //허용되지 않은 속성이나 정렬 키 개수 초과는 거절된다.
+        assertThatThrownBy(() -> memberTestRepository.applyPagination(condition,
+                PageRequest.of(0, 2, Sort.by("team"))))
+                .isInstanceOf(SortNotAllowedException.class);
+        assertThatThrownBy(() -> memberTestRepository.applyPagination(condition,
+                PageRequest.of(0, 2, Sort.by(Sort.Order.desc("username"), Sort.Order.asc("age")))))
+                .isInstanceOf(SortNotAllowedException.class);
+
+        Page<Member> result = memberTestRepository.applyPagination(condition,
+                PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "age")));
+        assertThat(result.getContent()).extracting("username").containsExactly("member4", "member3");
+    }
+
+    @Test
+    public void defaultSortPolicyAllowsId(){
+        //getSortPolicy 를 재정의하지 않은 리포지토리
+        Querydsl4RepositorySupport repository = new Querydsl4RepositorySupport(Member.class) {};
+        repository.setEntityManager(em);
+        repository.setMeterRegistry(meterRegistry);
+
+        List<Member> result = repository.applyPageable(PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "id")),
+                repository.selectFrom(QMember.member)).fetch();
+        assertThat(result).extracting("username").containsExactly("member4", "member3");
+
+        assertThatThrownBy(() -> repository.applyPageable(PageRequest.of(0, 2, Sort.by("age")),
+                repository.selectFrom(QMember.member)))
+                .isInstanceOf(SortNotAllowedException.class);
+    }
+
+    @Test
+    public void readOnlySelect(){
+        em.flush();
+        em.clear();
+
+        List<Member> result = memberTestRepository.basicSelectFrom();
+        Session session = em.unwrap(Session.class);
+        assertThat(result).hasSize(4).allMatch(session::isReadOnly);
+
+        //읽기 전용 엔티티의 변경은 flush 되지 않는다.
+        result.get(0).setUsername("changed");
+        em.flush();
+        em.clear();
+        assertThat(memberTestRepository.basicSelect()).extracting("username").doesNotContain("changed");
+    }
+
+    //읽기 전용으로 올린 엔티티는 dirty checking 용 스냅샷(loadedState)을 들고 있지 않는다.
+    //엔티티마다 컬럼 수만큼의 Object[] 가 빠지므로 영속성 컨텍스트가 차지하는 힙이 그만큼 줄어든다.
+    @Test
+    public void readOnlyKeepsNoSnapshot(){
+        for (int i = 0; i < 1000; i++) {
+            em.persist(new Member("heap" + i, i % 100));
+        }
+        em.flush();
+        em.clear();
+        PersistenceContext persistenceContext = em.unwrap(SessionImplementor.class).getPersistenceContext();
+
+        List<Member> managed = memberTestRepository.getQueryFactory().selectFrom(QMember.member).fetch();
+        assertThat(managed).hasSizeGreaterThanOrEqualTo(1004)
+                .allMatch(member -> persistenceContext.getEntry(member).getLoadedState() != null);
+        em.clear();
+
+        List<Member> readOnly = memberTestRepository.basicSelectFrom();
+        assertThat(readOnly).hasSameSizeAs(managed)
+                .allMatch(member -> persistenceContext.getEntry(member).getLoadedState() == null);
+    }
+}
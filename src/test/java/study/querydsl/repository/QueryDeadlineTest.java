@@ -0,0 +1,73 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import javax.persistence.QueryTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryDeadlineTest {
+
+    @AfterEach
+    public void clear(){
+        QueryDeadline.clear();
+    }
+
+    @Test
+    public void timeoutHint(){
+        assertThat(QueryDeadline.timeoutHintMillis()).isNull();
+
+        //JDBC timeout 은 초 단위이므로 올림한다.
+        QueryDeadline.set(1500);
+        assertThat(QueryDeadline.timeoutHintMillis()).isEqualTo(2000);
+
+        //1초 미만이 남아도 0(무제한)이 되지 않도록 올림한다
+        QueryDeadline.set(100);
+        assertThat(QueryDeadline.timeoutHintMillis()).isEqualTo(1000);
+        assertThat(QueryDeadline.timeoutSeconds()).isEqualTo(1);
+
+        //이미 지났으면 DB 에 보내지 않는다
+        QueryDeadline.set(-1);
+        assertThatThrownBy(QueryDeadline::timeoutHintMillis).isInstanceOf(QueryTimeoutException.class);
+    }
+
+    @Test
+    public void skipCountAfterDeadline(){
+        List<String> content = Arrays.asList("member1", "member2");
+        PageRequest pageRequest = PageRequest.of(1, 2);
+
+        QueryDeadline.set(-1);
+        Page<String> page = QueryDeadline.page(content, pageRequest, () -> {
+            throw new AssertionError("count 쿼리가 실행되면 안된다");
+        });
+
+        //추정치를 내보내지 않고 전체 건수를 모른다고 알린다. 가득 찬 페이지이므로 다음 페이지가 있다고 본다.
+        assertThat(page).isInstanceOf(UnknownTotalPage.class);
+        assertThat(page.getTotalElements()).isEqualTo(UnknownTotalPage.UNKNOWN);
+        assertThat(page.hasNext()).isTrue();
+        assertThat(page.map(String::length)).isInstanceOf(UnknownTotalPage.class);
+    }
+
+    @Test
+    public void countBeforeDeadline(){
+        List<String> content = Arrays.asList("member1", "member2");
+
+        QueryDeadline.set(60_000);
+        Page<String> page = QueryDeadline.page(content, PageRequest.of(1, 2), () -> 7);
+        assertThat(page).isNotInstanceOf(UnknownTotalPage.class);
+        assertThat(page.getTotalElements()).isEqualTo(7);
+
+        //마지막 페이지처럼 count 가 필요 없으면 마감이 지나도 전체 건수를 안다
+        QueryDeadline.set(-1);
+        page = QueryDeadline.page(Arrays.asList("member5"), PageRequest.of(2, 2), () -> {
+            throw new AssertionError("count 쿼리가 실행되면 안된다");
+        });
+        assertThat(page.getTotalElements()).isEqualTo(5);
+    }
+}
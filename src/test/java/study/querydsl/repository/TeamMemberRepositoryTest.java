@@ -0,0 +1,87 @@
+package study.querydsl.repository;
+
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class TeamMemberRepositoryTest {
+
+    static final int MEMBERS = 1_000_000;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    TeamMemberRepository teamMemberRepository;
+
+    Long teamId;
+    Statistics statistics;
+
+    @BeforeEach
+    public void before(){
+        Team team = new Team("bigTeam");
+        em.persist(team);
+        em.flush();
+        teamId = team.getId();
+        //시퀀스와 겹치지 않도록 음수 id 로 한번에 넣는다.
+        jdbcTemplate.update("insert into member (member_id, username, age, team_id) " +
+                "select -x, 'big' || x, mod(x, 100), ? from system_range(1, " + MEMBERS + ")", teamId);
+        em.clear();
+
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void pageAndCount(){
+        Page<Member> page = teamMemberRepository.findByTeam(teamId, PageRequest.of(0, 10, Sort.by("id")));
+        long count = teamMemberRepository.countByTeam(teamId);
+
+        assertThat(page.getContent()).hasSize(10);
+        assertThat(page.getTotalElements()).isEqualTo(MEMBERS);
+        assertThat(count).isEqualTo(MEMBERS);
+        //content + count, count 한번
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void addAndSizeWithoutInitialize(){
+        Team team = em.find(Team.class, teamId);
+        long before = statistics.getPrepareStatementCount();
+
+        em.persist(new Member("newMember", 10, team)); //changeTeam -> team.getMembers().add()
+        int size = team.getMembers().size();
+        em.flush();
+
+        assertThat(Hibernate.isInitialized(team.getMembers())).isFalse();
+        assertThat(size).isEqualTo(MEMBERS + 1);
+        //시퀀스, size() count 쿼리, insert
+        assertThat(statistics.getPrepareStatementCount() - before).isEqualTo(3);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(1); //team
+    }
+}
@@ -0,0 +1,139 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.query.MemberQueryRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class TransactionQueryMemoTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberQueryRepository memberQueryRepository;
+
+    Statistics statistics;
+
+    @BeforeEach
+    public void before(){
+        Team teamA = new Team("memoTeamA");
+        em.persist(teamA);
+        em.persist(new Member("memo1", 10, teamA));
+        em.persist(new Member("memo2", 20, teamA));
+        em.flush();
+        em.clear();
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void disabledByDefault(){
+        memberJpaRepository.findByMemberUsername_Querydsl("memo1");
+        memberJpaRepository.findByMemberUsername_Querydsl("memo1");
+        assertThat(TransactionQueryMemo.current()).isNull();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void repeatedReadsHitMemo(){
+        TransactionQueryMemo memo = TransactionQueryMemo.enable();
+
+        List<Member> first = memberJpaRepository.findByMemberUsername_Querydsl("memo1");
+        List<Member> second = memberJpaRepository.findByMemberUsername_Querydsl("memo1");
+        memberJpaRepository.findByMemberUsername_Querydsl("memo2");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(second).containsExactlyElementsOf(first);
+        assertThat(memo.getHits()).isEqualTo(1);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("memoTeamA");
+        memberQueryRepository.search(condition);
+        memberQueryRepository.search(condition);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void clearDropsMemoizedEntities(){
+        TransactionQueryMemo memo = TransactionQueryMemo.enable();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("memoTeamA");
+        memberJpaRepository.findByMemberUsername_Querydsl("memo1");
+        memberQueryRepository.search(condition);
+
+        //clear 후에는 준영속이 된 엔티티 대신 다시 조회해서 영속 엔티티를 돌려준다
+        em.clear();
+        List<Member> result = memberJpaRepository.findByMemberUsername_Querydsl("memo1");
+        assertThat(em.contains(result.get(0))).isTrue();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+
+        //DTO 결과는 영속성 컨텍스트와 무관하므로 그대로 쓴다
+        memberQueryRepository.search(condition);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        assertThat(memo.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void flushEvictsAffectedEntityType(){
+        TransactionQueryMemo memo = TransactionQueryMemo.enable();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("memoTeamA");
+        memberJpaRepository.findByMemberUsername_Querydsl("memo1");
+        memberQueryRepository.search(condition);
+        assertThat(memo.size()).isEqualTo(2);
+
+        //Team 만 바뀌면 Member 만 보는 쿼리는 남고 team 을 조인한 검색만 지워진다
+        Team newTeam = new Team("memoTeamB");
+        em.persist(newTeam);
+        em.flush();
+        assertThat(memo.size()).isEqualTo(1);
+
+        //flush 전의 변경도 다시 조회할 때 자동 flush 되어 반영된다
+        Member memo1 = memberJpaRepository.findByMemberUsername_Querydsl("memo1").get(0);
+        memo1.setAge(11);
+        long prepared = statistics.getPrepareStatementCount();
+        List<Member> result = memberJpaRepository.findByMemberUsername_Querydsl("memo1");
+        assertThat(result).extracting("age").containsExactly(11);
+        //update 1번 + 다시 조회 1번
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(prepared + 2);
+    }
+
+    @Test
+    public void bulkUpdateEvicts(){
+        TransactionQueryMemo.enable();
+        assertThat(queryFactory.selectFrom(member).where(member.age.goe(20), member.username.startsWith("memo")).fetch())
+                .extracting("username").containsExactly("memo2");
+
+        queryFactory.update(member).set(member.age, 30).where(member.username.eq("memo1")).execute();
+        em.clear();
+
+        assertThat(queryFactory.selectFrom(member).where(member.age.goe(20), member.username.startsWith("memo")).fetch())
+                .extracting("username").containsExactlyInAnyOrder("memo1", "memo2");
+    }
+}
@@ -0,0 +1,80 @@
+package study.querydsl.repository.fetch;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class AssociationLoaderTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    CardinalityStatistics statistics;
+    AssociationLoader loader;
+
+    @BeforeEach
+    public void before(){
+        statistics = new CardinalityStatistics();
+        loader = new AssociationLoader(queryFactory, statistics, new SimpleMeterRegistry());
+
+        Team teamA = new Team("loaderA");
+        Team teamB = new Team("loaderB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void teamsWithMembers(){
+        //통계가 없으면 in 쿼리로, 통계가 쌓이면(팀당 2명) fetch join 으로 읽는다.
+        assertThat(loader.chooseForTeamMembers(1, false)).isEqualTo(FetchStrategy.BATCH_IN);
+        Page<TeamMembers> first = loader.findTeamsWithMembers(team.name.startsWith("loader"), PageRequest.of(0, 1));
+        assertThat(loader.chooseForTeamMembers(1, false)).isEqualTo(FetchStrategy.FETCH_JOIN);
+        em.clear();
+        Page<TeamMembers> second = loader.findTeamsWithMembers(team.name.startsWith("loader"), PageRequest.of(1, 1));
+
+        //컬렉션 fetch join 이어도 팀 단위로 페이징된다.
+        assertThat(first.getTotalElements()).isEqualTo(2);
+        assertThat(first.getContent()).hasSize(1);
+        assertThat(first.getContent().get(0).getTeam().getName()).isEqualTo("loaderA");
+        assertThat(first.getContent().get(0).getMembers()).extracting("username").containsExactlyInAnyOrder("member1", "member2");
+        assertThat(second.getContent()).hasSize(1);
+        assertThat(second.getContent().get(0).getTeam().getName()).isEqualTo("loaderB");
+        assertThat(second.getContent().get(0).getMembers()).extracting("username").containsExactly("member3");
+    }
+
+    @Test
+    public void membersWithTeam(){
+        Page<Member> result = loader.findMembersWithTeam(team.name.startsWith("loader"), PageRequest.of(0, 2));
+
+        assertThat(result.getTotalElements()).isEqualTo(3);
+        assertThat(result.getContent()).extracting("username").containsExactly("member1", "member2");
+        assertThat(result.getContent()).allMatch(m -> emf.getPersistenceUnitUtil().isLoaded(m.getTeam()));
+    }
+}
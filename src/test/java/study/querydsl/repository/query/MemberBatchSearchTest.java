@@ -0,0 +1,100 @@
+package study.querydsl.repository.query;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class MemberBatchSearchTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    MemberBatchSearch memberBatchSearch;
+
+    @Autowired
+    MemberQueryRepository memberQueryRepository;
+
+    @Test
+    public void searchInOneStatement(){
+        Team teamA = new Team("batchTeamA");
+        Team teamB = new Team("batchTeamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("batch1", 10, teamA));
+        em.persist(new Member("batch2", 20, teamA));
+        em.persist(new Member("Batch3", 30, teamB));
+        em.persist(new Member("batch4", 40, teamB));
+        em.persist(new Member("batch5", 50));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition byTeam = condition(null, "batchTeamA", null, null);
+        MemberSearchCondition byAge = condition(null, "batchTeamB", 35, null);
+        MemberSearchCondition byUsername = condition("BATCH3", null, null, null);
+        byUsername.setUsernameIgnoreCase(true);
+        MemberSearchCondition none = condition("nobody", null, null, null);
+        List<MemberSearchCondition> conditions = Arrays.asList(byTeam, byAge, byUsername, none, byTeam);
+
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<List<MemberTeamDto>> result = memberBatchSearch.search(conditions);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        assertThat(result).hasSize(5);
+        assertThat(result.get(0)).extracting("username").containsExactlyInAnyOrder("batch1", "batch2");
+        assertThat(result.get(1)).extracting("username").containsExactly("batch4");
+        assertThat(result.get(2)).extracting("username").containsExactly("Batch3");
+        assertThat(result.get(3)).isEmpty();
+        assertThat(result.get(4)).isEqualTo(result.get(0));
+
+        //조건마다 따로 조회한 결과와 같다
+        for (int i = 0; i < conditions.size(); i++) {
+            assertThat(result.get(i)).containsExactlyInAnyOrderElementsOf(memberQueryRepository.search(conditions.get(i)));
+        }
+    }
+
+    @Test
+    public void plan(){
+        List<MemberSearchCondition> conditions = new ArrayList<>();
+        for (int i = 0; i < MemberBatchSearch.MAX_MERGED + 1; i++) {
+            conditions.add(condition("member" + i, null, null, null));
+        }
+        //or 로 묶을 수 있는 만큼 묶고 나머지는 따로(병렬) 실행한다
+        assertThat(MemberBatchSearch.plan(conditions)).extracting(List::size)
+                .containsExactly(MemberBatchSearch.MAX_MERGED, 1);
+
+        //조건 없는 검색이 있으면 그 한번의 전체 조회로 나눈다
+        conditions.add(new MemberSearchCondition());
+        assertThat(MemberBatchSearch.plan(conditions)).hasSize(1);
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
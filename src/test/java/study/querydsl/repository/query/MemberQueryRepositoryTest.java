@@ -0,0 +1,118 @@
+package study.querydsl.repository.query;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest(properties = {
+        "querydsl.read-model.enabled=true",
+        "querydsl.read-model.relay-interval=3600000", //테스트에서는 직접 drain 한다
+        "querydsl.change-feed.gap-timeout=0" //다른 테스트가 롤백해서 비어 있는 id 를 기다리지 않는다
+})
+@Transactional
+class MemberQueryRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberQueryRepository memberQueryRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberTeamProjector memberTeamProjector;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void searchReadModel(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10,teamA));
+        em.persist(new Member("member2", 20,teamA));
+        em.persist(new Member("member3", 30,teamB));
+        em.persist(new Member("member4", 40,teamB));
+        em.flush();
+        memberTeamProjector.drain();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(35);
+        condition.setAgeLoe(40);
+        condition.setTeamName("teamB");
+
+        List<MemberTeamDto> result = memberQueryRepository.search(condition);
+        assertThat(result).extracting("username").containsExactly("member4");
+
+        //팀명 변경도 조회 모델에 반영된다.
+        teamB.setName("teamC");
+        em.flush();
+        memberTeamProjector.drain();
+
+        condition.setTeamName("teamC");
+        assertThat(memberQueryRepository.search(condition)).extracting("username").containsExactly("member4");
+    }
+
+    @Test
+    public void bulkUpdateReadModel(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1", 10,teamA));
+        em.persist(new Member("member2", 20,teamA));
+        em.flush();
+
+        memberJpaRepository.bulkUpdate(member.age.lt(15), update -> update.set(member.username, "비회원"));
+        memberTeamProjector.drain();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("비회원");
+        assertThat(memberQueryRepository.search(condition)).extracting("age").containsExactly(10);
+    }
+
+    @Test
+    public void bulkDeleteAndTeamDeleteReadModel(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        Member member1 = new Member("member1", 10,teamA);
+        Member member2 = new Member("member2", 20,teamA);
+        em.persist(member1);
+        em.persist(member2);
+        em.flush();
+        memberTeamProjector.drain();
+
+        //벌크 delete 는 대상 회원마다 기록되고, 조회 모델은 그 회원만 지운다
+        memberJpaRepository.bulkDelete(member.username.in("member1", "member2"));
+        assertThat(jdbcTemplate.queryForList("select aggregate_id from outbox_event" +
+                        " where aggregate_type = 'MEMBER' and event_type = 'DELETE' and aggregate_id in (?, ?)",
+                Long.class, member1.getId(), member2.getId()))
+                .containsExactlyInAnyOrder(member1.getId(), member2.getId());
+        em.clear();
+        em.remove(em.find(Team.class, teamA.getId()));
+        em.flush();
+        memberTeamProjector.drain();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        assertThat(memberQueryRepository.search(condition)).isEmpty();
+        assertThat(jdbcTemplate.queryForObject(
+                "select count(*) from member_team where team_id = ?", Long.class, teamA.getId())).isZero();
+    }
+}
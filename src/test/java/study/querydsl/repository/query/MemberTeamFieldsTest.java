@@ -0,0 +1,136 @@
+package study.querydsl.repository.query;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.FieldNotAllowedException;
+import study.querydsl.repository.MemberRepositoryImpl;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//JPQL 이 아니라 Hibernate 가 DB 로 보내는 SQL 로 조인 여부를 확인한다
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "study.querydsl.repository.query.MemberTeamFieldsTest$SqlCapture")
+@Transactional
+class MemberTeamFieldsTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberQueryRepository memberQueryRepository;
+
+    @Test
+    public void parse(){
+        //순서, 중복, 공백이 달라도 같은 projection 을 쓴다
+        assertThat(MemberTeamFields.parse("teamName, username,username"))
+                .isSameAs(MemberTeamFields.parse("username,teamName"));
+        assertThat(MemberTeamFields.parse("username").getFields()).containsExactly(MemberTeamField.USERNAME);
+
+        assertThatThrownBy(() -> MemberTeamFields.parse("username,password"))
+                .isInstanceOf(FieldNotAllowedException.class);
+        assertThatThrownBy(() -> MemberTeamFields.parse(" , "))
+                .isInstanceOf(FieldNotAllowedException.class);
+    }
+
+    @Test
+    public void searchFields(){
+        Team teamA = new Team("fieldsTeam");
+        em.persist(teamA);
+        em.persist(new Member("fields1", 10, teamA));
+        em.persist(new Member("fields2", 20, teamA));
+        em.persist(new Member("fields3", 30));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(15);
+        condition.setAgeLoe(30);
+
+        //teamId 는 FK 로 읽으므로 조인하지 않는다
+        MemberTeamFields narrow = MemberTeamFields.parse("username,teamId");
+        SqlCapture.executed.clear();
+        List<Map<String, Object>> result = memberQueryRepository.searchFields(condition, narrow);
+        assertThat(result).extracting(row -> row.get("username")).contains("fields2", "fields3");
+        assertThat(result.get(0)).containsOnlyKeys("username", "teamId");
+        assertThat(singleSql()).doesNotContainIgnoringCase("join");
+
+        //teamName 을 고르거나 팀명 조건이 있으면 조인한다
+        MemberTeamFields withTeamName = MemberTeamFields.parse("username,teamName");
+        SqlCapture.executed.clear();
+        memberQueryRepository.searchFields(condition, withTeamName);
+        assertThat(singleSql()).containsIgnoringCase("left outer join");
+
+        condition.setTeamName("fieldsTeam");
+        SqlCapture.executed.clear();
+        memberQueryRepository.searchFields(condition, narrow);
+        assertThat(singleSql()).containsIgnoringCase("left outer join");
+
+        Page<Map<String, Object>> page = memberQueryRepository.searchFieldsPage(condition, withTeamName, PageRequest.of(0, 10));
+        assertThat(page.getTotalElements()).isEqualTo(1);
+        assertThat(page.getContent().get(0))
+                .containsEntry("username", "fields2")
+                .containsEntry("teamName", "fieldsTeam")
+                .containsOnlyKeys("username", "teamName");
+    }
+
+    @Test
+    public void deepPageUsesDeferredJoin(){
+        for (int i = 0; i < 5; i++) {
+            em.persist(new Member("deepFields" + i, 1000 + i));
+        }
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(1000);
+        condition.setAgeLoe(1004);
+        long total = 5;
+        int offset = (int) MemberRepositoryImpl.DEFERRED_JOIN_OFFSET;
+
+        //앞쪽 페이지는 id 순으로 자른다
+        Page<Map<String, Object>> first = memberQueryRepository.searchFieldsPage(condition,
+                MemberTeamFields.parse("username"), PageRequest.of(0, 2));
+        assertThat(first.getContent()).extracting(row -> row.get("username")).containsExactly("deepFields0", "deepFields1");
+        assertThat(first.getTotalElements()).isEqualTo(total);
+
+        //깊은 페이지는 id 만 먼저 자른 뒤 그 id 들의 속성을 읽는다(결과가 없어도 두번째 조회는 하지 않는다)
+        SqlCapture.executed.clear();
+        Page<Map<String, Object>> deep = memberQueryRepository.searchFieldsPage(condition,
+                MemberTeamFields.parse("username"), PageRequest.of(offset, 1));
+        assertThat(deep.getContent()).isEmpty();
+        String idQuery = SqlCapture.executed.get(0);
+        assertThat(idQuery.substring(0, idQuery.indexOf(" from "))).doesNotContain("username");
+        assertThat(idQuery).containsIgnoringCase("order by");
+        assertThat(SqlCapture.executed).noneMatch(sql -> sql.contains(" in ("));
+    }
+
+    private String singleSql() {
+        assertThat(SqlCapture.executed).hasSize(1);
+        return SqlCapture.executed.get(0);
+    }
+
+    //Hibernate 가 실행하는 SQL 을 그대로 남긴다
+    public static class SqlCapture implements StatementInspector {
+        static final List<String> executed = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            executed.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package study.querydsl.search;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberSearchIndexTest {
+
+    @TempDir
+    Path directory;
+
+    MemberSearchIndex index;
+
+    @BeforeEach
+    public void before(){
+        index = new MemberSearchIndex(directory.toString());
+        index.index(Arrays.asList(
+                new MemberTeamDto(1L, "kim minsu", 10, 1L, "teamA"),
+                new MemberTeamDto(2L, "kim minji", 20, 1L, "teamA"),
+                new MemberTeamDto(3L, "lee minsu", 30, 2L, "teamB"),
+                new MemberTeamDto(4L, "park", 40, null, null),
+                new MemberTeamDto(5L, "choi minsuk", 50, 3L, "teamC")
+        ));
+        index.commit();
+    }
+
+    @AfterEach
+    public void after(){
+        index.close();
+    }
+
+    @Test
+    public void rankedAndFuzzy(){
+        //정확히 일치하는 회원이 접두어/오타 허용으로 맞은 회원(minsuk)보다 앞에 온다
+        assertThat(index.search("minsu", 10)).containsExactly(1L, 3L, 5L);
+        //오타(minsy -> minsu)
+        assertThat(index.search("minsy", 10)).contains(1L, 3L);
+        //여러 단어는 모두 맞아야 하고, 팀명도 검색한다
+        assertThat(index.search("minsu teamB", 10)).containsExactly(3L);
+        assertThat(index.search("", 10)).isEmpty();
+    }
+
+    @Test
+    public void updateAndDeleteSurviveReopen(){
+        index.index(Collections.singletonList(new MemberTeamDto(4L, "park minsu", 40, null, null)));
+        index.delete(Collections.singletonList(1L));
+        index.commit();
+        index.close();
+
+        //디스크에 남아 있는 색인을 다시 연다
+        index = new MemberSearchIndex(directory.toString());
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.search("minsu", 10)).containsExactlyInAnyOrder(3L, 4L, 5L);
+    }
+}
@@ -0,0 +1,134 @@
+package study.querydsl.search;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.outbox.ChangeFeed;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//색인은 커밋된 값으로 만들므로 테스트 트랜잭션(롤백) 없이 직접 커밋하고 지운다
+@SpringBootTest(properties = {
+        "querydsl.search-index.enabled=true",
+        "querydsl.search-index.path=${java.io.tmpdir}/querydsl-member-index-test-${random.uuid}",
+        "querydsl.search-index.rebuild-threads=4",
+        "querydsl.change-feed.poll-interval=3600000", //테스트에서는 직접 poll 한다
+        "querydsl.change-feed.gap-timeout=0",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class MemberSearchIndexerTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ChangeFeed changeFeed;
+
+    @Autowired
+    MemberSearchIndexer indexer;
+
+    @Autowired
+    MemberSearchIndex index;
+
+    @Autowired
+    MemberFullTextSearch fullTextSearch;
+
+    @BeforeEach
+    public void before(){
+        changeFeed.seek(MemberSearchIndexer.CONSUMER, jdbcTemplate.queryForObject(
+                "select coalesce(max(id), 0) from outbox_event", Long.class));
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team = new Team("indexerTeam");
+            em.persist(team);
+            em.persist(new Member("indexer kim", 10, team));
+            em.persist(new Member("indexer lee", 20, team));
+            em.persist(new Member("indexer park", 30, null));
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        jdbcTemplate.update("delete from member where username like 'indexer%'");
+        jdbcTemplate.update("delete from team where name like 'indexer%'");
+    }
+
+    @Test
+    public void incrementalSync(){
+        drain();
+        assertThat(fullTextSearch.search("indexer kim", 10)).extracting("username").startsWith("indexer kim");
+
+        //팀명 변경은 그 팀 회원 문서에, 삭제는 색인에서도 반영된다
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("select t from Team t where t.name = 'indexerTeam'", Team.class)
+                    .getSingleResult().setName("renamedIndexerTeam");
+            em.remove(em.createQuery("select m from Member m where m.username = 'indexer lee'", Member.class)
+                    .getSingleResult());
+        });
+        drain();
+
+        assertThat(fullTextSearch.search("renamedIndexerTeam", 10)).extracting("username")
+                .containsExactly("indexer kim");
+        assertThat(fullTextSearch.search("indexer lee", 10)).extracting("username")
+                .doesNotContain("indexer lee");
+        jdbcTemplate.update("delete from team where name = 'renamedIndexerTeam'");
+    }
+
+    @Test
+    public void parallelRebuildKeepsFeedOffset(){
+        long offset = changeFeed.offset(MemberSearchIndexer.CONSUMER);
+
+        int indexed = indexer.rebuild();
+
+        //id 구간을 나눠 색인해도 DB 의 모든 회원이 한번씩 들어간다
+        Integer members = jdbcTemplate.queryForObject("select count(*) from member", Integer.class);
+        assertThat(indexed).isEqualTo(members);
+        assertThat(index.size()).isEqualTo(members);
+        //offset 을 앞으로 옮기지 않으므로 재구축 전에 쌓인 변경도 이어서 받는다
+        assertThat(changeFeed.offset(MemberSearchIndexer.CONSUMER)).isEqualTo(offset);
+        assertThat(changeFeed.poll(indexer)).isGreaterThan(0);
+        assertThat(indexer.paused()).isFalse();
+    }
+
+    @Test
+    public void hitsAreHydratedWithOneQuery(){
+        drain();
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<MemberTeamDto> result = fullTextSearch.search("indexer", 10);
+
+        assertThat(result).extracting("username")
+                .containsExactlyInAnyOrder("indexer kim", "indexer lee", "indexer park");
+        assertThat(result).filteredOn("username", "indexer kim").extracting("teamName")
+                .containsExactly("indexerTeam");
+        //히트 수와 무관하게 in 쿼리 한번
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    private void drain() {
+        while (changeFeed.poll(indexer) > 0) {
+        }
+    }
+}
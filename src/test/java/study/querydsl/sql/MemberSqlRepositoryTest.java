@@ -0,0 +1,90 @@
+package study.querydsl.sql;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * querydsl-sql(MemberSqlRepository) 검색이 JPA(MemberRepositoryImpl) 검색과 같은 결과를 내는지 확인한다.
+ * 두 구현 모두 member_id 순으로 자르므로 페이지 내용과 순서까지 같아야 한다.
+ */
+@SpringBootTest
+@Transactional
+class MemberSqlRepositoryTest {
+
+    static final int ROWS = 2_000;
+    static final int TEAMS = 10;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MemberRepository memberRepository; //querydsl.search.engine=jpa(기본값)
+
+    @Autowired
+    MemberSqlRepository memberSqlRepository;
+
+    //id 컬럼에는 기본값이 없으므로 엔티티(@GeneratedValue)와 같은 시퀀스에서 받는다
+    @BeforeEach
+    public void before(){
+        List<Long> teamIds = new ArrayList<>();
+        for (int i = 0; i < TEAMS; i++) {
+            Long teamId = jdbcTemplate.queryForObject("select next value for hibernate_sequence", Long.class);
+            jdbcTemplate.update("insert into team (id, name) values (?, ?)", teamId, "sqlTeam" + i);
+            teamIds.add(teamId);
+        }
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            //나이와 팀이 서로 독립적으로 분포하도록 나이는 i / TEAMS 로 정한다, 일부 회원은 팀이 없다
+            batch.add(new Object[]{"sqlMember" + i, (i / TEAMS) % 100, i % 7 == 0 ? null : teamIds.get(i % TEAMS)});
+        }
+        jdbcTemplate.batchUpdate("insert into member (member_id, username, age, team_id)"
+                + " values (next value for hibernate_sequence, ?, ?, ?)", batch);
+    }
+
+    @Test
+    public void sameResultsAsJpa(){
+        MemberSearchCondition byTeamAndAge = new MemberSearchCondition();
+        byTeamAndAge.setAgeGoe(20);
+        byTeamAndAge.setAgeLoe(40);
+        byTeamAndAge.setTeamName("sqlTeam7");
+        MemberSearchCondition byUsername = new MemberSearchCondition();
+        byUsername.setUsername("sqlMember14");
+        MemberSearchCondition byAge = new MemberSearchCondition();
+        byAge.setAgeGoe(90);
+
+        for (MemberSearchCondition condition : Arrays.asList(byTeamAndAge, byUsername, byAge)) {
+            assertThat(memberSqlRepository.search(condition))
+                    .containsExactlyInAnyOrderElementsOf(memberRepository.search(condition));
+            for (int page = 0; page < 3; page++) {
+                PageRequest pageRequest = PageRequest.of(page, 50);
+                assertSamePage(memberSqlRepository.searchPageSimple(condition, pageRequest),
+                        memberRepository.searchPageSimple(condition, pageRequest));
+                assertSamePage(memberSqlRepository.searchPageComplex(condition, pageRequest),
+                        memberRepository.searchPageComplex(condition, pageRequest));
+            }
+        }
+        //count 쿼리(팀명 조건이 있으면 조인)도 목록과 같은 건수를 센다
+        assertThat(memberSqlRepository.searchPageComplex(byTeamAndAge, PageRequest.of(0, 50)).getTotalElements())
+                .isEqualTo(memberSqlRepository.search(byTeamAndAge).size()).isPositive();
+    }
+
+    private static void assertSamePage(Page<MemberTeamDto> sql, Page<MemberTeamDto> jpa){
+        assertThat(sql.getTotalElements()).isEqualTo(jpa.getTotalElements());
+        assertThat(sql.getContent()).containsExactlyElementsOf(jpa.getContent());
+    }
+}
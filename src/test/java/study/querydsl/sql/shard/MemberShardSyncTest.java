@@ -0,0 +1,166 @@
+package study.querydsl.sql.shard;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.outbox.ChangeFeed;
+import study.querydsl.sql.SMember;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+//원본 DB 에만 쓰고 변경 피드로 샤드가 따라오는지 확인한다(샤드는 테스트 트랜잭션과 무관하게 남으므로 매번 비운다)
+@SpringBootTest(properties = {
+        "querydsl.sharding.enabled=true",
+        "querydsl.sharding.urls=jdbc:h2:mem:syncShard0;DB_CLOSE_DELAY=-1,jdbc:h2:mem:syncShard1;DB_CLOSE_DELAY=-1",
+        "querydsl.sharding.init-schema=true",
+        "querydsl.change-feed.poll-interval=3600000", //테스트에서는 직접 poll 한다
+        "querydsl.change-feed.gap-timeout=0"
+})
+@Transactional
+class MemberShardSyncTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ChangeFeed changeFeed;
+
+    @Autowired
+    MemberShardSync memberShardSync;
+
+    @Autowired
+    ShardedMemberRepository shardedMemberRepository;
+
+    @Autowired
+    MemberShards memberShards;
+
+    @BeforeEach
+    public void before(){
+        shardedMemberRepository.deleteAll();
+        changeFeed.seek(MemberShardSync.CONSUMER, jdbcTemplate.queryForObject(
+                "select coalesce(max(id), 0) from outbox_event", Long.class));
+    }
+
+    @Test
+    public void writesFollowTheChangeFeed(){
+        Team teamA = new Team("syncTeamA");
+        Team teamB = new Team("syncTeamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        Member member1 = new Member("sync1", 10, teamA);
+        Member member2 = new Member("sync2", 20, teamA);
+        em.persist(member1);
+        em.persist(member2);
+        em.flush();
+
+        drain();
+        assertThat(search("syncTeamA")).extracting("username").containsExactly("sync1", "sync2");
+
+        //팀을 옮기면 샤드도 옮겨지고, 삭제는 샤드에서도 지워진다
+        member1.setTeam(teamB);
+        em.remove(member2);
+        teamB.setName("syncTeamB2");
+        em.flush();
+        drain();
+
+        assertThat(search("syncTeamA")).isEmpty();
+        List<MemberTeamDto> moved = search("syncTeamB2");
+        assertThat(moved).extracting("username").containsExactly("sync1");
+        assertThat(shardOf(member1.getId())).containsExactly(memberShards.shardOf(teamB.getId()));
+    }
+
+    @Test
+    public void bulkUpdateFollowsPerIdEvents(){
+        Team team = new Team("syncTeamC");
+        em.persist(team);
+        em.persist(new Member("sync3", 30, team));
+        em.persist(new Member("sync4", 40, team));
+        em.flush();
+        drain();
+
+        queryFactory.update(member)
+                .set(member.age, member.age.add(1))
+                .where(member.username.startsWith("sync"))
+                .execute();
+        drain();
+
+        assertThat(search("syncTeamC")).extracting("age").containsExactly(31, 41);
+    }
+
+    @Test
+    public void resyncReconcilesInPlace(){
+        Team team = new Team("syncTeamD");
+        em.persist(team);
+        Member member5 = new Member("sync5", 50, team);
+        em.persist(member5);
+        em.flush();
+        drain();
+
+        //원본에 없는 회원과, 주인이 아닌 샤드에 남은 사본
+        SMember shardMember = SMember.member;
+        int owner = memberShards.shardOf(team.getId());
+        int other = (owner + 1) % memberShards.size();
+        memberShards.shard(owner).insert(shardMember)
+                .set(shardMember.memberId, -1L)
+                .set(shardMember.username, "stray")
+                .set(shardMember.age, 1)
+                .set(shardMember.teamId, team.getId())
+                .execute();
+        memberShards.shard(other).insert(shardMember)
+                .set(shardMember.memberId, member5.getId())
+                .set(shardMember.username, "sync5")
+                .set(shardMember.age, 50)
+                .set(shardMember.teamId, team.getId())
+                .execute();
+
+        memberShardSync.resync();
+
+        assertThat(search("syncTeamD")).extracting("username").containsExactly("sync5");
+        assertThat(shardOf(member5.getId())).containsExactly(owner);
+        assertThat(shardOf(-1L)).isEmpty();
+    }
+
+    private void drain() {
+        while (memberShardSync.drain() > 0) {
+        }
+    }
+
+    private List<MemberTeamDto> search(String teamName) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName(teamName);
+        return shardedMemberRepository.search(condition);
+    }
+
+    //회원이 들어 있는 샤드 번호들
+    private List<Integer> shardOf(Long memberId) {
+        SMember shardMember = SMember.member;
+        List<Long> counts = memberShards.scatter(f -> f.select(shardMember.memberId.count())
+                .from(shardMember)
+                .where(shardMember.memberId.eq(memberId))
+                .fetchOne());
+        return IntStream.range(0, counts.size())
+                .filter(i -> counts.get(i) > 0)
+                .boxed()
+                .collect(Collectors.toList());
+    }
+}
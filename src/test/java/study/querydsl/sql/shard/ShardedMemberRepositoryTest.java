@@ -0,0 +1,100 @@
+package study.querydsl.sql.shard;
+
+import com.querydsl.sql.SQLExpressions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.sql.STeam.team;
+
+/**
+ * 샤드 3개를 각각 별도의 in-memory H2 로 띄워 scatter-gather 결과가 단일 DB 와 같은지 확인한다.
+ */
+class ShardedMemberRepositoryTest {
+
+    MemberShards shards;
+    ShardedMemberRepository repository;
+
+    @BeforeEach
+    public void before(){
+        String prefix = UUID.randomUUID().toString();
+        List<DataSource> dataSources = IntStream.range(0, 3)
+                .mapToObj(i -> DataSourceBuilder.create()
+                        .url("jdbc:h2:mem:" + prefix + "-" + i + ";DB_CLOSE_DELAY=-1")
+                        .username("sa")
+                        .build())
+                .collect(Collectors.toList());
+        shards = new MemberShards(dataSources);
+        shards.createSchema();
+        repository = new ShardedMemberRepository(shards);
+
+        //팀 1,2,3 -> 샤드 1,2,0
+        repository.saveTeam(1L, "teamA");
+        repository.saveTeam(2L, "teamB");
+        repository.saveTeam(3L, "teamC");
+        for (long id = 1; id <= 9; id++) {
+            repository.saveMember(id, "member" + id, (int) (id * 10 % 45), (id % 3) + 1);
+        }
+    }
+
+    @AfterEach
+    public void after(){
+        shards.close();
+    }
+
+    @Test
+    public void routing(){
+        assertThat(shards.shardOf(1L)).isEqualTo(1);
+        assertThat(shards.shardOf(3L)).isEqualTo(0);
+        assertThat(shards.shardOf(null)).isEqualTo(0);
+        //팀은 모든 샤드에, 회원은 팀 샤드에만 있다
+        assertThat(shards.scatter(f -> f.select(SQLExpressions.countAll).from(team).fetchOne()))
+                .containsOnly(3L);
+    }
+
+    @Test
+    public void pageAcrossShards(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+        List<MemberTeamDto> all = repository.search(condition);
+        assertThat(all).extracting("memberId").containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+
+        //나이 내림차순, 같은 나이는 id 순
+        List<Long> expected = all.stream()
+                .sorted((a, b) -> a.getAge() != b.getAge()
+                        ? Integer.compare(b.getAge(), a.getAge())
+                        : Long.compare(a.getMemberId(), b.getMemberId()))
+                .map(MemberTeamDto::getMemberId)
+                .collect(Collectors.toList());
+        Page<MemberTeamDto> page = repository.searchPageComplex(condition,
+                PageRequest.of(1, 4, Sort.by(Sort.Direction.DESC, "age")));
+
+        assertThat(page.getTotalElements()).isEqualTo(9);
+        assertThat(page.getContent()).extracting("memberId").containsExactlyElementsOf(expected.subList(4, 8));
+    }
+
+    @Test
+    public void teamCondition(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+        condition.setAgeGoe(20);
+
+        Page<MemberTeamDto> page = repository.searchPageSimple(condition, PageRequest.of(0, 10));
+
+        //teamB = id % 3 == 1 -> 1, 4, 7 (나이 10, 40, 25)
+        assertThat(page.getContent()).extracting("memberId").containsExactly(4L, 7L);
+        assertThat(page.getTotalElements()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,187 @@
+package study.querydsl.writebehind;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//버퍼는 별도 스레드/트랜잭션에서 반영하므로 테스트 데이터를 커밋해야 한다.
+@SpringBootTest(properties = {
+        "querydsl.write-behind.enabled=true",
+        "querydsl.write-behind.flush-interval=3600000", //테스트에서는 직접 flush 한다
+        "querydsl.write-behind.max-attempts=2",
+        "querydsl.write-behind.capacity=2"
+})
+class MemberWriteBehindBufferTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MemberWriteBehindBuffer memberWriteBehindBuffer;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void coalesceAndFlush(){
+        Long[] ids = transactionTemplate.execute(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            Member member = new Member("member1", 10, teamA);
+            em.persist(member);
+            return new Long[]{member.getId(), teamA.getId(), teamB.getId()};
+        });
+        Long memberId = ids[0];
+        Long teamBId = ids[2];
+
+        memberWriteBehindBuffer.changeAge(memberId, 11);
+        memberWriteBehindBuffer.changeAge(memberId, 12);
+        memberWriteBehindBuffer.changeTeam(memberId, teamBId);
+        //같은 회원의 변경은 하나로 합쳐진다.
+        assertThat(memberWriteBehindBuffer.pendingCount()).isEqualTo(1);
+
+        memberWriteBehindBuffer.flush();
+
+        assertThat(memberWriteBehindBuffer.pendingCount()).isEqualTo(0);
+        assertThat(jdbcTemplate.queryForObject("select age from member where member_id = ?", Integer.class, memberId))
+                .isEqualTo(12);
+        assertThat(jdbcTemplate.queryForObject("select team_id from member where member_id = ?", Long.class, memberId))
+                .isEqualTo(teamBId);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.remove(em.find(Member.class, memberId));
+            em.remove(em.find(Team.class, ids[1]));
+            em.remove(em.find(Team.class, ids[2]));
+        });
+    }
+
+    @Test
+    public void failingChangeIsRetriedAloneThenDropped(){
+        Long[] ids = transactionTemplate.execute(status -> {
+            Team team = new Team("teamA");
+            em.persist(team);
+            Member ok = new Member("member1", 10, team);
+            Member broken = new Member("member2", 20, team);
+            em.persist(ok);
+            em.persist(broken);
+            return new Long[]{ok.getId(), broken.getId(), team.getId()};
+        });
+        double dropped = meterRegistry.counter("member.write-behind.dead-letter").count();
+
+        //없는 팀을 가리키면 외래키 위반으로 batch 전체가 실패한다
+        memberWriteBehindBuffer.changeAge(ids[0], 11);
+        memberWriteBehindBuffer.changeTeam(ids[1], -1L);
+        memberWriteBehindBuffer.flush();
+
+        //한 건씩 다시 반영해서 정상 변경은 반영되고 실패한 변경만 남는다
+        assertThat(jdbcTemplate.queryForObject("select age from member where member_id = ?", Integer.class, ids[0]))
+                .isEqualTo(11);
+        assertThat(memberWriteBehindBuffer.pendingCount()).isEqualTo(1);
+
+        //max-attempts 번 실패하면 버퍼에서 빼고 dead letter 테이블에 남긴다
+        memberWriteBehindBuffer.flush();
+        assertThat(memberWriteBehindBuffer.pendingCount()).isEqualTo(0);
+        assertThat(meterRegistry.counter("member.write-behind.dead-letter").count()).isEqualTo(dropped + 1);
+        assertThat(jdbcTemplate.queryForObject("select team_id from member where member_id = ?", Long.class, ids[1]))
+                .isEqualTo(ids[2]);
+        assertThat(deadLetterTeamIds(ids[1])).containsExactly(-1L);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.remove(em.find(Member.class, ids[0]));
+            em.remove(em.find(Member.class, ids[1]));
+            em.remove(em.find(Team.class, ids[2]));
+        });
+    }
+
+    @Test
+    public void newerChangeIsNotDroppedWithAnOlderFailure(){
+        Long[] ids = transactionTemplate.execute(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            Member member = new Member("member1", 10, teamA);
+            em.persist(member);
+            return new Long[]{member.getId(), teamA.getId(), teamB.getId()};
+        });
+
+        //잘못된 팀으로 한번 실패한 변경 위에 나이 변경이 합쳐져도, 나이는 반영되고 팀만 dead letter 가 된다
+        memberWriteBehindBuffer.changeTeam(ids[0], -1L);
+        memberWriteBehindBuffer.flush();
+        memberWriteBehindBuffer.changeAge(ids[0], 30);
+        memberWriteBehindBuffer.flush();
+        assertThat(jdbcTemplate.queryForObject("select age from member where member_id = ?", Integer.class, ids[0]))
+                .isEqualTo(30);
+        assertThat(deadLetterTeamIds(ids[0])).containsExactly(-1L);
+
+        //실패한 팀 변경을 새 팀으로 덮어쓰면 실패 횟수가 처음부터 다시 세어져 반영된다
+        memberWriteBehindBuffer.changeTeam(ids[0], -1L);
+        memberWriteBehindBuffer.flush();
+        memberWriteBehindBuffer.changeTeam(ids[0], ids[2]);
+        memberWriteBehindBuffer.flush();
+        assertThat(jdbcTemplate.queryForObject("select team_id from member where member_id = ?", Long.class, ids[0]))
+                .isEqualTo(ids[2]);
+        assertThat(memberWriteBehindBuffer.pendingCount()).isEqualTo(0);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.remove(em.find(Member.class, ids[0]));
+            em.remove(em.find(Team.class, ids[1]));
+            em.remove(em.find(Team.class, ids[2]));
+        });
+    }
+
+    @Test
+    public void fullBufferRejectsNewMembers(){
+        Long[] ids = transactionTemplate.execute(status -> {
+            Member member1 = new Member("member1", 10);
+            Member member2 = new Member("member2", 20);
+            Member member3 = new Member("member3", 30);
+            em.persist(member1);
+            em.persist(member2);
+            em.persist(member3);
+            return new Long[]{member1.getId(), member2.getId(), member3.getId()};
+        });
+
+        //capacity(2) 만큼 쌓이면 새 회원은 거절하고, 이미 쌓인 회원의 변경은 합친다
+        assertThat(memberWriteBehindBuffer.changeAge(ids[0], 11)).isTrue();
+        assertThat(memberWriteBehindBuffer.changeAge(ids[1], 21)).isTrue();
+        assertThat(memberWriteBehindBuffer.changeAge(ids[2], 31)).isFalse();
+        assertThat(memberWriteBehindBuffer.changeAge(ids[0], 12)).isTrue();
+        assertThat(memberWriteBehindBuffer.pendingCount()).isEqualTo(2);
+
+        memberWriteBehindBuffer.flush();
+        assertThat(memberWriteBehindBuffer.changeAge(ids[2], 31)).isTrue();
+        memberWriteBehindBuffer.flush();
+        assertThat(jdbcTemplate.queryForList("select age from member where member_id in (?, ?, ?) order by member_id",
+                Integer.class, ids[0], ids[1], ids[2])).containsExactly(12, 21, 31);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Long id : ids) {
+                em.remove(em.find(Member.class, id));
+            }
+        });
+    }
+
+    private List<Long> deadLetterTeamIds(Long memberId) {
+        return jdbcTemplate.queryForList("select team_id from write_behind_dead_letter where member_id = ?",
+                Long.class, memberId);
+    }
+}